@@ -0,0 +1,84 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures {@link LoadGenerator#newRequest(HttpClient, LoadGenerator.Config, Resource)},
+ * called by the sender thread for each resource node.</p>
+ * <p>In the same package as {@link LoadGenerator} to access the protected method.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NewRequestBenchmark {
+    @Param({"0", "1024"})
+    public int requestLength;
+    @Param({"0", "4"})
+    public int requestHeaders;
+
+    private HttpClient client;
+    private LoadGenerator loadGenerator;
+    private Resource resource;
+
+    @Setup
+    public void prepare() throws Exception {
+        // The client is started but never connects, only the request objects are built.
+        client = new HttpClient(new HTTP1ClientTransportBuilder().build(), null);
+        client.start();
+        resource = new Resource("/index.html?name=value").requestLength(requestLength).responseLength(1024);
+        for (int i = 0; i < requestHeaders; ++i) {
+            resource.requestHeader("X-Header-" + i, "value-" + i);
+        }
+        loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP1ClientTransportBuilder())
+                .resource(resource)
+                .build();
+    }
+
+    @TearDown
+    public void dispose() throws Exception {
+        client.stop();
+    }
+
+    @Benchmark
+    public Request newRequest() {
+        return loadGenerator.newRequest(client, loadGenerator.getConfig(), resource);
+    }
+}
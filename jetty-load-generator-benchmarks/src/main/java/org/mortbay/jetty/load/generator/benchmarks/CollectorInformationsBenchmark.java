@@ -0,0 +1,91 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures the creation of {@link CollectorInformations} from histograms,
+ * done for each path at each collection interval, and the interval histogram swap of a {@link Recorder}
+ * that precedes it.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorInformationsBenchmark {
+    @Param({"1000", "1000000"})
+    public int values;
+
+    private Histogram histogram;
+    private Recorder recorder;
+    private Histogram intervalHistogram;
+
+    @Setup
+    public void prepare() {
+        histogram = new Histogram(HistogramConstants.LOWEST_DISCERNIBLE_VALUE,
+                HistogramConstants.HIGHEST_TRACKABLE_VALUE,
+                HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < values; ++i) {
+            histogram.recordValue(random.nextLong(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(1)));
+        }
+        recorder = new Recorder(HistogramConstants.LOWEST_DISCERNIBLE_VALUE,
+                HistogramConstants.HIGHEST_TRACKABLE_VALUE,
+                HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+    }
+
+    @Benchmark
+    public CollectorInformations newCollectorInformations() {
+        return new CollectorInformations(histogram);
+    }
+
+    @Benchmark
+    public CollectorInformations newCollectorInformationsInMillis() {
+        return new CollectorInformations(histogram, TimeUnit.NANOSECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public CollectorInformations intervalCollectorInformations() {
+        recorder.recordValue(histogram.getMaxValue());
+        // Recycles the previous interval histogram, as the collector should.
+        intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+        return new CollectorInformations(intervalHistogram);
+    }
+}
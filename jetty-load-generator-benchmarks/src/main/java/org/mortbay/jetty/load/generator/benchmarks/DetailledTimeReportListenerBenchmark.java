@@ -0,0 +1,94 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.report.DetailledTimeReportListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures {@link DetailledTimeReportListener#onResourceNode(Resource.Info)} called concurrently
+ * by the response threads, each response being stored as a raw sample.</p>
+ * <p>Run with {@code -t} to change the number of threads.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class DetailledTimeReportListenerBenchmark {
+    private DetailledTimeReportListener listener;
+
+    @Setup(Level.Iteration)
+    public void prepare() {
+        // A new store per iteration, so that the memory used stays bounded.
+        listener = new DetailledTimeReportListener();
+    }
+
+    @State(Scope.Thread)
+    public static class Infos {
+        private Resource.Info[] infos;
+        private int index;
+
+        @Setup
+        public void prepare() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            infos = new Resource.Info[1024];
+            for (int i = 0; i < infos.length; ++i) {
+                Resource.Info info = new Resource("/path" + (i % 16)).newInfo();
+                long requestTime = System.nanoTime();
+                info.setRequestTime(requestTime);
+                info.setLatencyTime(requestTime + random.nextLong(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(10)));
+                info.setResponseTime(info.getLatencyTime() + random.nextLong(TimeUnit.MILLISECONDS.toNanos(10)));
+                info.setStatus(200);
+                infos[i] = info;
+            }
+        }
+
+        private Resource.Info next() {
+            Resource.Info info = infos[index];
+            if (++index == infos.length) {
+                index = 0;
+            }
+            return info;
+        }
+    }
+
+    @Benchmark
+    public void onResourceNode(Infos infos) {
+        listener.onResourceNode(infos.next());
+    }
+}
@@ -0,0 +1,95 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
+import org.mortbay.jetty.load.generator.listeners.report.DetailledTimeValuesReport;
+import org.mortbay.jetty.load.generator.listeners.report.SummaryReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures the JSON serialization of the reports, with a shared {@link ObjectMapper}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportSerializationBenchmark {
+    @Param({"10", "1000"})
+    public int paths;
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private SummaryReport summaryReport;
+    private DetailledTimeValuesReport detailledTimeValuesReport;
+
+    @Setup
+    public void prepare() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Histogram histogram = new Histogram(HistogramConstants.LOWEST_DISCERNIBLE_VALUE,
+                HistogramConstants.HIGHEST_TRACKABLE_VALUE,
+                HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+        for (int i = 0; i < 1000; ++i) {
+            histogram.recordValue(random.nextLong(TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        summaryReport = new SummaryReport("benchmark");
+        for (int i = 0; i < paths; ++i) {
+            summaryReport.addResponseTimeInformations("/path" + i, new CollectorInformations(histogram));
+            summaryReport.addLatencyTimeInformations("/path" + i, new CollectorInformations(histogram));
+        }
+
+        detailledTimeValuesReport = new DetailledTimeValuesReport();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < entries; ++i) {
+            detailledTimeValuesReport.addEntry(new DetailledTimeValuesReport.Entry(now + i, "/path" + (i % paths), 200,
+                    random.nextLong(TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1))));
+        }
+    }
+
+    @Benchmark
+    public byte[] summaryReport() throws Exception {
+        return mapper.writeValueAsBytes(summaryReport);
+    }
+
+    @Benchmark
+    public byte[] detailledTimeValuesReport() throws Exception {
+        return mapper.writeValueAsBytes(detailledTimeValuesReport);
+    }
+}
@@ -0,0 +1,152 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.benchmarks;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.mortbay.jetty.load.generator.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>Measures the walk of resource trees of various shapes, as done by the load generator for each tree:
+ * counting the nodes, creating the {@link Resource.Info} of each node level by level,
+ * and looking up the descendant matching a pushed URI.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceTreeBenchmark {
+    /**
+     * <ul>
+     * <li>{@code single}: only the root</li>
+     * <li>{@code flat}: a root with 100 children, like a page with all its assets</li>
+     * <li>{@code deep}: a chain of 100 resources</li>
+     * <li>{@code website}: 3 levels of 5 children, with group resources</li>
+     * </ul>
+     */
+    @Param({"single", "flat", "deep", "website"})
+    public String shape;
+
+    private Resource resource;
+    private URI lastURI;
+
+    @Setup
+    public void prepare() {
+        switch (shape) {
+            case "single":
+                resource = new Resource("/");
+                break;
+            case "flat":
+                List<Resource> children = new ArrayList<>();
+                for (int i = 0; i < 100; ++i) {
+                    children.add(new Resource("/asset" + i + ".js"));
+                }
+                resource = new Resource("/", children.toArray(new Resource[0]));
+                break;
+            case "deep":
+                Resource child = new Resource("/99");
+                for (int i = 98; i > 0; --i) {
+                    child = new Resource("/" + i, child);
+                }
+                resource = new Resource("/", child);
+                break;
+            case "website":
+                resource = new Resource("/", website("", 1));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown shape " + shape);
+        }
+        lastURI = URI.create("http://localhost:8080" + last(resource).getPath());
+    }
+
+    private Resource[] website(String prefix, int level) {
+        Resource[] result = new Resource[5];
+        for (int i = 0; i < result.length; ++i) {
+            String path = prefix + "/" + i;
+            Resource[] children = level < 3 ? website(path, level + 1) : new Resource[0];
+            // Every other node is a group resource.
+            result[i] = i % 2 == 0 ? new Resource(path, children) : new Resource(children);
+        }
+        return result;
+    }
+
+    private Resource last(Resource resource) {
+        Resource result = resource;
+        for (Resource child : resource.getResources()) {
+            Resource last = last(child);
+            if (last.getPath() != null) {
+                result = last;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int descendantCount() {
+        return resource.descendantCount();
+    }
+
+    @Benchmark
+    public void traverse(Blackhole blackhole) {
+        // Same breadth first walk as LoadGenerator.Sender.
+        Queue<Resource.Info> queue = new ArrayDeque<>();
+        queue.addAll(Collections.singletonList(resource.newInfo()));
+        List<Resource.Info> infos = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            infos.addAll(queue);
+            queue.clear();
+            for (Resource.Info info : infos) {
+                info.setRequestTime(System.nanoTime());
+                List<Resource> children = info.getResource().getResources();
+                if (!children.isEmpty()) {
+                    queue.addAll(children.stream().map(Resource::newInfo).collect(Collectors.toList()));
+                }
+                blackhole.consume(info);
+            }
+            infos.clear();
+        }
+    }
+
+    @Benchmark
+    public Resource findDescendant() {
+        return resource.findDescendant(lastURI);
+    }
+}
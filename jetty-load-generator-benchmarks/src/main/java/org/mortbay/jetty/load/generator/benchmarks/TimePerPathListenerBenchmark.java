@@ -0,0 +1,104 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.responsetime.TimePerPathListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Measures {@link TimePerPathListener#onResourceNode(Resource.Info)} called concurrently
+ * by the response threads, with all the threads recording the same path or spread over several paths.</p>
+ * <p>Run with {@code -t} to change the number of threads.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class TimePerPathListenerBenchmark {
+    @Param({"1", "16"})
+    public int paths;
+
+    private TimePerPathListener listener;
+    private Resource root;
+
+    @Setup
+    public void prepare() {
+        root = new Resource();
+        for (int i = 0; i < paths; ++i) {
+            root.getResources().add(new Resource("/path" + i));
+        }
+        listener = new TimePerPathListener(false);
+        // Assigns the resource ids, as the listener is notified when the load generation begins.
+        listener.onBegin(new LoadGenerator.Builder().resource(root).build());
+    }
+
+    @State(Scope.Thread)
+    public static class Infos {
+        private Resource.Info[] infos;
+        private int index;
+
+        @Setup
+        public void prepare(TimePerPathListenerBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            infos = new Resource.Info[1024];
+            for (int i = 0; i < infos.length; ++i) {
+                Resource.Info info = benchmark.root.getResources().get(i % benchmark.paths).newInfo();
+                long requestTime = System.nanoTime();
+                info.setRequestTime(requestTime);
+                info.setLatencyTime(requestTime + random.nextLong(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(10)));
+                info.setResponseTime(info.getLatencyTime() + random.nextLong(TimeUnit.MILLISECONDS.toNanos(10)));
+                info.setStatus(200);
+                infos[i] = info;
+            }
+        }
+
+        private Resource.Info next() {
+            Resource.Info info = infos[index];
+            if (++index == infos.length) {
+                index = 0;
+            }
+            return info;
+        }
+    }
+
+    @Benchmark
+    public void onResourceNode(Infos infos) {
+        listener.onResourceNode(infos.next());
+    }
+}
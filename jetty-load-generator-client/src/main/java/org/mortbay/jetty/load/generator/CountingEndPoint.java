@@ -0,0 +1,100 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SelectChannelEndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A {@link SelectChannelEndPoint} that counts the bytes read from and written to the network.</p>
+ * <p>Connections created by the {@link HTTP1ClientTransportBuilder} and {@link FCGIClientTransportBuilder}
+ * transports report these counts via {@link org.eclipse.jetty.io.Connection#getBytesIn()} and
+ * {@link org.eclipse.jetty.io.Connection#getBytesOut()}.</p>
+ */
+public class CountingEndPoint extends SelectChannelEndPoint {
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    public CountingEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key, Scheduler scheduler, long idleTimeout) {
+        super(channel, selector, key, scheduler, idleTimeout);
+    }
+
+    @Override
+    public int fill(ByteBuffer buffer) throws IOException {
+        int filled = super.fill(buffer);
+        if (filled > 0) {
+            bytesIn.add(filled);
+        }
+        return filled;
+    }
+
+    @Override
+    public boolean flush(ByteBuffer... buffers) throws IOException {
+        long before = remaining(buffers);
+        try {
+            return super.flush(buffers);
+        } finally {
+            bytesOut.add(before - remaining(buffers));
+        }
+    }
+
+    private static long remaining(ByteBuffer... buffers) {
+        long result = 0;
+        for (ByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                result += buffer.remaining();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of bytes read from the network, including TLS records
+     */
+    public long getBytesIn() {
+        return bytesIn.longValue();
+    }
+
+    /**
+     * @return the number of bytes written to the network, including TLS records
+     */
+    public long getBytesOut() {
+        return bytesOut.longValue();
+    }
+
+    /**
+     * @param endPoint the endPoint of a connection, possibly decrypting TLS
+     * @return the network {@link CountingEndPoint} underlying the given endPoint, or null if not counting
+     */
+    public static CountingEndPoint unwrap(EndPoint endPoint) {
+        while (endPoint instanceof SslConnection.DecryptedEndPoint) {
+            endPoint = ((SslConnection.DecryptedEndPoint)endPoint).getSslConnection().getEndPoint();
+        }
+        return endPoint instanceof CountingEndPoint ? (CountingEndPoint)endPoint : null;
+    }
+}
@@ -0,0 +1,482 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.jetty.http.HttpFields;
+
+/**
+ * <p>Extracts a value from a response into a variable of the user {@link Session}.</p>
+ * <p>Variables are referenced as {@code ${name}} in the path, the request headers
+ * and the request body of the resources sent afterwards by the same user, for
+ * example the children of the resource, resources that
+ * {@link Resource#dependsOn(String...) depend on it}, or the resources of
+ * the next iterations.</p>
+ * <p>Body extractors match the response content as it arrives, without
+ * buffering the whole response content.</p>
+ */
+public class Extractor {
+    /**
+     * The default max length of a regular expression match, in bytes.
+     */
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 1024;
+
+    private Type type;
+    private String variable;
+    private String expression;
+    private int maxMatchLength = DEFAULT_MAX_MATCH_LENGTH;
+    private Pattern pattern;
+
+    private Extractor() {
+        // For JSON deserialization.
+    }
+
+    private Extractor(Type type, String variable, String expression) {
+        this.type = type;
+        this.variable = variable;
+        this.expression = expression;
+    }
+
+    /**
+     * @param variable the variable name
+     * @param header   the response header name
+     * @return an extractor of the value of the given response header
+     */
+    public static Extractor header(String variable, String header) {
+        return new Extractor(Type.HEADER, variable, header);
+    }
+
+    /**
+     * <p>The value extracted is the first capturing group of the first match, or the
+     * whole match if the regular expression has no capturing group.</p>
+     *
+     * @param variable the variable name
+     * @param regex    the regular expression to find in the response content
+     * @return an extractor of a regular expression match in the response content
+     * @see #maxMatchLength(int)
+     */
+    public static Extractor regex(String variable, String regex) {
+        return new Extractor(Type.REGEX, variable, regex);
+    }
+
+    /**
+     * @param variable the variable name
+     * @param pointer  a JSON pointer (RFC 6901) to a string, number, boolean or null value
+     * @return an extractor of a value of the JSON response content
+     */
+    public static Extractor jsonPointer(String variable, String pointer) {
+        return new Extractor(Type.JSON_POINTER, variable, pointer);
+    }
+
+    /**
+     * <p>Regular expressions are matched over a sliding window of the response
+     * content, so that matches longer than the window may not be found.</p>
+     *
+     * @param maxMatchLength the max length of a regular expression match, in bytes
+     * @return this Extractor
+     */
+    public Extractor maxMatchLength(int maxMatchLength) {
+        this.maxMatchLength = maxMatchLength;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public int getMaxMatchLength() {
+        return maxMatchLength;
+    }
+
+    /**
+     * @return a new matcher, holding the state of the extraction for one response
+     */
+    Matcher newMatcher() {
+        switch (type) {
+            case HEADER:
+                return new HeaderMatcher(expression);
+            case REGEX:
+                if (pattern == null) {
+                    pattern = Pattern.compile(expression);
+                }
+                return new RegexMatcher(pattern, maxMatchLength);
+            case JSON_POINTER:
+                return new JsonPointerMatcher(expression);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[%s %s=%s]", getClass().getSimpleName(), hashCode(), type, variable, expression);
+    }
+
+    public enum Type {
+        HEADER, REGEX, JSON_POINTER
+    }
+
+    interface Matcher {
+        default void headers(HttpFields headers) {
+        }
+
+        default void content(ByteBuffer buffer) {
+        }
+
+        /**
+         * @return the value extracted, or null if there was no match
+         */
+        String complete();
+    }
+
+    private static class HeaderMatcher implements Matcher {
+        private final String header;
+        private String value;
+
+        private HeaderMatcher(String header) {
+            this.header = header;
+        }
+
+        @Override
+        public void headers(HttpFields headers) {
+            value = headers.get(header);
+        }
+
+        @Override
+        public String complete() {
+            return value;
+        }
+    }
+
+    private static class RegexMatcher implements Matcher {
+        private final StringBuilder window = new StringBuilder();
+        private final Pattern pattern;
+        private final int maxMatchLength;
+        private String value;
+
+        private RegexMatcher(Pattern pattern, int maxMatchLength) {
+            this.pattern = pattern;
+            this.maxMatchLength = maxMatchLength;
+        }
+
+        @Override
+        public void content(ByteBuffer buffer) {
+            if (value != null) {
+                return;
+            }
+            // ISO-8859-1 maps bytes to chars one to one, so that
+            // multi-byte characters split across buffers are preserved.
+            while (buffer.hasRemaining()) {
+                window.append((char)(buffer.get() & 0xFF));
+            }
+            java.util.regex.Matcher matcher = pattern.matcher(window);
+            if (matcher.find()) {
+                // A match hitting the end of the window may be longer with more content.
+                if (!matcher.hitEnd() || window.length() - matcher.start() >= maxMatchLength) {
+                    value = value(matcher);
+                    window.setLength(0);
+                    return;
+                }
+                window.delete(0, matcher.start());
+            } else if (window.length() > maxMatchLength) {
+                window.delete(0, window.length() - maxMatchLength);
+            }
+        }
+
+        @Override
+        public String complete() {
+            if (value == null && window.length() > 0) {
+                java.util.regex.Matcher matcher = pattern.matcher(window);
+                if (matcher.find()) {
+                    value = value(matcher);
+                }
+            }
+            return value;
+        }
+
+        private String value(java.util.regex.Matcher matcher) {
+            String match = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+            return match == null ? null : new String(match.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * <p>A streaming JSON tokenizer that only tracks the path of the current
+     * value, and only buffers the keys and the value pointed to.</p>
+     */
+    static class JsonPointerMatcher implements Matcher {
+        private static final int VALUE = 0;
+        private static final int VALUE_OR_END = 1;
+        private static final int KEY = 2;
+        private static final int KEY_OR_END = 3;
+        private static final int KEY_STRING = 4;
+        private static final int COLON = 5;
+        private static final int VALUE_STRING = 6;
+        private static final int LITERAL = 7;
+        private static final int AFTER_VALUE = 8;
+        private static final int DONE = 9;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Frame> stack = new ArrayList<>();
+        private final List<String> pointer = new ArrayList<>();
+        private int state = VALUE;
+        private boolean escape;
+        private boolean capture;
+        private String value;
+
+        JsonPointerMatcher(String pointer) {
+            if (!pointer.isEmpty()) {
+                if (pointer.charAt(0) != '/') {
+                    throw new IllegalArgumentException("Invalid JSON pointer " + pointer);
+                }
+                for (String token : pointer.substring(1).split("/", -1)) {
+                    this.pointer.add(token.replace("~1", "/").replace("~0", "~"));
+                }
+            }
+        }
+
+        @Override
+        public void content(ByteBuffer buffer) {
+            while (state != DONE && buffer.hasRemaining()) {
+                parse(buffer.get());
+            }
+        }
+
+        private void parse(byte b) {
+            switch (state) {
+                case VALUE_OR_END:
+                    if (b == ']') {
+                        end();
+                        return;
+                    }
+                    // Fall through.
+                case VALUE:
+                    if (isWhitespace(b)) {
+                        return;
+                    }
+                    if (b == '{') {
+                        stack.add(new Frame(false));
+                        state = KEY_OR_END;
+                    } else if (b == '[') {
+                        stack.add(new Frame(true));
+                        state = VALUE_OR_END;
+                    } else {
+                        capture = isPointed();
+                        bytes.reset();
+                        if (b == '"') {
+                            state = VALUE_STRING;
+                        } else {
+                            bytes.write(b);
+                            state = LITERAL;
+                        }
+                    }
+                    return;
+                case KEY_OR_END:
+                    if (b == '}') {
+                        end();
+                        return;
+                    }
+                    // Fall through.
+                case KEY:
+                    if (b == '"') {
+                        bytes.reset();
+                        state = KEY_STRING;
+                    }
+                    return;
+                case KEY_STRING:
+                    if (string(b, true)) {
+                        top().key = unescape(text());
+                        state = COLON;
+                    }
+                    return;
+                case COLON:
+                    if (b == ':') {
+                        state = VALUE;
+                    }
+                    return;
+                case VALUE_STRING:
+                    if (string(b, capture)) {
+                        value(unescape(text()));
+                    }
+                    return;
+                case LITERAL:
+                    if (b == ',' || b == ']' || b == '}' || isWhitespace(b)) {
+                        value(text());
+                        if (state != DONE) {
+                            parse(b);
+                        }
+                    } else {
+                        bytes.write(b);
+                    }
+                    return;
+                case AFTER_VALUE:
+                    if (b == ',') {
+                        Frame frame = top();
+                        if (frame.array) {
+                            ++frame.index;
+                            state = VALUE;
+                        } else {
+                            state = KEY;
+                        }
+                    } else if (b == ']' || b == '}') {
+                        end();
+                    }
+                    return;
+                default:
+                    return;
+            }
+        }
+
+        private boolean string(byte b, boolean store) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                return true;
+            }
+            if (store) {
+                bytes.write(b);
+            }
+            return false;
+        }
+
+        private void value(String text) {
+            if (capture) {
+                value = text;
+                state = DONE;
+            } else {
+                afterValue();
+            }
+        }
+
+        private void end() {
+            stack.remove(stack.size() - 1);
+            afterValue();
+        }
+
+        private void afterValue() {
+            state = stack.isEmpty() ? DONE : AFTER_VALUE;
+        }
+
+        private Frame top() {
+            return stack.get(stack.size() - 1);
+        }
+
+        private boolean isPointed() {
+            if (stack.size() != pointer.size()) {
+                return false;
+            }
+            for (int i = 0; i < pointer.size(); ++i) {
+                Frame frame = stack.get(i);
+                String token = pointer.get(i);
+                if (frame.array ? !token.equals(String.valueOf(frame.index)) : !token.equals(frame.key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String complete() {
+            if (state == LITERAL && capture) {
+                // A top level literal.
+                value = text();
+            }
+            return value;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+        }
+
+        private String text() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private static String unescape(String text) {
+            if (text.indexOf('\\') < 0) {
+                return text;
+            }
+            StringBuilder builder = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); ++i) {
+                char c = text.charAt(i);
+                if (c != '\\' || i + 1 == text.length()) {
+                    builder.append(c);
+                    continue;
+                }
+                c = text.charAt(++i);
+                switch (c) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        try {
+                            builder.append((char)Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                            i += 4;
+                        } catch (RuntimeException x) {
+                            builder.append(c);
+                        }
+                        break;
+                    default:
+                        builder.append(c);
+                        break;
+                }
+            }
+            return builder.toString();
+        }
+
+        private static class Frame {
+            private final boolean array;
+            private int index;
+            private String key;
+
+            private Frame(boolean array) {
+                this.array = array;
+            }
+        }
+    }
+}
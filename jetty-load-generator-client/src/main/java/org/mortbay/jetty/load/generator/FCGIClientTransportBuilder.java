@@ -0,0 +1,141 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.SendFailure;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.fcgi.client.http.HttpClientTransportOverFCGI;
+import org.eclipse.jetty.fcgi.client.http.HttpConnectionOverFCGI;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.util.Promise;
+
+/**
+ * <p>Helper builder to provide a FastCGI {@link HttpClientTransport}.</p>
+ * <p>As for {@link HTTP1ClientTransportBuilder}, the connections of the transport report
+ * the network bytes and the number of requests sent.</p>
+ */
+public class FCGIClientTransportBuilder implements HTTPClientTransportBuilder {
+    private int selectors = 1;
+    private boolean multiplexed = false;
+    private String scriptRoot = "";
+
+    public FCGIClientTransportBuilder selectors(int selectors) {
+        this.selectors = selectors;
+        return this;
+    }
+
+    public int getSelectors() {
+        return selectors;
+    }
+
+    /**
+     * @param multiplexed whether requests are multiplexed over the FastCGI connections,
+     *                    which is typically not supported by FastCGI servers such as PHP-FPM
+     * @return this Builder
+     */
+    public FCGIClientTransportBuilder multiplexed(boolean multiplexed) {
+        this.multiplexed = multiplexed;
+        return this;
+    }
+
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    /**
+     * @param scriptRoot the script root directory on the FastCGI server,
+     *                   prepended to the request path to build the {@code SCRIPT_FILENAME} parameter
+     * @return this Builder
+     */
+    public FCGIClientTransportBuilder scriptRoot(String scriptRoot) {
+        if (scriptRoot == null) {
+            throw new IllegalArgumentException();
+        }
+        this.scriptRoot = scriptRoot;
+        return this;
+    }
+
+    public String getScriptRoot() {
+        return scriptRoot;
+    }
+
+    @Override
+    public HttpClientTransport build() {
+        return new HttpClientTransportOverFCGI(getSelectors(), isMultiplexed(), getScriptRoot()) {
+            @Override
+            protected SelectorManager newSelectorManager(HttpClient client) {
+                return new ClientSelectorManager(client, getSelectors()) {
+                    @Override
+                    protected EndPoint newEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key) {
+                        return new CountingEndPoint(channel, selector, key, getScheduler(), client.getIdleTimeout());
+                    }
+                };
+            }
+
+            @Override
+            protected HttpConnectionOverFCGI newHttpConnection(EndPoint endPoint, HttpDestination destination, Promise<Connection> promise) {
+                return new CountingHttpConnection(endPoint, destination, promise, isMultiplexed());
+            }
+        };
+    }
+
+    private static class CountingHttpConnection extends HttpConnectionOverFCGI {
+        private final LongAdder requests = new LongAdder();
+
+        private CountingHttpConnection(EndPoint endPoint, HttpDestination destination, Promise<Connection> promise, boolean multiplexed) {
+            super(endPoint, destination, promise, multiplexed);
+        }
+
+        @Override
+        protected SendFailure send(HttpExchange exchange) {
+            SendFailure failure = super.send(exchange);
+            if (failure == null) {
+                requests.increment();
+            }
+            return failure;
+        }
+
+        @Override
+        public int getMessagesOut() {
+            return requests.intValue();
+        }
+
+        @Override
+        public long getBytesIn() {
+            CountingEndPoint endPoint = CountingEndPoint.unwrap(getEndPoint());
+            return endPoint == null ? -1 : endPoint.getBytesIn();
+        }
+
+        @Override
+        public long getBytesOut() {
+            CountingEndPoint endPoint = CountingEndPoint.unwrap(getEndPoint());
+            return endPoint == null ? -1 : endPoint.getBytesOut();
+        }
+    }
+}
@@ -18,11 +18,28 @@
 
 package org.mortbay.jetty.load.generator;
 
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.SendFailure;
+import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.util.Promise;
 
 /**
- * Helper builder to provide an http(s) {@link HttpClientTransport}
+ * <p>Helper builder to provide an http(s) {@link HttpClientTransport}.</p>
+ * <p>The connections of the transport report the network bytes and the number of requests sent
+ * via {@link org.eclipse.jetty.io.Connection#getBytesIn()}, {@link org.eclipse.jetty.io.Connection#getBytesOut()}
+ * and {@link org.eclipse.jetty.io.Connection#getMessagesOut()}.</p>
  */
 public class HTTP1ClientTransportBuilder implements HTTPClientTransportBuilder {
     private int selectors = 1;
@@ -38,6 +55,55 @@ public class HTTP1ClientTransportBuilder implements HTTPClientTransportBuilder {
 
     @Override
     public HttpClientTransport build() {
-        return new HttpClientTransportOverHTTP(getSelectors());
+        return new HttpClientTransportOverHTTP(getSelectors()) {
+            @Override
+            protected SelectorManager newSelectorManager(HttpClient client) {
+                return new ClientSelectorManager(client, getSelectors()) {
+                    @Override
+                    protected EndPoint newEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key) {
+                        return new CountingEndPoint(channel, selector, key, getScheduler(), client.getIdleTimeout());
+                    }
+                };
+            }
+
+            @Override
+            protected HttpConnectionOverHTTP newHttpConnection(EndPoint endPoint, HttpDestination destination, Promise<Connection> promise) {
+                return new CountingHttpConnection(endPoint, destination, promise);
+            }
+        };
+    }
+
+    private static class CountingHttpConnection extends HttpConnectionOverHTTP {
+        private final LongAdder requests = new LongAdder();
+
+        private CountingHttpConnection(EndPoint endPoint, HttpDestination destination, Promise<Connection> promise) {
+            super(endPoint, destination, promise);
+        }
+
+        @Override
+        protected SendFailure send(HttpExchange exchange) {
+            SendFailure failure = super.send(exchange);
+            if (failure == null) {
+                requests.increment();
+            }
+            return failure;
+        }
+
+        @Override
+        public int getMessagesOut() {
+            return requests.intValue();
+        }
+
+        @Override
+        public long getBytesIn() {
+            CountingEndPoint endPoint = CountingEndPoint.unwrap(getEndPoint());
+            return endPoint == null ? -1 : endPoint.getBytesIn();
+        }
+
+        @Override
+        public long getBytesOut() {
+            CountingEndPoint endPoint = CountingEndPoint.unwrap(getEndPoint());
+            return endPoint == null ? -1 : endPoint.getBytesOut();
+        }
     }
 }
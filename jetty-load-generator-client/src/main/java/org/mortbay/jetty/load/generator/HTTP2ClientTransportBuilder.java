@@ -18,9 +18,20 @@
 
 package org.mortbay.jetty.load.generator;
 
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+
+import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.http2.client.http.HttpDestinationOverHTTP2;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 
 /**
  * Helper builder to provide an http2 {@link HttpClientTransport}
@@ -29,6 +40,8 @@ public class HTTP2ClientTransportBuilder implements HTTPClientTransportBuilder {
     private int selectors = 1;
     private int sessionRecvWindow = 16 * 1024 * 1024;
     private int streamRecvWindow = 16 * 1024 * 1024;
+    private int maxConcurrentStreams = 1024;
+    private FlowControlStrategy.Factory flowControlStrategyFactory;
 
     public HTTP2ClientTransportBuilder selectors(int selectors) {
         this.selectors = selectors;
@@ -57,14 +70,94 @@ public class HTTP2ClientTransportBuilder implements HTTPClientTransportBuilder {
         return streamRecvWindow;
     }
 
+    /**
+     * <p>Each HTTP/2 connection carries at most this number of concurrent streams;
+     * further requests are queued until a stream completes.</p>
+     * <p>There is one HTTP/2 connection per HttpClient, see
+     * {@link LoadGenerator.Builder#connectionsPerUser(int)} to open more connections.</p>
+     *
+     * @param maxConcurrentStreams the max number of concurrent streams per connection
+     * @return this Builder
+     */
+    public HTTP2ClientTransportBuilder maxConcurrentStreams(int maxConcurrentStreams) {
+        if (maxConcurrentStreams < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * @param flowControlStrategyFactory the factory for the strategy that sends WINDOW_UPDATE frames,
+     * or null for the HTTP2Client default
+     * @return this Builder
+     */
+    public HTTP2ClientTransportBuilder flowControlStrategyFactory(FlowControlStrategy.Factory flowControlStrategyFactory) {
+        this.flowControlStrategyFactory = flowControlStrategyFactory;
+        return this;
+    }
+
+    public FlowControlStrategy.Factory getFlowControlStrategyFactory() {
+        return flowControlStrategyFactory;
+    }
+
     @Override
     public HttpClientTransport build() {
-        HTTP2Client http2Client = new HTTP2Client();
+        BindingHTTP2Client http2Client = new BindingHTTP2Client();
         // Chrome uses 15 MiB session and 6 MiB stream windows.
         // Firefox uses 12 MiB session and stream windows.
         http2Client.setInitialSessionRecvWindow(getSessionRecvWindow());
         http2Client.setInitialStreamRecvWindow(getStreamRecvWindow());
         http2Client.setSelectors(getSelectors());
-        return new HttpClientTransportOverHTTP2(http2Client);
+        if (getFlowControlStrategyFactory() != null) {
+            http2Client.setFlowControlStrategyFactory(getFlowControlStrategyFactory());
+        }
+        int maxConcurrentStreams = getMaxConcurrentStreams();
+        return new HttpClientTransportOverHTTP2(http2Client) {
+            @Override
+            public HttpDestination newHttpDestination(Origin origin) {
+                HttpDestinationOverHTTP2 destination = new HttpDestinationOverHTTP2(getHttpClient(), origin) {
+                    @Override
+                    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+                        // Also called with the max concurrent streams of the server
+                        // SETTINGS frame, so the lower of the two limits applies.
+                        super.setMaxRequestsPerConnection(Math.min(maxRequestsPerConnection, maxConcurrentStreams));
+                    }
+                };
+                destination.setMaxRequestsPerConnection(maxConcurrentStreams);
+                return destination;
+            }
+
+            @Override
+            protected void doStart() throws Exception {
+                // HTTP/2 connections are customized with the beans
+                // of the HTTP2Client, rather than those of the HttpClient.
+                HttpClient httpClient = getHttpClient();
+                httpClient.getBeans(Connection.Listener.class).forEach(http2Client::addBean);
+                httpClient.getBeans(SslHandshakeListener.class).forEach(http2Client::addBean);
+                http2Client.bindAddress = httpClient.getBindAddress();
+                super.doStart();
+            }
+        };
+    }
+
+    /**
+     * <p>HTTP2Client opens its own sockets, ignoring the
+     * {@link HttpClient#getBindAddress() HttpClient bind address}.</p>
+     */
+    private static class BindingHTTP2Client extends HTTP2Client {
+        private SocketAddress bindAddress;
+
+        @Override
+        protected void configure(SocketChannel channel) throws IOException {
+            super.configure(channel);
+            if (bindAddress != null) {
+                channel.bind(bindAddress);
+            }
+        }
     }
 }
@@ -18,6 +18,8 @@
 
 package org.mortbay.jetty.load.generator;
 
+import java.io.EOFException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
@@ -25,17 +27,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EventListener;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.client.HttpClient;
@@ -44,17 +56,32 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.toolchain.perf.PlatformTimer;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.CountingCallback;
 import org.eclipse.jetty.util.SocketAddressResolver;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.mortbay.jetty.load.generator.util.ThreadAffinity;
 
 @ManagedObject("Jetty LoadGenerator")
 public class LoadGenerator extends ContainerLifeCycle {
@@ -63,12 +90,67 @@ public class LoadGenerator extends ContainerLifeCycle {
     private final PlatformTimer timer = PlatformTimer.detect();
     private final Config config;
     private final CyclicBarrier barrier;
+    private final AtomicInteger localAddressIndex = new AtomicInteger();
+    private final AtomicInteger shardIndex = new AtomicInteger();
+    private final Shard[] shards;
+    private final Map<Resource, List<Resource>> dependencies;
+    private final List<Resource> resources = new ArrayList<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheValidations = new LongAdder();
+    private final LongAdder cacheNotModified = new LongAdder();
     private ExecutorService threads;
     private volatile boolean interrupt;
 
     private LoadGenerator(Config config) {
         this.config = config;
         this.barrier = new CyclicBarrier(config.threads);
+        this.dependencies = new IdentityHashMap<>(config.getResource().resolveDependencies());
+        if (config.getLogin() != null) {
+            dependencies.putAll(config.getLogin().resolveDependencies());
+        }
+        Scenario scenario = config.getScenario();
+        if (scenario != null) {
+            scenario.resolve();
+            scenario.getSteps().forEach(step -> dependencies.putAll(step.getResource().resolveDependencies()));
+        }
+        ResourceMix mix = config.getMix();
+        if (mix != null) {
+            mix.resolve();
+            mix.getProfiles().forEach(profile -> dependencies.putAll(profile.getResource().resolveDependencies()));
+        }
+        identify();
+        this.shards = new Shard[config.threads];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = new Shard(i);
+        }
+        if (config.getExecutor() != null) {
+            // Exported to JMX along with this LoadGenerator, see MonitoringThreadPoolExecutor.
+            addBean(config.getExecutor(), false);
+        }
+    }
+
+    private void identify() {
+        List<Resource> roots = new ArrayList<>();
+        roots.add(config.getResource());
+        if (config.getLogin() != null) {
+            roots.add(config.getLogin());
+        }
+        if (config.getScenario() != null) {
+            config.getScenario().getSteps().forEach(step -> roots.add(step.getResource()));
+        }
+        if (config.getMix() != null) {
+            config.getMix().getProfiles().forEach(profile -> roots.add(profile.getResource()));
+        }
+        Set<Resource> identified = Collections.newSetFromMap(new IdentityHashMap<>());
+        roots.forEach(root -> identify(root, identified));
+    }
+
+    private void identify(Resource resource, Set<Resource> identified) {
+        if (identified.add(resource)) {
+            resource.setId(resources.size());
+            resources.add(resource);
+            resource.getResources().forEach(child -> identify(child, identified));
+        }
     }
 
     private void go() {
@@ -85,6 +167,10 @@ public class LoadGenerator extends ContainerLifeCycle {
     protected void doStart() throws Exception {
         threads = Executors.newCachedThreadPool();
         interrupt = false;
+        shardIndex.set(0);
+        cacheHits.reset();
+        cacheValidations.reset();
+        cacheNotModified.reset();
         super.doStart();
         fireBeginEvent(this);
     }
@@ -111,6 +197,27 @@ public class LoadGenerator extends ContainerLifeCycle {
         return config;
     }
 
+    /**
+     * <p>Returns the resource listeners created for the given shard by the
+     * {@link Builder#shardResourceListener(Supplier) shard resource listener factories}.</p>
+     * <p>There is one shard per sender thread; the listeners of a shard are only
+     * notified by the threads of that shard, so their results must be merged
+     * once the load generation is complete.</p>
+     *
+     * @param shard the shard index, from 0 to {@link Config#getThreads()} - 1
+     * @return the resource listeners of the given shard
+     */
+    public List<Resource.Listener> getShardResourceListeners(int shard) {
+        return shards[shard].shardResourceListeners;
+    }
+
+    /**
+     * @return the resources of the resource trees of this LoadGenerator, each at the index of its {@link Resource#getId() id}
+     */
+    public List<Resource> getResources() {
+        return Collections.unmodifiableList(resources);
+    }
+
     public CompletableFuture<Void> begin() {
         if (logger.isDebugEnabled()) {
             logger.debug("generating load, {}", config);
@@ -126,6 +233,30 @@ public class LoadGenerator extends ContainerLifeCycle {
         return CompletableFuture.allOf(futures).whenCompleteAsync((r, x) -> halt(), threads);
     }
 
+    /**
+     * @return the number of resources served by the users' caches without requests, warmup excluded
+     */
+    @ManagedAttribute("The number of resources served by the users' caches")
+    public long getCacheHits() {
+        return cacheHits.longValue();
+    }
+
+    /**
+     * @return the number of conditional requests revalidating the users' cache entries, warmup excluded
+     */
+    @ManagedAttribute("The number of conditional requests")
+    public long getCacheValidations() {
+        return cacheValidations.longValue();
+    }
+
+    /**
+     * @return the number of 304 responses to conditional requests, warmup excluded
+     */
+    @ManagedAttribute("The number of 304 responses")
+    public long getCacheNotModified() {
+        return cacheNotModified.longValue();
+    }
+
     @ManagedOperation(value = "Interrupts this LoadGenerator", impact = "ACTION")
     public void interrupt() {
         interrupt = true;
@@ -142,17 +273,67 @@ public class LoadGenerator extends ContainerLifeCycle {
                 logger.debug("sender thread {} running", threadName);
             }
 
-            HttpClient[] clients = new HttpClient[config.getUsersPerThread()];
+            Shard shard = shards[shardIndex.getAndIncrement()];
+
+            // Each user owns one HttpClient per connection.
+            HttpClient[][] clients = new HttpClient[config.getUsersPerThread()][config.getConnectionsPerUser()];
             // HttpClient cannot be stopped from one of its own threads.
             result = process.whenCompleteAsync((r, x) -> {
                 if (logger.isDebugEnabled()) {
                     logger.debug("stopping http clients");
                 }
-                Arrays.stream(clients).forEach(this::stopHttpClient);
+                Arrays.stream(clients).flatMap(Arrays::stream).forEach(this::stopHttpClient);
+                shard.stop();
             }, threads);
-            for (int i = 0; i < clients.length; ++i) {
-                clients[i] = newHttpClient(getConfig());
-                clients[i].start();
+            if (config.isSharded()) {
+                config.getThreadAffinity().bind(shard.index, shards.length);
+                shard.start();
+            }
+            Session[] sessions = new Session[clients.length];
+            for (int user = 0; user < clients.length; ++user) {
+                Session session = sessions[user] = new Session(user, config.getCacheEntries());
+                HttpClient[] userClients = clients[user];
+                for (int i = 0; i < userClients.length; ++i) {
+                    HttpClient client = newHttpClient(getConfig());
+                    if (config.isSharded()) {
+                        // The selector of the HttpClient runs in the shard executor.
+                        client.setExecutor(shard.executor);
+                        client.setScheduler(shard.scheduler);
+                        WebSocketClient webSocketClient = client.getBean(WebSocketClient.class);
+                        if (webSocketClient != null) {
+                            // So do the WebSocket connections.
+                            webSocketClient.setExecutor(shard.executor);
+                        }
+                    }
+                    userClients[i] = client;
+                    client.start();
+                    // The HttpClients of a user share the user's cookies.
+                    client.setCookieStore(session.getCookieStore());
+                    // Connection listeners find the user of a connection from its HttpClient.
+                    client.addBean(session, false);
+                }
+            }
+
+            Resource login = config.getLogin();
+            if (login != null) {
+                // Users log in before the warmup and measured iterations.
+                CompletableFuture[] logins = new CompletableFuture[sessions.length];
+                for (int user = 0; user < sessions.length; ++user) {
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    logins[user] = future;
+                    login(clients[user], shard, sessions[user], new Callback() {
+                        @Override
+                        public void succeeded() {
+                            future.complete(null);
+                        }
+
+                        @Override
+                        public void failed(Throwable x) {
+                            future.completeExceptionally(x);
+                        }
+                    });
+                }
+                CompletableFuture.allOf(logins).get();
             }
 
             Callback processCallback = new Callback() {
@@ -180,18 +361,20 @@ public class LoadGenerator extends ContainerLifeCycle {
                 }
             };
 
-            int rate = config.getResourceRate();
-            long period = rate > 0 ? TimeUnit.SECONDS.toNanos(config.getThreads()) / rate : 0;
+            long period = config.getIterationPeriod();
 
             long runFor = config.getRunFor();
             int warmupIterations = config.getWarmupIterationsPerThread();
             int iterations = runFor > 0 ? 0 : config.getIterationsPerThread();
 
             long begin = System.nanoTime();
+            // The time at which the current resource tree should be sent according to the rate.
+            long scheduled = begin;
             long next = begin + period;
             int clientIndex = 0;
             while (true) {
-                HttpClient client = clients[clientIndex];
+                HttpClient[] userClients = clients[clientIndex];
+                Session session = sessions[clientIndex];
 
                 boolean warmup = false;
                 boolean lastIteration = false;
@@ -205,7 +388,34 @@ public class LoadGenerator extends ContainerLifeCycle {
                 boolean ranEnough = runFor > 0 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - begin) >= runFor;
                 Callback c = lastIteration || ranEnough ? processCallback : callback;
 
-                sendResourceTree(client, config.getResource(), warmup, c);
+                if (!warmup) {
+                    // A positive lag means this thread cannot keep up with the rate.
+                    fireScheduleEvent(period > 0 ? System.nanoTime() - scheduled : 0);
+                }
+
+                ResponseCache cache = session.getCache();
+                if (cache != null && !warmup && ThreadLocalRandom.current().nextDouble() >= config.getReturningVisitorRatio()) {
+                    // A new visitor, with an empty cache.
+                    cache.clear();
+                }
+
+                if (login != null && session.isExpired(System.nanoTime(), config.getLoginRefreshPeriod()) && session.beginRefresh()) {
+                    // The user keeps sending with its current
+                    // session while the session is refreshed.
+                    login(userClients, shard, session, callback);
+                }
+
+                if (config.getScenario() != null) {
+                    sendStep(userClients, shard, session, warmup, c);
+                } else if (config.getMix() != null) {
+                    // All the profiles share the rate of this thread.
+                    ResourceMix.Profile profile = config.getMix().next(ThreadLocalRandom.current());
+                    Resource.Info info = profile.getResource().newInfo();
+                    info.setProfile(profile.getName());
+                    sendResourceTree(userClients, shard, session, info, warmup, false, c);
+                } else {
+                    sendResourceTree(userClients, shard, session, config.getResource().newInfo(), warmup, false, c);
+                }
 
                 if (lastIteration || ranEnough) {
                     break;
@@ -221,6 +431,7 @@ public class LoadGenerator extends ContainerLifeCycle {
 
                 if (period > 0) {
                     long pause = TimeUnit.NANOSECONDS.toMicros(next - System.nanoTime());
+                    scheduled = next;
                     next += period;
                     if (pause > 0) {
                         timer.sleep(pause);
@@ -245,9 +456,39 @@ public class LoadGenerator extends ContainerLifeCycle {
         result.setMaxConnectionsPerDestination(config.getChannelsPerUser());
         result.setMaxRequestsQueuedPerDestination(config.getMaxRequestsQueued());
         result.setSocketAddressResolver(config.getSocketAddressResolver());
+        List<String> localAddresses = config.getLocalAddresses();
+        if (!localAddresses.isEmpty()) {
+            // Each HttpClient binds to the next local address, so that
+            // each local address has its own range of ephemeral ports.
+            int index = Math.floorMod(localAddressIndex.getAndIncrement(), localAddresses.size());
+            result.setBindAddress(new InetSocketAddress(localAddresses.get(index), 0));
+        }
+        // Connections are customized with the Connection.Listener beans.
+        config.getConnectionListeners().forEach(result::addBean);
+        Scenario scenario = config.getScenario();
+        ResourceMix mix = config.getMix();
+        if (config.getResource().hasWebSocket() ||
+                (scenario != null && scenario.hasWebSocket()) ||
+                (mix != null && mix.hasWebSocket())) {
+            // The WebSocketClient lifecycle is bound to the HttpClient.
+            result.addBean(newWebSocketClient(config));
+        }
         return result;
     }
 
+    protected WebSocketClient newWebSocketClient(Config config) {
+        WebSocketClient result = new WebSocketClient(config.getSslContextFactory(), config.getExecutor());
+        // Echoes are as large as the messages sent.
+        result.getPolicy().setMaxBinaryMessageSize(Integer.MAX_VALUE);
+        result.getPolicy().setMaxTextMessageSize(Integer.MAX_VALUE);
+        return result;
+    }
+
+    protected URI newWebSocketURI(Config config, Resource resource) {
+        String scheme = "https".equalsIgnoreCase(config.getScheme()) ? "wss" : "ws";
+        return URI.create(scheme + "://" + config.getHost() + ":" + config.getPort() + resource.getPath());
+    }
+
     private void stopHttpClient(HttpClient client) {
         try {
             if (client != null) {
@@ -265,16 +506,65 @@ public class LoadGenerator extends ContainerLifeCycle {
                 .path(resource.getPath());
         request.getHeaders().addAll(resource.getRequestHeaders());
         request.header(Resource.RESPONSE_LENGTH, Integer.toString(resource.getResponseLength()));
+        if (resource.isStreaming() && !request.getHeaders().containsKey(HttpHeader.ACCEPT.asString())) {
+            request.header(HttpHeader.ACCEPT, "text/event-stream");
+        }
+        String requestBody = resource.getRequestBody();
         int requestLength = resource.getRequestLength();
-        if (requestLength > 0) {
+        if (requestBody != null) {
+            request.content(new StringContentProvider(requestBody));
+        } else if (requestLength > 0) {
             request.content(new BytesContentProvider(new byte[requestLength]));
         }
         return request;
     }
 
-    private void sendResourceTree(HttpClient client, Resource resource, boolean warmup, Callback callback) {
+    private void login(HttpClient[] clients, Shard shard, Session session, Callback callback) {
+        Resource.Info info = config.getLogin().newInfo();
+        // Login trees are not notified to resource listeners, but to session listeners.
+        sendResourceTree(clients, shard, session, info, true, true, new Callback() {
+            @Override
+            public void succeeded() {
+                session.loggedIn(info.getRequestTime());
+                session.endRefresh();
+                fireSessionEvent(session, info);
+                callback.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x) {
+                session.endRefresh();
+                callback.failed(x);
+            }
+        });
+    }
+
+    private void sendStep(HttpClient[] clients, Shard shard, Session session, boolean warmup, Callback callback) {
+        Scenario.Step step = session.nextStep(config.getScenario(), System.nanoTime());
+        boolean journeyEnd = session.isJourneyEnd();
+        long journeyBegin = session.getJourneyBegin();
+        int journeySteps = session.getJourneySteps();
+        if (logger.isDebugEnabled()) {
+            logger.debug("sending step {}/{} of {}{}", journeySteps, step.getName(), session, journeyEnd ? ", last" : "");
+        }
+        Resource.Info info = step.getResource().newInfo();
+        sendResourceTree(clients, shard, session, info, warmup, false, new Callback.Nested(callback) {
+            @Override
+            public void succeeded() {
+                if (!warmup) {
+                    fireStepEvent(step, info);
+                    if (journeyEnd) {
+                        fireJourneyEvent(journeySteps, info.getTreeTime() - journeyBegin);
+                    }
+                }
+                super.succeeded();
+            }
+        });
+    }
+
+    private void sendResourceTree(HttpClient[] clients, Shard shard, Session session, Resource.Info info, boolean warmup, boolean login, Callback callback) {
+        Resource resource = info.getResource();
         int nodes = resource.descendantCount();
-        Resource.Info info = resource.newInfo();
         CountingCallback treeCallback = new CountingCallback(new Callback() {
             @Override
             public void succeeded() {
@@ -283,7 +573,7 @@ public class LoadGenerator extends ContainerLifeCycle {
                 }
                 info.setTreeTime(System.nanoTime());
                 if (!warmup) {
-                    fireResourceTreeEvent(info);
+                    fireResourceTreeEvent(shard.resourceListeners, info);
                 }
                 callback.succeeded();
             }
@@ -296,7 +586,7 @@ public class LoadGenerator extends ContainerLifeCycle {
                 callback.failed(x);
             }
         }, nodes);
-        Sender sender = new Sender(client, warmup, treeCallback);
+        Sender sender = new Sender(clients, shard, session, info, warmup, login, treeCallback);
         sender.offer(Collections.singletonList(info));
         sender.send();
     }
@@ -315,37 +605,172 @@ public class LoadGenerator extends ContainerLifeCycle {
                 .forEach(l -> l.onEnd(generator));
     }
 
-    private void fireResourceNodeEvent(Resource.Info info) {
-        config.getResourceListeners().stream()
+    private void fireScheduleEvent(long lag) {
+        config.getListeners().stream()
+                .filter(l -> l instanceof ScheduleListener)
+                .map(l -> (ScheduleListener)l)
+                .forEach(l -> l.onSchedule(this, lag));
+    }
+
+    private void fireSessionEvent(Session session, Resource.Info info) {
+        config.getListeners().stream()
+                .filter(l -> l instanceof SessionListener)
+                .map(l -> (SessionListener)l)
+                .forEach(l -> l.onSession(this, session, info));
+    }
+
+    private void fireStepEvent(Scenario.Step step, Resource.Info info) {
+        config.getListeners().stream()
+                .filter(l -> l instanceof Scenario.StepListener)
+                .map(l -> (Scenario.StepListener)l)
+                .forEach(l -> l.onStep(this, step, info));
+    }
+
+    private void fireJourneyEvent(int steps, long time) {
+        config.getListeners().stream()
+                .filter(l -> l instanceof Scenario.JourneyListener)
+                .map(l -> (Scenario.JourneyListener)l)
+                .forEach(l -> l.onJourney(this, steps, time));
+    }
+
+    private void fireResourceNodeEvent(List<Resource.Listener> listeners, Resource.Info info) {
+        listeners.stream()
                 .filter(l -> l instanceof Resource.NodeListener)
                 .map(l -> (Resource.NodeListener)l)
                 .forEach(l -> l.onResourceNode(info));
     }
 
-    private void fireResourceTreeEvent(Resource.Info info) {
-        config.getResourceListeners().stream()
+    private void fireResourceTreeEvent(List<Resource.Listener> listeners, Resource.Info info) {
+        listeners.stream()
                 .filter(l -> l instanceof Resource.TreeListener)
                 .map(l -> (Resource.TreeListener)l)
                 .forEach(l -> l.onResourceTree(info));
     }
 
+    private void fireResourceMessageEvent(List<Resource.Listener> listeners, Resource.Info info, long sendTime, long echoTime) {
+        listeners.stream()
+                .filter(l -> l instanceof Resource.MessageListener)
+                .map(l -> (Resource.MessageListener)l)
+                .forEach(l -> l.onResourceMessage(info, sendTime, echoTime));
+    }
+
+    private void fireResourceStreamEvent(List<Resource.Listener> listeners, Resource.Info info, long gap, long timestamp) {
+        listeners.stream()
+                .filter(l -> l instanceof Resource.StreamListener)
+                .map(l -> (Resource.StreamListener)l)
+                .forEach(l -> l.onResourceEvent(info, gap, timestamp));
+    }
+
+    private void fireResourceStreamEndEvent(List<Resource.Listener> listeners, Resource.Info info, Throwable failure) {
+        listeners.stream()
+                .filter(l -> l instanceof Resource.StreamListener)
+                .map(l -> (Resource.StreamListener)l)
+                .forEach(l -> l.onResourceStreamEnd(info, failure));
+    }
+
+    private void fireResourcePushEvent(List<Resource.Listener> listeners, URI uri, Resource.Push push) {
+        listeners.stream()
+                .filter(l -> l instanceof Resource.PushListener)
+                .map(l -> (Resource.PushListener)l)
+                .forEach(l -> l.onResourcePush(uri, push));
+    }
+
     private class Sender {
         private final Queue<Resource.Info> queue = new ArrayDeque<>();
-        private final Set<URI> pushCache = Collections.newSetFromMap(new ConcurrentHashMap<>());
-        private final HttpClient client;
+        // Maps the URIs sent to whether they have been pushed (true) or requested (false).
+        private final ConcurrentMap<URI, Boolean> uriCache = new ConcurrentHashMap<>();
+        private final Map<Resource, Resource.Info> pushCache = new ConcurrentHashMap<>();
+        // Resources waiting for their dependencies to complete.
+        private final List<Resource.Info> blocked = new ArrayList<>();
+        // Maps the completed resources to their critical path time.
+        private final Map<Resource, Long> completed = new IdentityHashMap<>();
+        private final HttpClient[] clients;
+        private final Shard shard;
+        private final Session session;
+        private final Resource.Info treeInfo;
         private final boolean warmup;
+        private final boolean login;
         private final CountingCallback callback;
         private boolean active;
-
-        private Sender(HttpClient client, boolean warmup, CountingCallback callback) {
-            this.client = client;
+        private int requests;
+        private int clientIndex;
+
+        private Sender(HttpClient[] clients, Shard shard, Session session, Resource.Info treeInfo, boolean warmup, boolean login, CountingCallback callback) {
+            this.clients = clients;
+            this.shard = shard;
+            this.session = session;
+            this.treeInfo = treeInfo;
             this.warmup = warmup;
+            this.login = login;
             this.callback = callback;
         }
 
+        private HttpClient nextClient() {
+            // Only called by the active sender thread.
+            HttpClient client = clients[clientIndex];
+            if (++clientIndex == clients.length) {
+                clientIndex = 0;
+            }
+            return client;
+        }
+
         private void offer(List<Resource.Info> resources) {
             synchronized (this) {
-                queue.addAll(resources);
+                for (Resource.Info info : resources) {
+                    if (isReady(info)) {
+                        queue.offer(info);
+                    } else {
+                        blocked.add(info);
+                    }
+                }
+            }
+        }
+
+        private boolean isReady(Resource.Info info) {
+            // Must be called with the lock held.
+            List<Resource> prerequisites = dependencies.get(info.getResource());
+            if (prerequisites == null) {
+                return true;
+            }
+            long criticalPathTime = info.getCriticalPathTime();
+            for (Resource prerequisite : prerequisites) {
+                Long time = completed.get(prerequisite);
+                if (time == null) {
+                    return false;
+                }
+                criticalPathTime = Math.max(criticalPathTime, time);
+            }
+            info.setCriticalPathTime(criticalPathTime);
+            return true;
+        }
+
+        private void completed(Resource.Info info, boolean request) {
+            long elapsed = Math.max(0, info.getResponseTime() - info.getRequestTime());
+            synchronized (this) {
+                if (request) {
+                    --requests;
+                }
+                long criticalPathTime = info.getCriticalPathTime() + elapsed;
+                info.setCriticalPathTime(criticalPathTime);
+                completed.put(info.getResource(), criticalPathTime);
+                if (criticalPathTime > treeInfo.getCriticalPathTime()) {
+                    treeInfo.setCriticalPathTime(criticalPathTime);
+                }
+                if (!blocked.isEmpty()) {
+                    for (Iterator<Resource.Info> iterator = blocked.iterator(); iterator.hasNext(); ) {
+                        Resource.Info next = iterator.next();
+                        if (isReady(next)) {
+                            iterator.remove();
+                            queue.offer(next);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void released() {
+            synchronized (this) {
+                --requests;
             }
         }
 
@@ -357,15 +782,25 @@ public class LoadGenerator extends ContainerLifeCycle {
                 active = true;
             }
 
+            int maxRequests = config.getMaxRequestsPerTree();
             List<Resource.Info> resources = new ArrayList<>();
             while (true) {
                 synchronized (this) {
-                    if (queue.isEmpty()) {
+                    while (!queue.isEmpty()) {
+                        boolean request = queue.peek().getResource().getPath() != null;
+                        if (request && maxRequests > 0 && requests >= maxRequests) {
+                            // Sent when a request of the tree completes.
+                            break;
+                        }
+                        if (request) {
+                            ++requests;
+                        }
+                        resources.add(queue.poll());
+                    }
+                    if (resources.isEmpty()) {
                         active = false;
                         return;
                     }
-                    resources.addAll(queue);
-                    queue.clear();
                 }
 
                 send(resources);
@@ -378,12 +813,56 @@ public class LoadGenerator extends ContainerLifeCycle {
                 Resource resource = info.getResource();
                 info.setRequestTime(System.nanoTime());
                 if (resource.getPath() != null) {
-                    HttpRequest httpRequest = (HttpRequest)newRequest(client, config, resource);
+                    if (resource.isWebSocket()) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("connecting {}{}", warmup ? "warmup " : "", resource);
+                        }
+                        new WebSocketHandler(nextClient(), info).connect();
+                        continue;
+                    }
 
-                    if (pushCache.contains(httpRequest.getURI())) {
+                    HttpRequest httpRequest = (HttpRequest)newRequest(nextClient(), config, resource);
+                    String bearerToken = session.getBearerToken();
+                    if (bearerToken != null) {
+                        httpRequest.header(HttpHeader.AUTHORIZATION, "Bearer " + bearerToken);
+                    }
+                    expand(httpRequest, resource);
+
+                    if (isCacheable(resource)) {
+                        ResponseCache.Entry entry = session.getCache().get(httpRequest.getURI().toString());
+                        if (entry != null) {
+                            long now = System.nanoTime();
+                            if (entry.isFresh(now)) {
+                                if (logger.isDebugEnabled()) {
+                                    logger.debug("cached {}", resource);
+                                }
+                                if (!warmup) {
+                                    cacheHits.increment();
+                                }
+                                // Like group resources, cached resources don't fire the resource event.
+                                info.setResponseTime(now);
+                                completed(info, true);
+                                callback.succeeded();
+                                sendChildren(info);
+                                continue;
+                            }
+                            if (entry.getETag() != null) {
+                                httpRequest.header(HttpHeader.IF_NONE_MATCH, entry.getETag());
+                            }
+                            if (entry.getLastModified() != null) {
+                                httpRequest.header(HttpHeader.IF_MODIFIED_SINCE, entry.getLastModified());
+                            }
+                            if (!warmup) {
+                                cacheValidations.increment();
+                            }
+                        }
+                    }
+
+                    if (uriCache.putIfAbsent(httpRequest.getURI(), false) == Boolean.TRUE) {
                         if (logger.isDebugEnabled()) {
                             logger.debug("skip sending pushed {}", resource);
                         }
+                        released();
                     } else {
                         if (logger.isDebugEnabled()) {
                             logger.debug("sending {}{}", warmup ? "warmup " : "", resource);
@@ -395,42 +874,124 @@ public class LoadGenerator extends ContainerLifeCycle {
                             if (logger.isDebugEnabled()) {
                                 logger.debug("pushed {}", child);
                             }
-                            if (child != null && pushCache.add(pushedURI)) {
+                            Resource.Push push;
+                            Response.CompleteListener result = null;
+                            if (child == null) {
+                                push = Resource.Push.UNMATCHED;
+                            } else if (uriCache.putIfAbsent(pushedURI, true) != null) {
+                                push = Resource.Push.REDUNDANT;
+                            } else {
+                                push = Resource.Push.ACCEPTED;
                                 Resource.Info pushedInfo = child.newInfo();
                                 pushedInfo.setRequestTime(System.nanoTime());
                                 pushedInfo.setPushed(true);
-                                return new ResponseHandler(pushedInfo);
-                            } else {
-                                return null;
+                                pushedInfo.setProfile(treeInfo.getProfile());
+                                pushCache.put(child, pushedInfo);
+                                result = new ResponseHandler(pushedInfo);
                             }
+                            if (!warmup) {
+                                fireResourcePushEvent(shard.resourceListeners, pushedURI, push);
+                            }
+                            return result;
                         });
 
                         Request request = config.getRequestListeners().stream()
                                 .reduce(httpRequest, Request::listener, (r1, r2) -> r1);
-                        request.send(new ResponseHandler(info));
+                        request.send(resource.isStreaming() ? new StreamHandler(info) : new ResponseHandler(info));
                     }
                 } else {
                     info.setResponseTime(System.nanoTime());
+                    completed(info, false);
                     // Don't fire the resource event for "group" resources.
                     callback.succeeded();
-                    sendChildren(resource);
+                    sendChildren(info);
+                }
+            }
+        }
+
+        private void expand(HttpRequest request, Resource resource) {
+            // Only templates are expanded, to avoid copying strings.
+            String path = resource.getPath();
+            if (path.contains("${")) {
+                request.path(session.expand(path));
+            }
+            for (HttpField field : resource.getRequestHeaders()) {
+                String value = field.getValue();
+                if (value != null && value.contains("${")) {
+                    request.getHeaders().put(field.getName(), session.expand(value));
                 }
             }
+            String requestBody = resource.getRequestBody();
+            if (requestBody != null && requestBody.contains("${")) {
+                request.content(new StringContentProvider(session.expand(requestBody)));
+            }
         }
 
-        private void sendChildren(Resource resource) {
-            List<Resource> children = resource.getResources();
+        private boolean isCacheable(Resource resource) {
+            return session.getCache() != null &&
+                    !login &&
+                    !resource.isStreaming() &&
+                    HttpMethod.GET.is(resource.getMethod());
+        }
+
+        private void cache(Resource.Info info, Result result) {
+            Response response = result.getResponse();
+            String uri = result.getRequest().getURI().toString();
+            ResponseCache cache = session.getCache();
+            int status = response.getStatus();
+            if (status == HttpStatus.OK_200) {
+                cache.store(uri, response.getHeaders(), info.getResponseTime());
+            } else if (status == HttpStatus.NOT_MODIFIED_304) {
+                if (!warmup) {
+                    cacheNotModified.increment();
+                }
+                cache.revalidated(uri, response.getHeaders(), info.getResponseTime());
+            }
+        }
+
+        private void recordPushSavedTime(Resource resource) {
+            // The children of the resource would be requested now, had they not been pushed.
+            long now = System.nanoTime();
+            for (Resource child : resource.getResources()) {
+                Resource.Info pushedInfo = pushCache.get(child);
+                if (pushedInfo != null) {
+                    long saved = Math.max(0, now - pushedInfo.getRequestTime());
+                    synchronized (this) {
+                        if (saved > treeInfo.getPushSavedTime()) {
+                            treeInfo.setPushSavedTime(saved);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void sendChildren(Resource.Info info) {
+            List<Resource> children = info.getResource().getResources();
             if (!children.isEmpty()) {
-                offer(children.stream().map(Resource::newInfo).collect(Collectors.toList()));
-                send();
+                long criticalPathTime = info.getCriticalPathTime();
+                offer(children.stream()
+                        .map(child -> {
+                            Resource.Info childInfo = child.newInfo();
+                            childInfo.setCriticalPathTime(criticalPathTime);
+                            childInfo.setProfile(info.getProfile());
+                            return childInfo;
+                        })
+                        .collect(Collectors.toList()));
             }
+            // Completed resources may have unblocked other resources.
+            send();
         }
 
         private class ResponseHandler extends Response.Listener.Adapter {
-            private final Resource.Info info;
+            protected final Resource.Info info;
+            private final Extractor.Matcher[] matchers;
 
             private ResponseHandler(Resource.Info info) {
                 this.info = info;
+                List<Extractor> extractors = info.getResource().getExtractors();
+                this.matchers = extractors.isEmpty() ? null : extractors.stream()
+                        .map(Extractor::newMatcher)
+                        .toArray(Extractor.Matcher[]::new);
             }
 
             @Override
@@ -439,10 +1000,41 @@ public class LoadGenerator extends ContainerLifeCycle {
                 info.setLatencyTime(System.nanoTime());
             }
 
+            @Override
+            public void onHeaders(Response response) {
+                String header = config.getBearerTokenHeader();
+                if (login && header != null) {
+                    String token = response.getHeaders().get(header);
+                    if (token != null) {
+                        session.setBearerToken(token.startsWith("Bearer ") ? token.substring(7) : token);
+                    }
+                }
+                if (matchers != null) {
+                    for (Extractor.Matcher matcher : matchers) {
+                        matcher.headers(response.getHeaders());
+                    }
+                }
+            }
+
             @Override
             public void onContent(Response response, ByteBuffer buffer) {
                 // Record content length.
                 info.addContent(buffer.remaining());
+                if (matchers != null) {
+                    for (Extractor.Matcher matcher : matchers) {
+                        matcher.content(buffer.slice());
+                    }
+                }
+            }
+
+            private void extract() {
+                List<Extractor> extractors = info.getResource().getExtractors();
+                for (int i = 0; i < matchers.length; ++i) {
+                    String value = matchers[i].complete();
+                    if (value != null) {
+                        session.setVariable(extractors.get(i).getVariable(), value);
+                    }
+                }
             }
 
             @Override
@@ -451,17 +1043,340 @@ public class LoadGenerator extends ContainerLifeCycle {
                 if (logger.isDebugEnabled()) {
                     logger.debug("completed {}: {}", resource, result);
                 }
-                if (result.isSucceeded()) {
+                // Must be recorded before the tree may complete.
+                recordPushSavedTime(resource);
+                if (isSucceeded(result)) {
                     info.setResponseTime(System.nanoTime());
                     info.setStatus(result.getResponse().getStatus());
+                    if (matchers != null) {
+                        // Before the children, which may use the variables, are sent.
+                        extract();
+                    }
+                    if (!login && info.getStatus() == HttpStatus.UNAUTHORIZED_401 && config.getLogin() != null) {
+                        // The session expired on the server, log in again.
+                        session.invalidate();
+                    }
+                    if (!info.isPushed() && isCacheable(resource)) {
+                        cache(info, result);
+                    }
+                    completed(info, !info.isPushed());
                     if (!warmup) {
-                        fireResourceNodeEvent(info);
+                        fireResourceNodeEvent(shard.resourceListeners, info);
                     }
                     callback.succeeded();
                 } else {
+                    completed(info, !info.isPushed());
                     callback.failed(result.getFailure());
                 }
-                sendChildren(resource);
+                sendChildren(info);
+            }
+
+            protected boolean isSucceeded(Result result) {
+                return result.isSucceeded();
+            }
+        }
+
+        private class StreamHandler extends ResponseHandler {
+            private final StringBuilder line = new StringBuilder();
+            private Throwable closed;
+            private boolean eventStream;
+            private boolean data;
+            private long timestamp;
+
+            private StreamHandler(Resource.Info info) {
+                super(info);
+            }
+
+            @Override
+            public void onHeaders(Response response) {
+                super.onHeaders(response);
+                String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+                eventStream = contentType != null && contentType.startsWith("text/event-stream");
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer buffer) {
+                if (eventStream) {
+                    // Parse the Server-Sent Events lines, only
+                    // keeping the beginning of each line to
+                    // find the field name and the timestamp.
+                    for (int i = buffer.position(); i < buffer.limit(); ++i) {
+                        byte b = buffer.get(i);
+                        if (b == '\n') {
+                            parseLine(response);
+                            line.setLength(0);
+                        } else if (b != '\r' && line.length() < 64) {
+                            line.append((char)b);
+                        }
+                    }
+                    super.onContent(response, buffer);
+                } else {
+                    super.onContent(response, buffer);
+                    event(response, 0);
+                }
+            }
+
+            private void parseLine(Response response) {
+                if (line.length() == 0) {
+                    // A blank line dispatches the event, if it has data.
+                    if (data) {
+                        event(response, timestamp);
+                    }
+                    data = false;
+                    timestamp = 0;
+                } else if (line.charAt(0) != ':') {
+                    int colon = line.indexOf(":");
+                    String field = colon < 0 ? line.toString() : line.substring(0, colon);
+                    if ("data".equals(field)) {
+                        data = true;
+                    } else if (Resource.EVENT_TIMESTAMP.equals(field) && colon > 0) {
+                        try {
+                            timestamp = Long.parseLong(line.substring(colon + 1).trim());
+                        } catch (NumberFormatException x) {
+                            timestamp = 0;
+                        }
+                    }
+                }
+            }
+
+            private void event(Response response, long timestamp) {
+                long now = System.nanoTime();
+                long previous = info.getEvents() == 0 ? info.getLatencyTime() : info.getEventTime();
+                info.setEventTime(now);
+                info.setEvents(info.getEvents() + 1);
+                if (!warmup) {
+                    fireResourceStreamEvent(shard.resourceListeners, info, now - previous, timestamp);
+                }
+                int events = info.getResource().getEvents();
+                if (events > 0 && info.getEvents() == events && closed == null) {
+                    closed = new EOFException("closed after " + events + " events");
+                    response.abort(closed);
+                }
+            }
+
+            @Override
+            public void onComplete(Result result) {
+                if (!warmup) {
+                    // Unlike the node event, also emitted when the stream failed.
+                    fireResourceStreamEndEvent(shard.resourceListeners, info, isSucceeded(result) ? null : result.getFailure());
+                }
+                super.onComplete(result);
+            }
+
+            @Override
+            protected boolean isSucceeded(Result result) {
+                // Closing the stream after enough events is not a failure.
+                return super.isSucceeded(result) || (closed != null && result.getFailure() == closed);
+            }
+        }
+
+        private class WebSocketHandler extends WebSocketAdapter {
+            private final Queue<Long> sendTimes = new ConcurrentLinkedQueue<>();
+            private final AtomicInteger sent = new AtomicInteger();
+            private final AtomicInteger written = new AtomicInteger();
+            private final AtomicInteger echoed = new AtomicInteger();
+            private final AtomicBoolean complete = new AtomicBoolean();
+            private final HttpClient client;
+            private final Resource.Info info;
+            private final Resource resource;
+            private final byte[] payload;
+
+            private WebSocketHandler(HttpClient client, Resource.Info info) {
+                this.client = client;
+                this.info = info;
+                this.resource = info.getResource();
+                // The content of the messages does not matter (frame
+                // masking rewrites it), so all the messages share it.
+                this.payload = new byte[resource.getMessageLength()];
+            }
+
+            private void connect() {
+                ClientUpgradeRequest upgrade = new ClientUpgradeRequest();
+                resource.getRequestHeaders().forEach(field -> upgrade.setHeader(field.getName(), field.getValue()));
+                String bearerToken = session.getBearerToken();
+                if (bearerToken != null) {
+                    upgrade.setHeader(HttpHeader.AUTHORIZATION.asString(), "Bearer " + bearerToken);
+                }
+                try {
+                    client.getBean(WebSocketClient.class).connect(this, newWebSocketURI(config, resource), upgrade);
+                } catch (Throwable x) {
+                    failed(x);
+                }
+            }
+
+            @Override
+            public void onWebSocketConnect(org.eclipse.jetty.websocket.api.Session session) {
+                super.onWebSocketConnect(session);
+                // Record time to upgrade.
+                info.setLatencyTime(System.nanoTime());
+                info.setStatus(HttpStatus.SWITCHING_PROTOCOLS_101);
+                if (resource.getMessages() > 0) {
+                    send();
+                } else {
+                    succeeded();
+                }
+            }
+
+            private void send() {
+                int count = sent.incrementAndGet();
+                if (count > resource.getMessages()) {
+                    return;
+                }
+                sendTimes.offer(System.nanoTime());
+                getRemote().sendBytes(ByteBuffer.wrap(payload), new WriteCallback() {
+                    @Override
+                    public void writeSuccess() {
+                        int writes = written.incrementAndGet();
+                        if (!resource.isMessageEcho()) {
+                            if (writes == resource.getMessages()) {
+                                succeeded();
+                            } else if (resource.getMessageRate() == 0) {
+                                send();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void writeFailed(Throwable x) {
+                        failed(x);
+                    }
+                });
+                int rate = resource.getMessageRate();
+                if (rate > 0 && count < resource.getMessages()) {
+                    client.getScheduler().schedule(this::send, TimeUnit.SECONDS.toNanos(1) / rate, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            @Override
+            public void onWebSocketBinary(byte[] payload, int offset, int length) {
+                echo(length);
+            }
+
+            @Override
+            public void onWebSocketText(String message) {
+                echo(message.length());
+            }
+
+            private void echo(int length) {
+                long echoTime = System.nanoTime();
+                // Echoes arrive in order from a single thread.
+                info.addContent(length);
+                Long sendTime = sendTimes.poll();
+                if (sendTime != null && !warmup) {
+                    fireResourceMessageEvent(shard.resourceListeners, info, sendTime, echoTime);
+                }
+                int count = echoed.incrementAndGet();
+                if (resource.isMessageEcho()) {
+                    if (count >= resource.getMessages()) {
+                        succeeded();
+                    } else if (resource.getMessageRate() == 0) {
+                        send();
+                    }
+                }
+            }
+
+            @Override
+            public void onWebSocketClose(int statusCode, String reason) {
+                super.onWebSocketClose(statusCode, reason);
+                failed(new EOFException("WebSocket closed " + statusCode + " " + reason));
+            }
+
+            @Override
+            public void onWebSocketError(Throwable cause) {
+                failed(cause);
+            }
+
+            private void succeeded() {
+                if (complete.compareAndSet(false, true)) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("completed {}: {}/{} messages", resource, sent.get(), echoed.get());
+                    }
+                    info.setResponseTime(System.nanoTime());
+                    getSession().close(StatusCode.NORMAL, null);
+                    recordPushSavedTime(resource);
+                    completed(info, true);
+                    if (!warmup) {
+                        fireResourceNodeEvent(shard.resourceListeners, info);
+                    }
+                    callback.succeeded();
+                    sendChildren(info);
+                }
+            }
+
+            private void failed(Throwable x) {
+                if (complete.compareAndSet(false, true)) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("failed " + resource, x);
+                    }
+                    org.eclipse.jetty.websocket.api.Session session = getSession();
+                    if (session != null) {
+                        session.close();
+                    }
+                    completed(info, true);
+                    callback.failed(x);
+                    sendChildren(info);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>The resources owned by a sender thread.</p>
+     * <p>In sharded mode, each shard has its own executor and scheduler,
+     * optionally bound to the CPUs of the shard, so that the sender thread,
+     * the selectors and the response processing of its users don't contend
+     * with other shards.</p>
+     */
+    private class Shard {
+        private final int index;
+        private final List<Resource.Listener> shardResourceListeners;
+        // The listeners notified by this shard: the shared ones, then the shard ones.
+        private final List<Resource.Listener> resourceListeners;
+        private QueuedThreadPool executor;
+        private Scheduler scheduler;
+
+        private Shard(int index) {
+            this.index = index;
+            this.shardResourceListeners = Collections.unmodifiableList(config.getShardResourceListeners().stream()
+                    .map(Supplier::get)
+                    .collect(Collectors.toList()));
+            List<Resource.Listener> listeners = new ArrayList<>(config.getResourceListeners());
+            listeners.addAll(shardResourceListeners);
+            this.resourceListeners = Collections.unmodifiableList(listeners);
+        }
+
+        private void start() throws Exception {
+            ThreadAffinity affinity = config.getThreadAffinity();
+            int count = shards.length;
+            executor = new QueuedThreadPool() {
+                @Override
+                protected Thread newThread(Runnable job) {
+                    return super.newThread(() -> {
+                        affinity.bind(index, count);
+                        job.run();
+                    });
+                }
+            };
+            executor.setName("shard-" + index);
+            executor.setDaemon(true);
+            executor.start();
+            scheduler = new ScheduledExecutorScheduler("shard-" + index + "-scheduler", true);
+            scheduler.start();
+        }
+
+        private void stop() {
+            try {
+                if (scheduler != null) {
+                    scheduler.stop();
+                }
+                if (executor != null) {
+                    executor.stop();
+                }
+            } catch (Throwable x) {
+                logger.ignore(x);
+            } finally {
+                scheduler = null;
+                executor = null;
             }
         }
     }
@@ -476,6 +1391,7 @@ public class LoadGenerator extends ContainerLifeCycle {
         protected long runFor = 0;
         protected int usersPerThread = 1;
         protected int channelsPerUser = 1024;
+        protected int connectionsPerUser = 1;
         protected int resourceRate = 1;
         protected String scheme = "http";
         protected String host = "localhost";
@@ -489,7 +1405,20 @@ public class LoadGenerator extends ContainerLifeCycle {
         protected final List<Listener> listeners = new ArrayList<>();
         protected final List<Request.Listener> requestListeners = new ArrayList<>();
         protected final List<Resource.Listener> resourceListeners = new ArrayList<>();
+        protected final List<Connection.Listener> connectionListeners = new ArrayList<>();
+        protected final List<String> localAddresses = new ArrayList<>();
         protected int maxRequestsQueued = 128 * 1024;
+        protected int maxRequestsPerTree;
+        protected Resource login;
+        protected long loginRefreshPeriod;
+        protected String bearerTokenHeader;
+        protected Scenario scenario;
+        protected ResourceMix mix;
+        protected int cacheEntries;
+        protected double returningVisitorRatio = 1;
+        protected boolean sharded;
+        protected ThreadAffinity threadAffinity = ThreadAffinity.NONE;
+        protected final List<Supplier<? extends Resource.Listener>> shardResourceListeners = new ArrayList<>();
 
         public int getThreads() {
             return threads;
@@ -515,10 +1444,25 @@ public class LoadGenerator extends ContainerLifeCycle {
             return channelsPerUser;
         }
 
+        public int getConnectionsPerUser() {
+            return connectionsPerUser;
+        }
+
         public int getResourceRate() {
             return resourceRate;
         }
 
+        /**
+         * <p>Each sender thread sends one resource tree per period, so this is also the
+         * expected interval between two requests for the same resource by a sender thread.</p>
+         *
+         * @return the time, in ns, between two iterations of a sender thread at the
+         * {@link #getResourceRate() resource rate}, or 0 if the resource rate is unbounded
+         */
+        public long getIterationPeriod() {
+            return resourceRate > 0 ? TimeUnit.SECONDS.toNanos(threads) / resourceRate : 0;
+        }
+
         public String getScheme() {
             return scheme;
         }
@@ -571,14 +1515,70 @@ public class LoadGenerator extends ContainerLifeCycle {
             return resourceListeners;
         }
 
+        public List<Connection.Listener> getConnectionListeners() {
+            return connectionListeners;
+        }
+
+        public List<String> getLocalAddresses() {
+            return localAddresses;
+        }
+
+        public int getMaxRequestsPerTree() {
+            return maxRequestsPerTree;
+        }
+
+        public Resource getLogin() {
+            return login;
+        }
+
+        /**
+         * @return the period, in ns, after which users log in again, or zero to never refresh sessions
+         */
+        public long getLoginRefreshPeriod() {
+            return loginRefreshPeriod;
+        }
+
+        public String getBearerTokenHeader() {
+            return bearerTokenHeader;
+        }
+
+        public Scenario getScenario() {
+            return scenario;
+        }
+
+        public ResourceMix getMix() {
+            return mix;
+        }
+
+        public int getCacheEntries() {
+            return cacheEntries;
+        }
+
+        public double getReturningVisitorRatio() {
+            return returningVisitorRatio;
+        }
+
+        public boolean isSharded() {
+            return sharded;
+        }
+
+        public ThreadAffinity getThreadAffinity() {
+            return threadAffinity;
+        }
+
+        public List<Supplier<? extends Resource.Listener>> getShardResourceListeners() {
+            return shardResourceListeners;
+        }
+
         @Override
         public String toString() {
-            return String.format("%s[t=%d,i=%d,u=%d,c=%d,r=%d,%s://%s:%d]",
+            return String.format("%s[t=%d,i=%d,u=%d,c=%d,cu=%d,r=%d,%s://%s:%d]",
                     Config.class.getSimpleName(),
                     threads,
                     iterationsPerThread,
                     usersPerThread,
                     channelsPerUser,
+                    connectionsPerUser,
                     resourceRate,
                     scheme,
                     host,
@@ -646,6 +1646,10 @@ public class LoadGenerator extends ContainerLifeCycle {
         }
 
         /**
+         * <p>Configures the max number of connections per destination of each user HttpClient.</p>
+         * <p>Multiplexed transports such as HTTP/2 open a single connection per HttpClient,
+         * see {@link #connectionsPerUser(int)} and {@link HTTP2ClientTransportBuilder#maxConcurrentStreams(int)}.</p>
+         *
          * @param channelsPerUser the number of connections/streams per user
          * @return this Builder
          */
@@ -657,6 +1661,22 @@ public class LoadGenerator extends ContainerLifeCycle {
             return this;
         }
 
+        /**
+         * <p>Configures the number of HttpClient instances each user spreads its requests over.</p>
+         * <p>With multiplexed transports such as HTTP/2 this is the number of connections per user,
+         * for example a browser-like single connection or a service-mesh-like pool of connections.</p>
+         *
+         * @param connectionsPerUser the number of HttpClients per user
+         * @return this Builder
+         */
+        public Builder connectionsPerUser(int connectionsPerUser) {
+            if (connectionsPerUser < 1) {
+                throw new IllegalArgumentException();
+            }
+            this.connectionsPerUser = connectionsPerUser;
+            return this;
+        }
+
         /**
          * @param resourceRate number of resource trees requested per second, or zero for maximum request rate
          * @return this Builder
@@ -770,6 +1790,192 @@ public class LoadGenerator extends ContainerLifeCycle {
             return this;
         }
 
+        /**
+         * <p>Adds a listener for connection open/close events.</p>
+         * <p>If the listener also implements {@link org.eclipse.jetty.io.ssl.SslHandshakeListener},
+         * it is notified of TLS handshake events as well.</p>
+         *
+         * @param listener the connection listener
+         * @return this Builder
+         */
+        public Builder connectionListener(Connection.Listener listener) {
+            connectionListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * <p>Adds a local address the HttpClients bind to before connecting.</p>
+         * <p>When the load generator and the server share a host, binding the
+         * HttpClients round robin to several loopback addresses (for example
+         * 127.0.0.1, 127.0.0.2, etc.) multiplies the available ephemeral ports.</p>
+         *
+         * @param localAddress the local address to bind to
+         * @return this Builder
+         */
+        public Builder localAddress(String localAddress) {
+            localAddresses.add(Objects.requireNonNull(localAddress));
+            return this;
+        }
+
+        /**
+         * <p>Limits the number of requests of a resource tree that are in flight at once.</p>
+         * <p>Browsers open at most 6 connections per host with HTTP/1.1, so that
+         * the resources of a page are fetched 6 at a time: a value of 6 emulates
+         * this behavior, rather than sending all the ready resources at once.
+         * Resources waiting for a slot are not timed, like in browsers.</p>
+         *
+         * @param maxRequestsPerTree the max number of concurrent requests per resource tree, or zero for no limit
+         * @return this Builder
+         */
+        public Builder maxRequestsPerTree(int maxRequestsPerTree) {
+            this.maxRequestsPerTree = maxRequestsPerTree;
+            return this;
+        }
+
+        /**
+         * <p>Sets the resource tree each user fetches once to log in, before
+         * the warmup and measured iterations.</p>
+         * <p>All the HttpClients of a user share the cookies of the user, so that
+         * a session cookie set by the login is sent by all the user's requests.
+         * Login trees are reported to {@link SessionListener}s rather than to
+         * resource listeners, so that the session set-up cost is not mixed
+         * with the measured requests.</p>
+         *
+         * @param login the login resource tree
+         * @return this Builder
+         * @see #loginRefreshPeriod(long, TimeUnit)
+         * @see #bearerTokenHeader(String)
+         */
+        public Builder login(Resource login) {
+            this.login = login;
+            return this;
+        }
+
+        /**
+         * <p>Users log in again once the given period elapsed since their last login,
+         * or when a request is rejected with status 401.</p>
+         * <p>Sessions are refreshed in the background: users keep sending
+         * requests with their current session meanwhile.</p>
+         *
+         * @param period the session refresh period, or zero to never refresh sessions
+         * @param unit   the refresh period unit
+         * @return this Builder
+         */
+        public Builder loginRefreshPeriod(long period, TimeUnit unit) {
+            this.loginRefreshPeriod = unit.toNanos(period);
+            return this;
+        }
+
+        /**
+         * <p>Sets the name of the login response header carrying a bearer token;
+         * the token is then sent by all the user's requests in the
+         * {@code Authorization} header.</p>
+         *
+         * @param bearerTokenHeader the name of the login response header with the bearer token
+         * @return this Builder
+         */
+        public Builder bearerTokenHeader(String bearerTokenHeader) {
+            this.bearerTokenHeader = bearerTokenHeader;
+            return this;
+        }
+
+        /**
+         * <p>Makes each user follow the journeys of the given scenario, sending
+         * the resource tree of one step per iteration, rather than the
+         * {@link #resource(Resource) resource tree}.</p>
+         *
+         * @param scenario the scenario of the user journeys
+         * @return this Builder
+         */
+        public Builder scenario(Scenario scenario) {
+            this.scenario = scenario;
+            return this;
+        }
+
+        /**
+         * <p>Makes each iteration send the resource tree of one of the mix profiles,
+         * chosen according to the profile weights, rather than the
+         * {@link #resource(Resource) resource tree}.</p>
+         *
+         * @param mix the weighted resource profiles
+         * @return this Builder
+         */
+        public Builder mix(ResourceMix mix) {
+            this.mix = mix;
+            return this;
+        }
+
+        /**
+         * <p>Gives each user an HTTP cache, like a browser, storing the validators
+         * and freshness of {@code GET} responses: fresh resources are not requested
+         * again, while stale ones are revalidated with conditional requests.</p>
+         *
+         * @param cacheEntries the max number of entries of each user cache, or zero for no cache
+         * @return this Builder
+         * @see #returningVisitorRatio(double)
+         */
+        public Builder cacheEntries(int cacheEntries) {
+            this.cacheEntries = cacheEntries;
+            return this;
+        }
+
+        /**
+         * <p>The cache of a user is emptied before a resource tree, to emulate a new visitor,
+         * unless the visitor is a returning visitor, with the given probability.</p>
+         *
+         * @param returningVisitorRatio the ratio, between 0 and 1, of the resource trees sent by returning visitors
+         * @return this Builder
+         */
+        public Builder returningVisitorRatio(double returningVisitorRatio) {
+            if (returningVisitorRatio < 0 || returningVisitorRatio > 1) {
+                throw new IllegalArgumentException();
+            }
+            this.returningVisitorRatio = returningVisitorRatio;
+            return this;
+        }
+
+        /**
+         * <p>Enables the sharded mode, where each sender thread owns a shard:
+         * its users, an executor and a scheduler used by the HttpClients of
+         * those users, and the {@link #shardResourceListener(Supplier) shard resource listeners}.</p>
+         * <p>Shards share nothing, so that sender, selector and executor threads
+         * of a shard don't contend with the other shards.</p>
+         *
+         * @param sharded whether each sender thread owns its threads and listeners
+         * @return this Builder
+         * @see #threadAffinity(ThreadAffinity)
+         */
+        public Builder sharded(boolean sharded) {
+            this.sharded = sharded;
+            return this;
+        }
+
+        /**
+         * <p>In sharded mode, binds the threads of each shard to a subset of the CPUs.</p>
+         *
+         * @param threadAffinity the hook binding the shard threads to CPUs
+         * @return this Builder
+         * @see org.mortbay.jetty.load.generator.util.LinuxThreadAffinity
+         */
+        public Builder threadAffinity(ThreadAffinity threadAffinity) {
+            this.threadAffinity = Objects.requireNonNull(threadAffinity);
+            return this;
+        }
+
+        /**
+         * <p>Adds a factory of resource listeners, invoked once per sender thread.</p>
+         * <p>Each listener instance is only notified by the threads of its shard,
+         * and can be retrieved with {@link LoadGenerator#getShardResourceListeners(int)}
+         * to merge the results of all the shards.</p>
+         *
+         * @param factory the factory of shard resource listeners
+         * @return this Builder
+         */
+        public Builder shardResourceListener(Supplier<? extends Resource.Listener> factory) {
+            shardResourceListeners.add(Objects.requireNonNull(factory));
+            return this;
+        }
+
         public LoadGenerator build() {
             if (httpClientTransportBuilder == null) {
                 httpClientTransportBuilder = new HTTP1ClientTransportBuilder();
@@ -788,4 +1994,31 @@ public class LoadGenerator extends ContainerLifeCycle {
     public interface EndListener extends Listener {
         void onEnd(LoadGenerator generator);
     }
+
+    /**
+     * <p>Listener for the {@link Builder#login(Resource) login} of users.</p>
+     */
+    public interface SessionListener extends Listener {
+        /**
+         * <p>Callback method invoked when a user logged in, either before the iterations
+         * or when its session is refreshed.</p>
+         *
+         * @param generator the load generator
+         * @param session   the session of the user
+         * @param info      the info of the login resource tree
+         */
+        void onSession(LoadGenerator generator, Session session, Resource.Info info);
+    }
+
+    /**
+     * <p>Listener notified each time a sender thread sends a resource tree (warmup excluded).</p>
+     */
+    public interface ScheduleListener extends Listener {
+        /**
+         * @param generator the load generator
+         * @param lag the time (in ns) between the send time scheduled by the resource rate and
+         * the actual send time, or 0 if the resource rate is unbounded
+         */
+        void onSchedule(LoadGenerator generator, long lag);
+    }
 }
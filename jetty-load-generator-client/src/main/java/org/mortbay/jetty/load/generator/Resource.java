@@ -22,7 +22,10 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EventListener;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpMethod;
@@ -35,16 +38,33 @@ import org.eclipse.jetty.http.HttpMethod;
  * <p>A Resource without a path is a <em>group</em> resource,
  * only meant to group resources together (for example to fetch all
  * JavaScript resources as a group before fetching the image resources).</p>
+ * <p>A resource may also {@link #dependsOn(String...) depend} on other
+ * resources of the tree, which are then fetched before it.</p>
  */
 public class Resource {
     public static final String RESPONSE_LENGTH = "JLG-Response-Length";
+    /**
+     * The Server-Sent Events field carrying the server timestamp, in ms since the epoch, of an event.
+     */
+    public static final String EVENT_TIMESTAMP = "timestamp";
 
     private final List<Resource> resources = new ArrayList<>();
+    private final List<String> dependencies = new ArrayList<>();
+    private final List<Extractor> extractors = new ArrayList<>();
     private final HttpFields requestHeaders = new HttpFields();
     private String method = HttpMethod.GET.asString();
     private String path = "/";
     private int requestLength;
+    private String requestBody;
     private int responseLength;
+    private boolean webSocket;
+    private int messages = 1;
+    private int messageLength;
+    private int messageRate;
+    private boolean messageEcho = true;
+    private boolean streaming;
+    private int events;
+    private transient int id = -1;
 
     public Resource() {
         this((String)null);
@@ -104,6 +124,22 @@ public class Resource {
         return requestLength;
     }
 
+    /**
+     * <p>Sets the request content, overriding the {@link #requestLength(int) request length}.</p>
+     * <p>The content may reference variables as {@code ${name}}, see {@link Extractor}.</p>
+     *
+     * @param requestBody the request content
+     * @return this Resource
+     */
+    public Resource requestBody(String requestBody) {
+        this.requestBody = requestBody;
+        return this;
+    }
+
+    public String getRequestBody() {
+        return requestBody;
+    }
+
     /**
      * Adds a request header.
      *
@@ -149,6 +185,78 @@ public class Resource {
         return responseLength;
     }
 
+    /**
+     * <p>Makes this resource a WebSocket resource.</p>
+     * <p>WebSocket resources are fetched by upgrading to WebSocket,
+     * sending {@link #messages(int) messages} binary messages,
+     * waiting for their echoes if {@link #messageEcho(boolean) required},
+     * and then closing the WebSocket connection.</p>
+     *
+     * @param webSocket whether this resource is a WebSocket resource
+     * @return this Resource
+     */
+    public Resource webSocket(boolean webSocket) {
+        this.webSocket = webSocket;
+        return this;
+    }
+
+    public boolean isWebSocket() {
+        return webSocket;
+    }
+
+    /**
+     * @param messages the number of WebSocket messages to send
+     * @return this Resource
+     */
+    public Resource messages(int messages) {
+        this.messages = messages;
+        return this;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    /**
+     * @param messageLength the WebSocket message length in bytes
+     * @return this Resource
+     */
+    public Resource messageLength(int messageLength) {
+        this.messageLength = messageLength;
+        return this;
+    }
+
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    /**
+     * @param messageRate the number of WebSocket messages sent per second, or zero to send
+     *                    the next message as soon as the previous one has been echoed (or written)
+     * @return this Resource
+     */
+    public Resource messageRate(int messageRate) {
+        this.messageRate = messageRate;
+        return this;
+    }
+
+    public int getMessageRate() {
+        return messageRate;
+    }
+
+    /**
+     * @param messageEcho whether the server is expected to echo each WebSocket message
+     * @return this Resource
+     */
+    public Resource messageEcho(boolean messageEcho) {
+        this.messageEcho = messageEcho;
+        return this;
+    }
+
+    public boolean isMessageEcho() {
+        return messageEcho;
+    }
+
     /**
      * @return the children resources
      */
@@ -181,6 +289,22 @@ public class Resource {
         return null;
     }
 
+    /**
+     * <p>Resource ids are assigned by the {@link LoadGenerator} when it is built,
+     * from 0 to the number of its resources - 1, so that listeners can index
+     * their data by resource rather than by path.</p>
+     *
+     * @return the id of this resource, or -1 if this resource has no id
+     * @see LoadGenerator#getResources()
+     */
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * @return the number of descendant resource nodes
      */
@@ -196,6 +320,115 @@ public class Resource {
         return result;
     }
 
+    /**
+     * <p>Declares that this resource can only be requested once the resources
+     * with the given paths have completed, in addition to its parent.</p>
+     * <p>Dependencies turn the resource tree into a directed acyclic graph,
+     * for example a script that is only fetched once the stylesheets of the
+     * page have been downloaded, like browsers do.
+     * The paths must be the paths of other resources of the same tree;
+     * if several resources have the same path, all of them must complete.</p>
+     *
+     * @param paths the paths of the resources this resource depends on
+     * @return this Resource
+     * @see #resolveDependencies()
+     */
+    public Resource dependsOn(String... paths) {
+        Collections.addAll(dependencies, paths);
+        return this;
+    }
+
+    /**
+     * @return the paths of the resources this resource depends on
+     */
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * <p>Adds an extractor of a value of the response to this resource into a variable
+     * of the user session, to be used in the path, headers or body of later resources.</p>
+     *
+     * @param extractor the extractor
+     * @return this Resource
+     */
+    public Resource extract(Extractor extractor) {
+        extractors.add(extractor);
+        return this;
+    }
+
+    /**
+     * @return the extractors of values of the response to this resource
+     */
+    public List<Extractor> getExtractors() {
+        return extractors;
+    }
+
+    /**
+     * <p>Resolves the dependencies of this resource and its descendants.</p>
+     *
+     * @return a map from the resources that have dependencies to the resources they depend on
+     * @throws IllegalArgumentException if a dependency is not a resource of this tree,
+     *                                  or if the dependencies form a cycle
+     */
+    public Map<Resource, List<Resource>> resolveDependencies() {
+        Map<Resource, Resource> parents = new IdentityHashMap<>();
+        Map<String, List<Resource>> paths = new HashMap<>();
+        collect(this, null, parents, paths);
+
+        Map<Resource, List<Resource>> result = new IdentityHashMap<>();
+        for (Resource resource : parents.keySet()) {
+            List<String> dependencies = resource.getDependencies();
+            if (!dependencies.isEmpty()) {
+                List<Resource> prerequisites = new ArrayList<>();
+                for (String dependency : dependencies) {
+                    List<Resource> matches = paths.get(dependency);
+                    if (matches == null) {
+                        throw new IllegalArgumentException("Unknown dependency " + dependency + " of " + resource);
+                    }
+                    prerequisites.addAll(matches);
+                }
+                result.put(resource, prerequisites);
+            }
+        }
+
+        // A resource waits for its parent and its dependencies.
+        Map<Resource, Boolean> visited = new IdentityHashMap<>();
+        for (Resource resource : result.keySet()) {
+            checkCycle(resource, parents, result, visited);
+        }
+        return result;
+    }
+
+    private void collect(Resource resource, Resource parent, Map<Resource, Resource> parents, Map<String, List<Resource>> paths) {
+        parents.put(resource, parent);
+        if (resource.getPath() != null) {
+            paths.computeIfAbsent(resource.getPath(), k -> new ArrayList<>()).add(resource);
+        }
+        for (Resource child : resource.getResources()) {
+            collect(child, resource, parents, paths);
+        }
+    }
+
+    private void checkCycle(Resource resource, Map<Resource, Resource> parents, Map<Resource, List<Resource>> dependencies, Map<Resource, Boolean> visited) {
+        // TRUE while the resource is being visited, FALSE once it has been visited.
+        Boolean visiting = visited.get(resource);
+        if (visiting == Boolean.TRUE) {
+            throw new IllegalArgumentException("Dependency cycle at " + resource);
+        }
+        if (visiting == null) {
+            visited.put(resource, true);
+            Resource parent = parents.get(resource);
+            if (parent != null) {
+                checkCycle(parent, parents, dependencies, visited);
+            }
+            for (Resource prerequisite : dependencies.getOrDefault(resource, Collections.emptyList())) {
+                checkCycle(prerequisite, parents, dependencies, visited);
+            }
+            visited.put(resource, false);
+        }
+    }
+
     /**
      * @return a new Info object
      */
@@ -214,6 +447,56 @@ public class Resource {
                 getResponseLength());
     }
 
+    /**
+     * <p>Makes this resource a streaming resource.</p>
+     * <p>Streaming resources are long-lived responses such as Server-Sent Events
+     * or chunked streams. Each event is reported to {@link StreamListener}s
+     * as it arrives: Server-Sent Events are delimited by blank lines,
+     * while other streams report each content chunk as an event.</p>
+     * <p>Each concurrent stream holds a connection with HTTP/1.1, so the number
+     * of concurrent streams per user is bounded by the channels per user.</p>
+     *
+     * @param streaming whether this resource is a streaming resource
+     * @return this Resource
+     */
+    public Resource streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @param events the number of events after which the stream is closed by the client,
+     *               or zero to read the stream until the server completes it
+     * @return this Resource
+     */
+    public Resource events(int events) {
+        this.events = events;
+        return this;
+    }
+
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * @return whether this resource or one of its descendants is a WebSocket resource
+     */
+    public boolean hasWebSocket() {
+        if (isWebSocket()) {
+            return true;
+        }
+        for (Resource child : getResources()) {
+            if (child.hasWebSocket()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Value class containing information per-resource and per-request.
      */
@@ -225,7 +508,12 @@ public class Resource {
         private long treeTime;
         private long contentLength;
         private boolean pushed;
+        private long pushSavedTime;
+        private long criticalPathTime;
+        private long eventTime;
+        private int events;
         private int status;
+        private String profile;
 
         private Info(Resource resource) {
             this.resource = resource;
@@ -307,6 +595,62 @@ public class Resource {
             this.pushed = pushed;
         }
 
+        /**
+         * @return the time, in ns, the last stream event arrived
+         */
+        public long getEventTime() {
+            return eventTime;
+        }
+
+        public void setEventTime(long eventTime) {
+            this.eventTime = eventTime;
+        }
+
+        /**
+         * @return the number of stream events received
+         */
+        public int getEvents() {
+            return events;
+        }
+
+        public void setEvents(int events) {
+            this.events = events;
+        }
+
+        /**
+         * <p>Only available for the root resource of a tree.</p>
+         * <p>The time saved is estimated as the largest head start of a pushed resource,
+         * that is the time between its push promise and the time it would have been
+         * requested by the load generator, had it not been pushed.</p>
+         *
+         * @return the time, in ns, saved by server push on the whole resource tree
+         */
+        public long getPushSavedTime() {
+            return pushSavedTime;
+        }
+
+        public void setPushSavedTime(long pushSavedTime) {
+            this.pushSavedTime = pushSavedTime;
+        }
+
+        /**
+         * <p>The critical path time of a resource is its own response time plus
+         * the largest critical path time of its parent and its dependencies.</p>
+         * <p>For the root resource of a tree, once the tree is complete, it is the
+         * largest critical path time of the tree, that is the time the tree would
+         * take with unbounded parallelism; the difference with the tree time is
+         * the time spent waiting for a connection.</p>
+         *
+         * @return the critical path time, in ns
+         */
+        public long getCriticalPathTime() {
+            return criticalPathTime;
+        }
+
+        public void setCriticalPathTime(long criticalPathTime) {
+            this.criticalPathTime = criticalPathTime;
+        }
+
         /**
          * @return the response HTTP status code
          */
@@ -317,6 +661,17 @@ public class Resource {
         public void setStatus(int status) {
             this.status = status;
         }
+
+        /**
+         * @return the name of the {@link ResourceMix} profile the resource tree belongs to, or null
+         */
+        public String getProfile() {
+            return profile;
+        }
+
+        public void setProfile(String profile) {
+            this.profile = profile;
+        }
     }
 
     public interface Listener extends EventListener {
@@ -337,4 +692,67 @@ public class Resource {
     public interface TreeListener extends Listener {
         public void onResourceTree(Info info);
     }
+
+    /**
+     * <p>Listener for WebSocket message events.</p>
+     * <p>Message events are emitted for each echoed message of non-warmup WebSocket resources.</p>
+     */
+    public interface MessageListener extends Listener {
+        /**
+         * @param info the WebSocket resource info
+         * @param sendTime the time, in ns, the message was sent
+         * @param echoTime the time, in ns, the message echo arrived
+         */
+        public void onResourceMessage(Info info, long sendTime, long echoTime);
+    }
+
+    /**
+     * <p>Listener for stream events.</p>
+     * <p>Stream events are emitted, as they arrive, for each event of non-warmup streaming resources.</p>
+     */
+    public interface StreamListener extends Listener {
+        /**
+         * @param info the streaming resource info, with the event arrival time as {@link Info#getEventTime()}
+         * @param gap the time, in ns, since the previous event, or since the response began for the first event
+         * @param timestamp the event {@link #EVENT_TIMESTAMP server timestamp} in ms since the epoch, or 0 if absent
+         */
+        public void onResourceEvent(Info info, long gap, long timestamp);
+
+        /**
+         * <p>Called when a non-warmup streaming resource completes, successfully or not,
+         * after its last event; unlike node events, also emitted for failed streams.</p>
+         *
+         * @param info the streaming resource info, with the number of events received
+         * @param failure the failure, or null if the stream completed successfully
+         */
+        public default void onResourceStreamEnd(Info info, Throwable failure) {
+        }
+    }
+
+    /**
+     * <p>Listener for server push events.</p>
+     * <p>Push events are emitted for each push promise received
+     * while fetching non-warmup resource trees.</p>
+     */
+    public interface PushListener extends Listener {
+        public void onResourcePush(URI uri, Push push);
+    }
+
+    /**
+     * The outcome of a push promise.
+     */
+    public enum Push {
+        /**
+         * The pushed resource belongs to the tree and has been accepted.
+         */
+        ACCEPTED,
+        /**
+         * The pushed resource does not belong to the tree and has been rejected.
+         */
+        UNMATCHED,
+        /**
+         * The pushed resource has already been requested or pushed and has been rejected.
+         */
+        REDUNDANT
+    }
 }
@@ -0,0 +1,157 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>A weighted mix of resource profiles sharing the same rate.</p>
+ * <p>Each iteration of a user sends the resource tree of one profile,
+ * chosen at random according to the profile weights, so that the
+ * traffic mix stays the same at any total rate:</p>
+ * <pre>
+ * ResourceMix mix = new ResourceMix()
+ *         .profile("pages", new Resource("/index.html", new Resource("/style.css")), 80)
+ *         .profile("api", new Resource("/api/items"), 20);
+ * </pre>
+ * <p>The resources of each tree carry the name of their profile,
+ * see {@link Resource.Info#getProfile()}.</p>
+ *
+ * @see LoadGenerator.Builder#mix(ResourceMix)
+ */
+public class ResourceMix {
+    private final List<Profile> profiles = new ArrayList<>();
+    private Profile[] table;
+    private Profile[] aliases;
+    private double[] probabilities;
+
+    /**
+     * @param name     the profile name
+     * @param resource the root resource of the profile
+     * @param weight   the weight of the profile, relative to the other profiles
+     * @return this ResourceMix
+     */
+    public ResourceMix profile(String name, Resource resource, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Invalid weight " + weight);
+        }
+        if (profiles.stream().anyMatch(profile -> profile.getName().equals(name))) {
+            throw new IllegalArgumentException("Duplicate profile " + name);
+        }
+        profiles.add(new Profile(name, resource, weight));
+        return this;
+    }
+
+    public List<Profile> getProfiles() {
+        return Collections.unmodifiableList(profiles);
+    }
+
+    public boolean hasWebSocket() {
+        return profiles.stream().anyMatch(profile -> profile.getResource().hasWebSocket());
+    }
+
+    /**
+     * <p>Builds the alias table (Vose's method) used by {@link #next(Random)}.</p>
+     */
+    void resolve() {
+        int size = profiles.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("No profiles");
+        }
+        table = profiles.toArray(new Profile[size]);
+        aliases = new Profile[size];
+        probabilities = new double[size];
+
+        double total = profiles.stream().mapToDouble(Profile::getWeight).sum();
+        double[] scaled = new double[size];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < size; ++i) {
+            scaled[i] = table[i].getWeight() * size / total;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probabilities[less] = scaled[less];
+            aliases[less] = table[more];
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).push(more);
+        }
+        // Leftovers are 1 modulo rounding errors.
+        while (!large.isEmpty()) {
+            probabilities[large.pop()] = 1;
+        }
+        while (!small.isEmpty()) {
+            probabilities[small.pop()] = 1;
+        }
+    }
+
+    /**
+     * @param random the random number generator
+     * @return a profile chosen according to the profile weights, in constant time
+     */
+    Profile next(Random random) {
+        int index = random.nextInt(table.length);
+        return random.nextDouble() < probabilities[index] ? table[index] : aliases[index];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), profiles);
+    }
+
+    /**
+     * <p>A named resource tree with its weight in the mix.</p>
+     */
+    public static class Profile {
+        private final String name;
+        private final Resource resource;
+        private final double weight;
+
+        public Profile(String name, Resource resource, double weight) {
+            this.name = name;
+            this.resource = resource;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s@%x[%s,weight=%.2f]", getClass().getSimpleName(), hashCode(), name, weight);
+        }
+    }
+}
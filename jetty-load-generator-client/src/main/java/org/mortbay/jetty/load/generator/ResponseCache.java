@@ -0,0 +1,185 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+
+/**
+ * <p>A bounded, least recently used, HTTP cache emulating the cache of a browser.</p>
+ * <p>Only the validators ({@code ETag} and {@code Last-Modified}) and the freshness
+ * ({@code Cache-Control: max-age}) of responses are stored, not their content:
+ * fresh entries are not requested again, while stale entries are revalidated
+ * with conditional requests.</p>
+ */
+public class ResponseCache {
+    private final Map<String, Entry> entries;
+
+    /**
+     * @param maxEntries the max number of entries, beyond which the least recently used entry is evicted
+     */
+    public ResponseCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param uri the URI of the resource
+     * @return the cache entry for the given URI, or null if the resource is not cached
+     */
+    public synchronized Entry get(String uri) {
+        return entries.get(uri);
+    }
+
+    /**
+     * <p>Stores the validators and the freshness of a {@code 200} response.</p>
+     *
+     * @param uri     the URI of the resource
+     * @param headers the response headers
+     * @param now     the response time, in ns
+     */
+    public void store(String uri, HttpFields headers, long now) {
+        long maxAge = maxAge(headers);
+        if (maxAge < 0) {
+            // Not cacheable.
+            return;
+        }
+        String etag = headers.get(HttpHeader.ETAG);
+        String lastModified = headers.get(HttpHeader.LAST_MODIFIED);
+        if (etag == null && lastModified == null && maxAge == 0) {
+            // Could neither be reused nor revalidated.
+            return;
+        }
+        Entry entry = new Entry(etag, lastModified, now + maxAge);
+        synchronized (this) {
+            entries.put(uri, entry);
+        }
+    }
+
+    /**
+     * <p>Refreshes the freshness of an entry after a {@code 304} response.</p>
+     *
+     * @param uri     the URI of the resource
+     * @param headers the response headers
+     * @param now     the response time, in ns
+     */
+    public void revalidated(String uri, HttpFields headers, long now) {
+        long maxAge = maxAge(headers);
+        synchronized (this) {
+            Entry entry = entries.get(uri);
+            if (entry != null) {
+                if (maxAge < 0) {
+                    entries.remove(uri);
+                } else {
+                    entries.put(uri, new Entry(entry.etag, entry.lastModified, now + maxAge));
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Empties this cache, as for a new visitor.</p>
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param headers the response headers
+     * @return the freshness lifetime in ns, or -1 if the response must not be stored
+     */
+    private static long maxAge(HttpFields headers) {
+        String cacheControl = headers.get(HttpHeader.CACHE_CONTROL);
+        if (cacheControl == null) {
+            // No heuristic freshness, always revalidate.
+            return 0;
+        }
+        long result = 0;
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase();
+            if (directive.equals("no-store")) {
+                return -1;
+            } else if (directive.equals("no-cache")) {
+                return 0;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    result = TimeUnit.SECONDS.toNanos(Long.parseLong(directive.substring("max-age=".length())));
+                } catch (NumberFormatException x) {
+                    result = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[size=%d]", getClass().getSimpleName(), hashCode(), size());
+    }
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final long expires;
+
+        private Entry(String etag, String lastModified, long expires) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+
+        /**
+         * @return the {@code ETag} validator, or null
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * @return the {@code Last-Modified} validator, or null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @param now the current time, in ns
+         * @return whether the entry can be used without revalidation
+         */
+        public boolean isFresh(long now) {
+            return expires - now > 0;
+        }
+    }
+}
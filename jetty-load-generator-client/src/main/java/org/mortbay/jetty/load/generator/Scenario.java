@@ -0,0 +1,239 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>A user journey, modeled as a Markov chain of named steps.</p>
+ * <p>Each step is a resource tree; after a step, a user either exits the journey
+ * with the step exit probability, or moves to one of the step transitions,
+ * chosen according to the transition weights.
+ * A user that exits begins a new journey from the first step.</p>
+ * <pre>
+ * Scenario scenario = new Scenario()
+ *         .step(new Scenario.Step("home", home).to("search", 3).to("product", 1).exit(0.2))
+ *         .step(new Scenario.Step("search", search).to("product", 1).exit(0.3))
+ *         .step(new Scenario.Step("product", product).to("cart", 1).to("search", 2).exit(0.4))
+ *         .step(new Scenario.Step("cart", cart).to("checkout", 1).exit(0.5))
+ *         .step(new Scenario.Step("checkout", checkout));
+ * </pre>
+ * <p>Steps are reported to {@link StepListener}s and complete journeys to
+ * {@link JourneyListener}s, both registered with
+ * {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ *
+ * @see LoadGenerator.Builder#scenario(Scenario)
+ */
+public class Scenario {
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+
+    /**
+     * <p>Adds a step; the first step added is the first step of each journey.</p>
+     *
+     * @param step the step to add
+     * @return this Scenario
+     */
+    public Scenario step(Step step) {
+        if (steps.putIfAbsent(step.getName(), step) != null) {
+            throw new IllegalArgumentException("Duplicate step " + step.getName());
+        }
+        return this;
+    }
+
+    /**
+     * @return the steps, in the order they were added
+     */
+    public List<Step> getSteps() {
+        return new ArrayList<>(steps.values());
+    }
+
+    /**
+     * @param name the step name
+     * @return the step with the given name, or null if there is no such step
+     */
+    public Step getStep(String name) {
+        return steps.get(name);
+    }
+
+    /**
+     * @return the first step of each journey
+     */
+    public Step getFirstStep() {
+        return steps.values().iterator().next();
+    }
+
+    /**
+     * <p>Resolves the transitions of the steps.</p>
+     *
+     * @throws IllegalArgumentException if the scenario has no steps or if a transition targets an unknown step
+     */
+    void resolve() {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("No steps in scenario");
+        }
+        for (Step step : steps.values()) {
+            step.resolve(this);
+        }
+    }
+
+    /**
+     * @return whether a step has a WebSocket resource
+     */
+    public boolean hasWebSocket() {
+        return steps.values().stream().anyMatch(step -> step.getResource().hasWebSocket());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), steps.keySet());
+    }
+
+    public static class Step {
+        private final Map<String, Double> transitions = new LinkedHashMap<>();
+        private final String name;
+        private final Resource resource;
+        private double exit;
+        private Step[] targets;
+        private double[] cumulativeWeights;
+
+        /**
+         * @param name     the step name
+         * @param resource the resource tree fetched by the step
+         */
+        public Step(String name, Resource resource) {
+            this.name = name;
+            this.resource = resource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        /**
+         * @param step   the name of the next step
+         * @param weight the weight of the transition, relative to the other transitions of this step
+         * @return this Step
+         */
+        public Step to(String step, double weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            }
+            transitions.merge(step, weight, Double::sum);
+            return this;
+        }
+
+        /**
+         * <p>A step without transitions always ends the journey.</p>
+         *
+         * @param probability the probability, between 0 and 1, that the journey ends after this step
+         * @return this Step
+         */
+        public Step exit(double probability) {
+            if (probability < 0 || probability > 1) {
+                throw new IllegalArgumentException("Invalid probability " + probability);
+            }
+            this.exit = probability;
+            return this;
+        }
+
+        /**
+         * @return the transitions, from the next step name to its weight
+         */
+        public Map<String, Double> getTransitions() {
+            return Collections.unmodifiableMap(transitions);
+        }
+
+        public double getExit() {
+            return exit;
+        }
+
+        private void resolve(Scenario scenario) {
+            targets = new Step[transitions.size()];
+            cumulativeWeights = new double[transitions.size()];
+            double total = 0;
+            int index = 0;
+            for (Map.Entry<String, Double> entry : transitions.entrySet()) {
+                Step target = scenario.getStep(entry.getKey());
+                if (target == null) {
+                    throw new IllegalArgumentException("Unknown step " + entry.getKey() + " in transitions of " + name);
+                }
+                total += entry.getValue();
+                targets[index] = target;
+                cumulativeWeights[index] = total;
+                ++index;
+            }
+        }
+
+        /**
+         * @param random the random number generator
+         * @return the next step, or null if the journey ends after this step
+         */
+        Step next(Random random) {
+            if (targets.length == 0 || random.nextDouble() < exit) {
+                return null;
+            }
+            double value = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            for (int i = 0; i < targets.length; ++i) {
+                if (value < cumulativeWeights[i]) {
+                    return targets[i];
+                }
+            }
+            return targets[targets.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s@%x[%s,exit=%.2f,%s]", getClass().getSimpleName(), hashCode(), name, exit, transitions);
+        }
+    }
+
+    /**
+     * <p>Listener for the steps of user journeys (warmup excluded).</p>
+     */
+    public interface StepListener extends LoadGenerator.Listener {
+        /**
+         * @param generator the load generator
+         * @param step      the step completed
+         * @param info      the info of the step resource tree
+         */
+        void onStep(LoadGenerator generator, Step step, Resource.Info info);
+    }
+
+    /**
+     * <p>Listener for completed user journeys (warmup excluded).</p>
+     */
+    public interface JourneyListener extends LoadGenerator.Listener {
+        /**
+         * @param generator the load generator
+         * @param steps     the number of steps of the journey
+         * @param time      the time, in ns, from the beginning of the first step to the end of the last step
+         */
+        void onJourney(LoadGenerator generator, int steps, long time);
+    }
+}
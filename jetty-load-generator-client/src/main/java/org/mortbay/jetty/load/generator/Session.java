@@ -0,0 +1,206 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.net.CookieStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.util.HttpCookieStore;
+
+/**
+ * <p>The state of a user of the load generator.</p>
+ * <p>All the HttpClients of a user share the user's cookie store, and
+ * send the user's bearer token, if any, obtained by the
+ * {@link LoadGenerator.Builder#login(Resource) login resource}.
+ * Users may also have a {@link ResponseCache}, see
+ * {@link LoadGenerator.Builder#cacheEntries(int)}.</p>
+ * <p>The session also holds the variables {@link Extractor extracted}
+ * from the responses received by the user.</p>
+ */
+public class Session {
+    private final CookieStore cookieStore = new HttpCookieStore();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Map<String, String> variables = new ConcurrentHashMap<>();
+    private final int user;
+    private final ResponseCache cache;
+    private volatile String bearerToken;
+    private volatile boolean valid;
+    private volatile long loginTime;
+    // The journey state is only accessed by the sender thread of the user.
+    private Scenario.Step step;
+    private long journeyBegin;
+    private int journeySteps;
+
+    Session(int user, int cacheEntries) {
+        this.user = user;
+        this.cache = cacheEntries > 0 ? new ResponseCache(cacheEntries) : null;
+    }
+
+    /**
+     * @return the index of the user among the users of its sender thread
+     */
+    public int getUser() {
+        return user;
+    }
+
+    /**
+     * @return the cookie store shared by the HttpClients of the user
+     */
+    public CookieStore getCookieStore() {
+        return cookieStore;
+    }
+
+    /**
+     * @return the HTTP cache of the user, or null if users have no cache
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the bearer token sent with each request, or null if the user has no token
+     */
+    public String getBearerToken() {
+        return bearerToken;
+    }
+
+    void setBearerToken(String bearerToken) {
+        this.bearerToken = bearerToken;
+    }
+
+    /**
+     * @param now           the current time, in ns
+     * @param refreshPeriod the period, in ns, after which the session must be refreshed, or zero to never refresh
+     * @return whether the session must be refreshed by logging in again
+     */
+    boolean isExpired(long now, long refreshPeriod) {
+        return !valid || (refreshPeriod > 0 && now - loginTime >= refreshPeriod);
+    }
+
+    void loggedIn(long loginTime) {
+        this.loginTime = loginTime;
+        this.valid = true;
+    }
+
+    /**
+     * @return whether this call starts a refresh, false if a refresh is already in progress
+     */
+    boolean beginRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+
+    void endRefresh() {
+        refreshing.set(false);
+    }
+
+    /**
+     * @param name the variable name
+     * @return the variable value, or null if the variable is not set
+     */
+    public String getVariable(String name) {
+        return variables.get(name);
+    }
+
+    public void setVariable(String name, String value) {
+        variables.put(name, value);
+    }
+
+    /**
+     * <p>Replaces the {@code ${name}} references in the given template with
+     * the values of the variables; unknown variables are left as is.</p>
+     *
+     * @param template the template to expand
+     * @return the expanded template
+     */
+    public String expand(String template) {
+        int start = template.indexOf("${");
+        if (start < 0) {
+            return template;
+        }
+        StringBuilder builder = new StringBuilder(template.length() + 32);
+        int index = 0;
+        while (start >= 0) {
+            int end = template.indexOf('}', start + 2);
+            if (end < 0) {
+                break;
+            }
+            String value = variables.get(template.substring(start + 2, end));
+            builder.append(template, index, start);
+            if (value == null) {
+                builder.append(template, start, end + 1);
+            } else {
+                builder.append(value);
+            }
+            index = end + 1;
+            start = template.indexOf("${", index);
+        }
+        builder.append(template, index, template.length());
+        return builder.toString();
+    }
+
+    /**
+     * <p>Moves the user journey one step forward, beginning a new journey if the previous one ended.</p>
+     *
+     * @param scenario the scenario of the journeys
+     * @param now      the current time, in ns
+     * @return the step to send
+     */
+    Scenario.Step nextStep(Scenario scenario, long now) {
+        if (step == null) {
+            step = scenario.getFirstStep();
+            journeyBegin = now;
+            journeySteps = 0;
+        }
+        ++journeySteps;
+        Scenario.Step result = step;
+        step = result.next(ThreadLocalRandom.current());
+        return result;
+    }
+
+    /**
+     * @return whether the journey ends with the step returned by the last call to {@link #nextStep(Scenario, long)}
+     */
+    boolean isJourneyEnd() {
+        return step == null;
+    }
+
+    long getJourneyBegin() {
+        return journeyBegin;
+    }
+
+    int getJourneySteps() {
+        return journeySteps;
+    }
+
+    /**
+     * <p>Forces a new login before the next resource tree of the user.</p>
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[user=%d,token=%b]", getClass().getSimpleName(), hashCode(), user, bearerToken != null);
+    }
+}
@@ -0,0 +1,269 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
+
+/**
+ * <p>A {@link SocketAddressResolver} that performs lookups asynchronously and caches their results.</p>
+ * <p>Successful lookups are cached for the configured TTL and failed lookups for the configured
+ * negative TTL, so that a load test opening many connections does not block the client threads
+ * nor skew the connect time with DNS resolutions.
+ * Concurrent resolutions of the same host share the same lookup.
+ * Each resolution returns the resolved addresses rotated by one, so that connections are spread
+ * round-robin over the addresses of a host.</p>
+ * <p>Note that the JVM caches lookups as well (see the {@code networkaddress.cache.ttl} security property),
+ * while {@link Hosts} can be used in place of the system resolver for offline tests.</p>
+ */
+public class CachingSocketAddressResolver implements SocketAddressResolver {
+    private final ConcurrentMap<String, CompletableFuture<Entry>> cache = new ConcurrentHashMap<>();
+    private final LongAdder resolutions = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Recorder latencyHistogram = new Recorder(TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MINUTES.toNanos(1), 3);
+    private final Executor executor;
+    private final Lookup lookup;
+    private final long ttl;
+    private final long negativeTtl;
+
+    /**
+     * @param executor    the executor performing the lookups
+     * @param ttl         the time to cache successful lookups
+     * @param negativeTtl the time to cache failed lookups
+     * @param unit        the unit of the TTLs
+     */
+    public CachingSocketAddressResolver(Executor executor, long ttl, long negativeTtl, TimeUnit unit) {
+        this(executor, InetAddress::getAllByName, ttl, negativeTtl, unit);
+    }
+
+    /**
+     * @param executor    the executor performing the lookups
+     * @param lookup      the lookup of the addresses of a host
+     * @param ttl         the time to cache successful lookups
+     * @param negativeTtl the time to cache failed lookups
+     * @param unit        the unit of the TTLs
+     */
+    public CachingSocketAddressResolver(Executor executor, Lookup lookup, long ttl, long negativeTtl, TimeUnit unit) {
+        if (ttl < 0 || negativeTtl < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.lookup = Objects.requireNonNull(lookup);
+        this.ttl = unit.toNanos(ttl);
+        this.negativeTtl = unit.toNanos(negativeTtl);
+    }
+
+    @Override
+    public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise) {
+        resolutions.increment();
+        long now = System.nanoTime();
+        try {
+            CompletableFuture<Entry> future = cache.compute(host, (k, v) -> v == null || v.isDone() && v.join().isExpired(now) ? lookup(k) : v);
+            future.thenAccept(entry -> entry.resolve(port, promise));
+        } catch (Throwable x) {
+            // Typically the executor rejected the lookup.
+            promise.failed(x);
+        }
+    }
+
+    private CompletableFuture<Entry> lookup(String host) {
+        lookups.increment();
+        return CompletableFuture.supplyAsync(() -> {
+            long begin = System.nanoTime();
+            try {
+                InetAddress[] addresses = lookup.lookup(host);
+                if (addresses == null || addresses.length == 0) {
+                    throw new UnknownHostException(host);
+                }
+                long end = System.nanoTime();
+                latencyHistogram.recordValue(end - begin);
+                return new Entry(addresses, null, end + ttl);
+            } catch (Throwable x) {
+                long end = System.nanoTime();
+                failures.increment();
+                latencyHistogram.recordValue(end - begin);
+                return new Entry(null, x, end + negativeTtl);
+            }
+        }, executor);
+    }
+
+    /**
+     * Evicts all the cached lookups.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of resolutions requested
+     */
+    public long getResolutions() {
+        return resolutions.longValue();
+    }
+
+    /**
+     * @return the number of lookups performed, i.e. resolutions not served from the cache
+     */
+    public long getLookups() {
+        return lookups.longValue();
+    }
+
+    /**
+     * @return the number of failed lookups
+     */
+    public long getFailures() {
+        return failures.longValue();
+    }
+
+    /**
+     * @return the lookup latency (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[resolutions=%d,lookups=%d,failures=%d]", getClass().getSimpleName(), hashCode(), getResolutions(), getLookups(), getFailures());
+    }
+
+    /**
+     * The lookup of the addresses of a host, typically {@link InetAddress#getAllByName(String)}.
+     */
+    @FunctionalInterface
+    public interface Lookup {
+        /**
+         * @param host the host to lookup
+         * @return the addresses of the host
+         * @throws UnknownHostException if the host cannot be resolved
+         */
+        public InetAddress[] lookup(String host) throws UnknownHostException;
+    }
+
+    /**
+     * <p>An in-memory {@link Lookup}, for example loaded from a file in the hosts file format:
+     * an address followed by host names on each line, {@code #} starting a comment.</p>
+     */
+    public static class Hosts implements Lookup {
+        private final Map<String, List<InetAddress>> hosts = new ConcurrentHashMap<>();
+
+        /**
+         * @param host      the host name
+         * @param addresses the literal IP addresses of the host
+         * @return this Hosts
+         * @throws UnknownHostException if an address is not a literal IP address
+         */
+        public Hosts add(String host, String... addresses) throws UnknownHostException {
+            for (String address : addresses) {
+                add(host, address);
+            }
+            return this;
+        }
+
+        private void add(String host, String address) throws UnknownHostException {
+            if (!Character.isDigit(address.charAt(0)) && address.indexOf(':') < 0) {
+                throw new UnknownHostException(address);
+            }
+            // Parsing a literal IP address does not perform any lookup.
+            InetAddress inetAddress = InetAddress.getByAddress(host, InetAddress.getByName(address).getAddress());
+            hosts.computeIfAbsent(host.toLowerCase(), k -> new CopyOnWriteArrayList<>()).add(inetAddress);
+        }
+
+        /**
+         * @param path the hosts file
+         * @return this Hosts
+         * @throws IOException if the file cannot be read or contains an invalid address
+         */
+        public Hosts load(Path path) throws IOException {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] tokens = line.trim().split("\\s+");
+                for (int i = 1; i < tokens.length; ++i) {
+                    add(tokens[i], tokens[0]);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public InetAddress[] lookup(String host) throws UnknownHostException {
+            List<InetAddress> addresses = hosts.get(host.toLowerCase());
+            if (addresses == null) {
+                throw new UnknownHostException(host);
+            }
+            return addresses.toArray(new InetAddress[addresses.size()]);
+        }
+    }
+
+    private static class Entry {
+        private final AtomicInteger index = new AtomicInteger();
+        private final InetAddress[] addresses;
+        private final Throwable failure;
+        private final long expires;
+
+        private Entry(InetAddress[] addresses, Throwable failure, long expires) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expires >= 0;
+        }
+
+        private void resolve(int port, Promise<List<InetSocketAddress>> promise) {
+            if (failure != null) {
+                promise.failed(failure);
+                return;
+            }
+            int length = addresses.length;
+            int start = Math.floorMod(index.getAndIncrement(), length);
+            List<InetSocketAddress> result = new ArrayList<>(length);
+            for (int i = 0; i < length; ++i) {
+                result.add(new InetSocketAddress(addresses[(start + i) % length], port));
+            }
+            promise.succeeded(result);
+        }
+    }
+}
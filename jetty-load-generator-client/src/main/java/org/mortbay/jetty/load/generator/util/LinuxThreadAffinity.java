@@ -0,0 +1,112 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link ThreadAffinity} for Linux, binding threads with {@code taskset}.</p>
+ * <p>The native id of the calling thread is read from {@code /proc/thread-self},
+ * so no native library is needed. Binding a thread forks a process, which is
+ * fine as threads are bound once when they start.</p>
+ * <p>By default, the CPUs split between the shards are the CPUs the process is
+ * allowed to run on (e.g. restricted by a container or by {@code taskset}).</p>
+ */
+public class LinuxThreadAffinity implements ThreadAffinity {
+    private static final Logger logger = Log.getLogger(LinuxThreadAffinity.class);
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+    private static final File DEV_NULL = new File("/dev/null");
+    private static final Path PROCESS_STATUS = Paths.get("/proc/self/status");
+    private static final String CPUS_ALLOWED_LIST = "Cpus_allowed_list:";
+
+    private final int[] cpus;
+
+    public LinuxThreadAffinity() {
+        this(allowedCpus());
+    }
+
+    /**
+     * @param cpus the ids of the CPUs to split between the shards
+     */
+    public LinuxThreadAffinity(int[] cpus) {
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException("no CPUs");
+        }
+        this.cpus = cpus.clone();
+    }
+
+    /**
+     * @return the ids of the CPUs the process is allowed to run on, or
+     * {@code 0} to {@code availableProcessors - 1} if they cannot be read
+     */
+    public static int[] allowedCpus() {
+        try {
+            for (String line : Files.readAllLines(PROCESS_STATUS)) {
+                if (line.startsWith(CPUS_ALLOWED_LIST)) {
+                    int[] result = ThreadAffinity.parseCpuList(line.substring(CPUS_ALLOWED_LIST.length()));
+                    if (result.length > 0) {
+                        return result;
+                    }
+                }
+            }
+        } catch (Throwable x) {
+            logger.ignore(x);
+        }
+        return IntStream.range(0, Runtime.getRuntime().availableProcessors()).toArray();
+    }
+
+    /**
+     * @return whether threads can be bound on this host
+     */
+    public static boolean isSupported() {
+        return Files.isSymbolicLink(THREAD_SELF);
+    }
+
+    @Override
+    public void bind(int shard, int shards) {
+        try {
+            // The link is <pid>/task/<tid>.
+            Path task = Files.readSymbolicLink(THREAD_SELF);
+            String tid = task.getFileName().toString();
+            String cpuList = ThreadAffinity.cpus(shard, shards, cpus);
+            Process process = new ProcessBuilder("taskset", "-p", "-c", cpuList, tid)
+                    .redirectErrorStream(true)
+                    .redirectOutput(DEV_NULL)
+                    .start();
+            if (!process.waitFor(5, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                logger.warn("could not bind thread {} to cpus {}", Thread.currentThread().getName(), cpuList);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("bound thread {} ({}) to cpus {}", Thread.currentThread().getName(), tid, cpuList);
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable x) {
+            logger.warn("could not bind thread {}: {}", Thread.currentThread().getName(), x.toString());
+        }
+    }
+}
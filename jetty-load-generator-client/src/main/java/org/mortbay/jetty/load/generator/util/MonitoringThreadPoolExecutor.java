@@ -16,155 +16,255 @@
 //  ========================================================================
 //
 
+
 package org.mortbay.jetty.load.generator.util;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.eclipse.jetty.util.Atomics;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 
+/**
+ * <p>A {@link ThreadPoolExecutor} recording the time tasks wait in the queue and the time they run.</p>
+ * <p>Counters are striped ({@link LongAdder}, {@link LongAccumulator}) and each pool thread records
+ * in its own single writer histograms, merged when the statistics are read, so that tasks executed
+ * concurrently do not contend on shared cache lines.</p>
+ * <p>With a {@link #setSamplingPeriod(int) sampling period} of N, only one task out of N (on average)
+ * is timed, the others are executed as is.</p>
+ */
+@ManagedObject("ThreadPoolExecutor with queue and task latency histograms")
 public class MonitoringThreadPoolExecutor extends ThreadPoolExecutor {
-    private final AtomicLong tasks = new AtomicLong();
-    private final AtomicLong maxTaskLatency = new AtomicLong();
-    private final AtomicLong totalTaskLatency = new AtomicLong();
-    private final MonitoringLinkedBlockingQueue queue;
-    private final AtomicLong maxQueueLatency = new AtomicLong();
-    private final AtomicLong totalQueueLatency = new AtomicLong();
-    private final AtomicInteger threads = new AtomicInteger();
-    private final AtomicInteger maxThreads = new AtomicInteger();
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+    private static final AtomicInteger pools = new AtomicInteger();
+
+    private final List<MonitoringThread> monitoringThreads;
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder activeThreads = new LongAdder();
+    private final LongAccumulator maxActiveThreads = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxQueueSize = new LongAccumulator(Math::max, 0);
+    // Merged from the per thread histograms, guarded by this.
+    private final Histogram queueLatencies = newHistogram();
+    private final Histogram taskLatencies = newHistogram();
+    private volatile int samplingPeriod = 1;
 
     public MonitoringThreadPoolExecutor(int maximumPoolSize, long keepAliveTime, TimeUnit unit) {
         this(maximumPoolSize, keepAliveTime, unit, new AbortPolicy());
     }
 
     public MonitoringThreadPoolExecutor(int maximumPoolSize, long keepAliveTime, TimeUnit unit, RejectedExecutionHandler handler) {
-        super(maximumPoolSize, maximumPoolSize, keepAliveTime, unit, new MonitoringLinkedBlockingQueue(), handler);
-        queue = (MonitoringLinkedBlockingQueue)getQueue();
+        this(maximumPoolSize, keepAliveTime, unit, handler, new CopyOnWriteArrayList<>(), "monitoring-pool-" + pools.incrementAndGet() + "-", new AtomicInteger());
+    }
+
+    private MonitoringThreadPoolExecutor(int maximumPoolSize, long keepAliveTime, TimeUnit unit, RejectedExecutionHandler handler, List<MonitoringThread> threads, String prefix, AtomicInteger ids) {
+        super(maximumPoolSize, maximumPoolSize, keepAliveTime, unit, new LinkedBlockingQueue<>(), task -> {
+            MonitoringThread thread = new MonitoringThread(task, prefix + ids.incrementAndGet());
+            threads.add(thread);
+            return thread;
+        }, handler);
+        this.monitoringThreads = threads;
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(TimeUnit.MICROSECONDS.toNanos(1), HIGHEST_TRACKABLE_VALUE, 3);
     }
 
-    public void reset() {
-        tasks.set(0);
-        maxTaskLatency.set(0);
-        totalTaskLatency.set(0);
-        queue.reset();
-        maxQueueLatency.set(0);
-        totalQueueLatency.set(0);
-        threads.set(0);
-        maxThreads.set(0);
+    @ManagedAttribute("One task out of this number is timed")
+    public int getSamplingPeriod() {
+        return samplingPeriod;
     }
 
+    /**
+     * @param samplingPeriod times one task out of this number (on average), 1 to time all the tasks
+     */
+    public void setSamplingPeriod(int samplingPeriod) {
+        if (samplingPeriod < 1) {
+            throw new IllegalArgumentException("samplingPeriod must be higher than 0");
+        }
+        this.samplingPeriod = samplingPeriod;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public synchronized void reset() {
+        // Drains the per thread histograms.
+        merge();
+        queueLatencies.reset();
+        taskLatencies.reset();
+        tasks.reset();
+        maxActiveThreads.reset();
+        maxQueueSize.reset();
+    }
+
+    private synchronized void merge() {
+        for (MonitoringThread thread : monitoringThreads) {
+            boolean alive = thread.isAlive();
+            thread.queueInterval = thread.queueLatencies.getIntervalHistogram(thread.queueInterval);
+            queueLatencies.add(thread.queueInterval);
+            thread.taskInterval = thread.taskLatencies.getIntervalHistogram(thread.taskInterval);
+            taskLatencies.add(thread.taskInterval);
+            if (!alive) {
+                // Terminated before the drain, so nothing more to merge.
+                monitoringThreads.remove(thread);
+            }
+        }
+    }
+
+    @ManagedAttribute("The number of tasks executed")
     public long getTasks() {
-        return tasks.get();
+        return tasks.sum();
     }
 
-    public long getMaxTaskLatency() {
-        return maxTaskLatency.get();
+    @ManagedAttribute("The max task run time in ns")
+    public synchronized long getMaxTaskLatency() {
+        merge();
+        return taskLatencies.getMaxValue();
     }
 
-    public long getAverageTaskLatency() {
-        long count = tasks.get();
-        return count == 0 ? -1 : totalTaskLatency.get() / count;
+    @ManagedAttribute("The average task run time in ns")
+    public synchronized long getAverageTaskLatency() {
+        merge();
+        return taskLatencies.getTotalCount() == 0 ? -1 : (long)taskLatencies.getMean();
     }
 
-    public long getMaxQueueLatency() {
-        return maxQueueLatency.get();
+    @ManagedAttribute("The 99th percentile of the task run time in ns")
+    public long getTaskLatency99thPercentile() {
+        return getTaskLatencyPercentile(99D);
     }
 
-    public long getAverageQueueLatency() {
-        long count = tasks.get();
-        return count == 0 ? -1 : totalQueueLatency.get() / count;
+    @ManagedAttribute("The max time in ns tasks waited in the queue")
+    public synchronized long getMaxQueueLatency() {
+        merge();
+        return queueLatencies.getMaxValue();
     }
 
-    public int getMaxQueueSize() {
-        return queue.maxSize.get();
+    @ManagedAttribute("The average time in ns tasks waited in the queue")
+    public synchronized long getAverageQueueLatency() {
+        merge();
+        return queueLatencies.getTotalCount() == 0 ? -1 : (long)queueLatencies.getMean();
     }
 
-    public int getMaxActiveThreads() {
-        return maxThreads.get();
+    @ManagedAttribute("The 99th percentile of the time in ns tasks waited in the queue")
+    public long getQueueLatency99thPercentile() {
+        return getQueueLatencyPercentile(99D);
     }
 
-    @Override
-    public void execute(final Runnable task) {
-        final long begin = System.nanoTime();
-        super.execute(new Runnable() {
-            public void run() {
-                long latency = System.nanoTime() - begin;
-                tasks.incrementAndGet();
-                Atomics.updateMax(maxQueueLatency, latency);
-                totalQueueLatency.addAndGet(latency);
-                Atomics.updateMax(maxThreads, threads.incrementAndGet());
-                long start = System.nanoTime();
-                try {
-                    task.run();
-                } finally {
-                    long taskLatency = System.nanoTime() - start;
-                    threads.decrementAndGet();
-                    Atomics.updateMax(maxTaskLatency, taskLatency);
-                    totalTaskLatency.addAndGet(taskLatency);
-                }
-            }
-        });
+    @ManagedAttribute("The 99.9th percentile of the time in ns tasks waited in the queue")
+    public long getQueueLatency999thPercentile() {
+        return getQueueLatencyPercentile(99.9D);
     }
 
-    private static class MonitoringLinkedBlockingQueue extends LinkedBlockingQueue<Runnable> {
-        private final AtomicInteger size = new AtomicInteger();
-        private final AtomicInteger maxSize = new AtomicInteger();
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the task run time in ns at the given percentile
+     */
+    public synchronized long getTaskLatencyPercentile(double percentile) {
+        merge();
+        return taskLatencies.getValueAtPercentile(percentile);
+    }
 
-        public void reset() {
-            size.set(0);
-            maxSize.set(0);
-        }
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the time in ns tasks waited in the queue at the given percentile
+     */
+    public synchronized long getQueueLatencyPercentile(double percentile) {
+        merge();
+        return queueLatencies.getValueAtPercentile(percentile);
+    }
 
-        @Override
-        public void clear() {
-            reset();
-            super.clear();
-        }
+    /**
+     * @return a copy of the task run time histogram, in ns
+     */
+    public synchronized Histogram getTaskLatencyHistogram() {
+        merge();
+        return taskLatencies.copy();
+    }
 
-        @Override
-        public boolean offer(Runnable task) {
-            boolean added = super.offer(task);
-            if (added) {
-                increment();
-            }
-            return added;
-        }
+    /**
+     * @return a copy of the histogram of the time tasks waited in the queue, in ns
+     */
+    public synchronized Histogram getQueueLatencyHistogram() {
+        merge();
+        return queueLatencies.copy();
+    }
+
+    /**
+     * @return the max queue size, sampled when timed tasks are queued
+     */
+    @ManagedAttribute("The max queue size")
+    public int getMaxQueueSize() {
+        return (int)maxQueueSize.get();
+    }
+
+    /**
+     * @return the max number of threads running tasks, sampled when timed tasks run
+     */
+    @ManagedAttribute("The max number of threads running tasks")
+    public int getMaxActiveThreads() {
+        return (int)maxActiveThreads.get();
+    }
 
-        private void increment() {
-            Atomics.updateMax(maxSize, size.incrementAndGet());
+    @Override
+    public void execute(Runnable task) {
+        tasks.increment();
+        int period = samplingPeriod;
+        if (period > 1 && ThreadLocalRandom.current().nextInt(period) != 0) {
+            super.execute(task);
+        } else {
+            maxQueueSize.accumulate(getQueue().size() + 1);
+            super.execute(new TimedTask(task, System.nanoTime()));
         }
+    }
 
-        @Override
-        public Runnable poll() {
-            Runnable task = super.poll();
-            if (task != null) {
-                decrement();
-            }
-            return task;
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long queued;
+
+        private TimedTask(Runnable task, long queued) {
+            this.task = task;
+            this.queued = queued;
         }
 
         @Override
-        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
-            Runnable task = super.poll(timeout, unit);
-            if (task != null) {
-                decrement();
+        public void run() {
+            long begin = System.nanoTime();
+            activeThreads.increment();
+            maxActiveThreads.accumulate(activeThreads.sum());
+            try {
+                task.run();
+            } finally {
+                long end = System.nanoTime();
+                activeThreads.decrement();
+                Thread thread = Thread.currentThread();
+                // Tasks run by the rejection handler in the caller thread are not recorded.
+                if (thread instanceof MonitoringThread) {
+                    MonitoringThread monitoringThread = (MonitoringThread)thread;
+                    monitoringThread.queueLatencies.recordValue(Math.min(begin - queued, HIGHEST_TRACKABLE_VALUE));
+                    monitoringThread.taskLatencies.recordValue(Math.min(end - begin, HIGHEST_TRACKABLE_VALUE));
+                }
             }
-            return task;
         }
+    }
 
-        @Override
-        public Runnable take() throws InterruptedException {
-            Runnable task = super.take();
-            decrement();
-            return task;
-        }
+    private static class MonitoringThread extends Thread {
+        private final SingleWriterRecorder queueLatencies = new SingleWriterRecorder(TimeUnit.MICROSECONDS.toNanos(1), HIGHEST_TRACKABLE_VALUE, 3);
+        private final SingleWriterRecorder taskLatencies = new SingleWriterRecorder(TimeUnit.MICROSECONDS.toNanos(1), HIGHEST_TRACKABLE_VALUE, 3);
+        // Recycled interval histograms, only used by merge().
+        private Histogram queueInterval;
+        private Histogram taskInterval;
 
-        private void decrement() {
-            size.decrementAndGet();
+        private MonitoringThread(Runnable task, String name) {
+            super(task, name);
         }
     }
 }
@@ -0,0 +1,87 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.util;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Hook binding the calling thread to the CPUs of a shard, see
+ * {@link org.mortbay.jetty.load.generator.LoadGenerator.Builder#sharded(boolean)}.</p>
+ */
+@FunctionalInterface
+public interface ThreadAffinity {
+    /**
+     * Does not bind threads, they run on any CPU.
+     */
+    ThreadAffinity NONE = (shard, shards) -> {
+    };
+
+    /**
+     * <p>Binds the calling thread to the CPUs of the given shard.</p>
+     * <p>Implementations must not throw if the binding is not supported.</p>
+     *
+     * @param shard  the shard index, from 0 to shards - 1
+     * @param shards the number of shards
+     */
+    void bind(int shard, int shards);
+
+    /**
+     * @param shard  the shard index
+     * @param shards the number of shards
+     * @param cpus   the ids of the CPUs to split between the shards
+     * @return the CPUs of the shard as a comma separated list, the CPUs being evenly split between the shards
+     */
+    static String cpus(int shard, int shards, int[] cpus) {
+        if (shards >= cpus.length) {
+            return String.valueOf(cpus[shard % cpus.length]);
+        }
+        int first = shard * cpus.length / shards;
+        int last = (shard + 1) * cpus.length / shards - 1;
+        StringBuilder result = new StringBuilder();
+        for (int i = first; i <= last; ++i) {
+            if (i > first) {
+                result.append(",");
+            }
+            result.append(cpus[i]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param cpuList a Linux CPU list such as {@code 0-3,8,10-11}
+     * @return the ids of the CPUs of the list, in ascending order
+     */
+    static int[] parseCpuList(String cpuList) {
+        return Arrays.stream(cpuList.trim().split(","))
+                .map(String::trim)
+                .filter(range -> !range.isEmpty())
+                .flatMapToInt(range -> {
+                    int dash = range.indexOf('-');
+                    if (dash < 0) {
+                        return IntStream.of(Integer.parseInt(range));
+                    }
+                    return IntStream.rangeClosed(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)));
+                })
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+}
@@ -0,0 +1,94 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExtractorTest {
+    private static String extract(Extractor extractor, int chunk, String content) {
+        Extractor.Matcher matcher = extractor.newMatcher();
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += chunk) {
+            matcher.content(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+        }
+        return matcher.complete();
+    }
+
+    @Test
+    public void header() throws Exception {
+        Extractor.Matcher matcher = Extractor.header("location", "Location").newMatcher();
+        HttpFields headers = new HttpFields();
+        headers.put("Location", "/orders/42");
+        matcher.headers(headers);
+        Assert.assertEquals("/orders/42", matcher.complete());
+    }
+
+    @Test
+    public void regex_split_across_buffers() throws Exception {
+        String content = "<form><input name=\"csrf\" value=\"0123456789abcdef\"/></form>";
+        for (int chunk = 1; chunk <= content.length(); ++chunk) {
+            Assert.assertEquals("0123456789abcdef", extract(Extractor.regex("csrf", "name=\"csrf\" value=\"(\\w+)\""), chunk, content));
+        }
+    }
+
+    @Test
+    public void regex_greedy_match_not_truncated() throws Exception {
+        Assert.assertEquals("12345", extract(Extractor.regex("id", "id=(\\d+)"), 4, "id=12345;"));
+        Assert.assertEquals("12345", extract(Extractor.regex("id", "id=(\\d+)"), 4, "id=12345"));
+    }
+
+    @Test
+    public void regex_no_match() throws Exception {
+        Assert.assertNull(extract(Extractor.regex("id", "id=(\\d+)").maxMatchLength(16), 3, "nothing to see here, move along"));
+    }
+
+    @Test
+    public void json_pointer() throws Exception {
+        String content = "{\"items\": [{\"id\": 1}, {\"id\": 2, \"name\": \"caf\\u00e9 \\\"au\\\" lait\"}], " +
+                "\"order\": {\"id\": 42, \"a/b\": true}, \"total\": -1.5e3}";
+        for (int chunk = 1; chunk <= content.length(); ++chunk) {
+            Assert.assertEquals("42", extract(Extractor.jsonPointer("id", "/order/id"), chunk, content));
+            Assert.assertEquals("2", extract(Extractor.jsonPointer("id", "/items/1/id"), chunk, content));
+            Assert.assertEquals("caf\u00e9 \"au\" lait", extract(Extractor.jsonPointer("name", "/items/1/name"), chunk, content));
+            Assert.assertEquals("true", extract(Extractor.jsonPointer("flag", "/order/a~1b"), chunk, content));
+            Assert.assertEquals("-1.5e3", extract(Extractor.jsonPointer("total", "/total"), chunk, content));
+            Assert.assertNull(extract(Extractor.jsonPointer("missing", "/items/2/id"), chunk, content));
+        }
+    }
+
+    @Test
+    public void json_pointer_top_level_scalar() throws Exception {
+        Assert.assertEquals("17", extract(Extractor.jsonPointer("value", ""), 1, "17"));
+    }
+
+    @Test
+    public void session_expand() throws Exception {
+        Session session = new Session(0, 0);
+        session.setVariable("id", "42");
+        Assert.assertEquals("/orders/42/items?x=${x}", session.expand("/orders/${id}/items?x=${x}"));
+        Assert.assertEquals("/plain", session.expand("/plain"));
+        Assert.assertEquals("/broken/${id", session.expand("/broken/${id"));
+    }
+}
@@ -93,6 +93,8 @@ public class HTTP1WebsiteLoadGeneratorTest extends WebsiteLoadGeneratorTest {
                 executor.getMaxQueueSize(),
                 TimeUnit.NANOSECONDS.toMillis(executor.getMaxQueueLatency())
         );
+        HistogramSnapshot queueSnapshot = new HistogramSnapshot(executor.getQueueLatencyHistogram(), 20, "client thread pool queue latency", "us", TimeUnit.NANOSECONDS::toMicros);
+        System.err.println(queueSnapshot);
 
         executor.shutdown();
     }
@@ -19,7 +19,10 @@
 package org.mortbay.jetty.load.generator;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletException;
@@ -28,6 +31,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.Server;
@@ -101,4 +105,90 @@ public class HTTP2LoadGeneratorTest {
         Assert.assertEquals(1, sent.get());
         Assert.assertEquals(2, pushed.get());
     }
+
+    @Test
+    public void testConnectionsPerUser() throws Exception {
+        // Concurrent requests, and the peak of them, per client connection.
+        Map<Integer, AtomicInteger> streams = new ConcurrentHashMap<>();
+        Map<Integer, AtomicInteger> maxStreams = new ConcurrentHashMap<>();
+        prepare(new TestHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                int port = request.getRemotePort();
+                int current = streams.computeIfAbsent(port, k -> new AtomicInteger()).incrementAndGet();
+                maxStreams.computeIfAbsent(port, k -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+                try {
+                    // Slow enough for the requests of a tree to overlap.
+                    Thread.sleep(200);
+                    super.handle(target, jettyRequest, request, response);
+                } catch (InterruptedException x) {
+                    throw new ServletException(x);
+                } finally {
+                    streams.get(port).decrementAndGet();
+                }
+            }
+        });
+
+        AtomicInteger connections = new AtomicInteger();
+        connector.addBean(new Connection.Listener.Adapter() {
+            @Override
+            public void onOpened(Connection connection) {
+                connections.incrementAndGet();
+            }
+        });
+
+        AtomicLong requests = new AtomicLong();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP2ClientTransportBuilder().maxConcurrentStreams(2))
+                .port(connector.getLocalPort())
+                .connectionsPerUser(2)
+                // The children are spread over the connections, 3 each.
+                .resource(new Resource("/", new Resource("/1"), new Resource("/2"), new Resource("/3"),
+                        new Resource("/4"), new Resource("/5"), new Resource("/6")))
+                .requestListener(new Request.Listener.Adapter() {
+                    @Override
+                    public void onBegin(Request request) {
+                        requests.incrementAndGet();
+                    }
+                })
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(7, requests.get());
+        Assert.assertEquals(2, connections.get());
+        Assert.assertEquals(2, maxStreams.size());
+        Assert.assertTrue(maxStreams.toString(), maxStreams.values().stream().allMatch(max -> max.get() == 2));
+    }
+
+    @Test
+    public void testPushOutcomes() throws Exception {
+        prepare(new TestHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                if ("/".equals(target)) {
+                    jettyRequest.getPushBuilder().path("/1").push();
+                    jettyRequest.getPushBuilder().path("/unknown").push();
+                }
+                super.handle(target, jettyRequest, request, response);
+            }
+        });
+
+        Map<Resource.Push, AtomicInteger> pushes = new ConcurrentHashMap<>();
+        AtomicLong savedTime = new AtomicLong(-1);
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP2ClientTransportBuilder())
+                .port(connector.getLocalPort())
+                .resource(new Resource("/", new Resource("/1"), new Resource("/2")))
+                .resourceListener((Resource.PushListener)(uri, push) ->
+                        pushes.computeIfAbsent(push, k -> new AtomicInteger()).incrementAndGet())
+                .resourceListener((Resource.TreeListener)info -> savedTime.set(info.getPushSavedTime()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, pushes.get(Resource.Push.ACCEPTED).get());
+        Assert.assertEquals(1, pushes.get(Resource.Push.UNMATCHED).get());
+        Assert.assertNull(pushes.get(Resource.Push.REDUNDANT));
+        // The accepted push of /1 spared its request once / completed.
+        Assert.assertTrue(String.valueOf(savedTime.get()), savedTime.get() > 0);
+    }
 }
@@ -18,9 +18,15 @@
 
 package org.mortbay.jetty.load.generator;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
@@ -28,14 +34,26 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.management.ObjectName;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.fcgi.server.ServerFCGIConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.jmx.MBeanContainer;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Handler;
@@ -43,11 +61,15 @@ import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.IO;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import org.mortbay.jetty.load.generator.util.CachingSocketAddressResolver;
 
 @RunWith(Parameterized.class)
 public class LoadGeneratorTest {
@@ -56,6 +78,7 @@ public class LoadGeneratorTest {
         List<Object[]> result = new ArrayList<>();
         result.add(new Object[]{new HttpConnectionFactory(), new HTTP1ClientTransportBuilder()});
         result.add(new Object[]{new HTTP2CServerConnectionFactory(new HttpConfiguration()), new HTTP2ClientTransportBuilder()});
+        result.add(new Object[]{new ServerFCGIConnectionFactory(new HttpConfiguration()), new FCGIClientTransportBuilder()});
         return result;
     }
 
@@ -235,6 +258,351 @@ public class LoadGeneratorTest {
         Assert.assertEquals(3, resources.get());
     }
 
+    @Test
+    public void testResourceDependencies() throws Exception {
+        prepare(new TestHandler());
+
+        Queue<String> resources = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .resource(new Resource("/",
+                        new Resource("/script.js").dependsOn("/style.css"),
+                        new Resource("/style.css",
+                                new Resource("/logo.png")).responseLength(64 * 1024)))
+                .resourceListener((Resource.NodeListener)info -> resources.offer(info.getResource().getPath()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        List<String> paths = new ArrayList<>(resources);
+        Assert.assertEquals(4, paths.size());
+        Assert.assertTrue(paths.toString(), paths.indexOf("/style.css") < paths.indexOf("/script.js"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResourceDependencyCycle() throws Exception {
+        new LoadGenerator.Builder()
+                .resource(new Resource("/",
+                        new Resource("/a").dependsOn("/b"),
+                        new Resource("/b").dependsOn("/a")))
+                .build();
+    }
+
+    @Test
+    public void testMaxRequestsPerTree() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException x) {
+                    throw new InterruptedIOException();
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+            }
+        });
+
+        Resource[] assets = new Resource[8];
+        for (int i = 0; i < assets.length; ++i) {
+            assets[i] = new Resource("/asset" + i);
+        }
+        List<Resource.Info> trees = new CopyOnWriteArrayList<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .resource(new Resource("/", assets))
+                .maxRequestsPerTree(2)
+                .resourceListener((Resource.TreeListener)trees::add)
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(maxConcurrent.toString(), maxConcurrent.get() <= 2);
+        Assert.assertEquals(1, trees.size());
+        Resource.Info tree = trees.get(0);
+        // The critical path is the root plus one asset, while the
+        // tree time includes the time the assets waited for a slot.
+        long treeTime = tree.getTreeTime() - tree.getRequestTime();
+        Assert.assertTrue(tree.getCriticalPathTime() > 0);
+        Assert.assertTrue(tree.getCriticalPathTime() < treeTime);
+    }
+
+    @Test
+    public void testLogin() throws Exception {
+        AtomicInteger sessionIds = new AtomicInteger();
+        Queue<String> credentials = new ConcurrentLinkedDeque<>();
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                if ("/login".equals(target)) {
+                    int id = sessionIds.incrementAndGet();
+                    response.addCookie(new Cookie("session", "s" + id));
+                    response.setHeader("X-Token", "t" + id);
+                } else {
+                    Cookie[] cookies = request.getCookies();
+                    String session = cookies == null ? null : cookies[0].getValue();
+                    String authorization = request.getHeader("Authorization");
+                    if (authorization == null) {
+                        // The FastCGI client sends the Authorization header as the
+                        // AUTH_TYPE parameter, that the server exposes as an attribute.
+                        authorization = (String)request.getAttribute("AUTH_TYPE");
+                    }
+                    credentials.offer(session + "/" + authorization);
+                }
+            }
+        });
+
+        Queue<Resource.Info> logins = new ConcurrentLinkedDeque<>();
+        Queue<String> resources = new ConcurrentLinkedDeque<>();
+        int users = 2;
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .usersPerThread(users)
+                .connectionsPerUser(2)
+                .iterationsPerThread(4)
+                // Spaced so that each tree completes before the
+                // next one, and before the HttpClients are stopped.
+                .resourceRate(10)
+                .resource(new Resource("/", new Resource("/1"), new Resource("/2")))
+                .login(new Resource("/login").method("POST"))
+                .bearerTokenHeader("X-Token")
+                .listener((LoadGenerator.SessionListener)(generator, session, info) -> logins.offer(info))
+                .resourceListener((Resource.NodeListener)info -> resources.offer(info.getResource().getPath()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        // Each user logs in once, and login trees are not measured.
+        Assert.assertEquals(users, logins.size());
+        Assert.assertFalse(resources.contains("/login"));
+        Assert.assertEquals(12, credentials.size());
+        // Each request carries the cookie and the token of its user.
+        Assert.assertTrue(credentials.toString(), credentials.stream()
+                .allMatch(c -> c.matches("s(\\d+)/Bearer t\\1")));
+        Assert.assertEquals(users, credentials.stream().distinct().count());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        Queue<String> requests = new ConcurrentLinkedDeque<>();
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                requests.offer(target);
+                if ("/fresh".equals(target)) {
+                    response.setHeader("Cache-Control", "max-age=60");
+                } else if ("/stale".equals(target)) {
+                    response.setHeader("Cache-Control", "no-cache");
+                    response.setHeader("ETag", "\"v1\"");
+                    if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        return;
+                    }
+                }
+                response.getOutputStream().write(new byte[1024]);
+            }
+        });
+
+        Queue<Integer> statuses = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .iterationsPerThread(3)
+                // Spaced so that each tree completes, and
+                // fills the cache, before the next is sent.
+                .resourceRate(2)
+                .resource(new Resource("/", new Resource("/fresh"), new Resource("/stale")))
+                .cacheEntries(16)
+                .resourceListener((Resource.NodeListener)info -> statuses.offer(info.getStatus()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        // The root has no validators, so it is requested every time.
+        Assert.assertEquals(3, requests.stream().filter("/"::equals).count());
+        Assert.assertEquals(1, requests.stream().filter("/fresh"::equals).count());
+        Assert.assertEquals(3, requests.stream().filter("/stale"::equals).count());
+        Assert.assertEquals(2, loadGenerator.getCacheHits());
+        Assert.assertEquals(2, loadGenerator.getCacheValidations());
+        Assert.assertEquals(2, loadGenerator.getCacheNotModified());
+        Assert.assertEquals(2, statuses.stream().filter(status -> status == 304).count());
+    }
+
+    @Test
+    public void testExtraction() throws Exception {
+        Queue<String> requests = new ConcurrentLinkedDeque<>();
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                if ("/cart".equals(target)) {
+                    response.setHeader("X-CSRF", "token" + request.getParameter("n"));
+                    response.setContentType("application/json");
+                    response.getOutputStream().print("{\"order\": {\"id\": 42}}");
+                } else {
+                    String body = IO.toString(request.getInputStream());
+                    requests.offer(target + "|" + request.getHeader("X-CSRF") + "|" + body);
+                }
+            }
+        });
+
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .iterationsPerThread(2)
+                // Spaced so that each tree completes before the
+                // next one, and before the HttpClients are stopped.
+                .resourceRate(10)
+                .resource(new Resource("/cart?n=1",
+                        new Resource("/orders/${orderId}")
+                                .method("POST")
+                                .requestHeader("X-CSRF", "${csrf}")
+                                .requestBody("order=${orderId}&unknown=${unknown}"))
+                        .extract(Extractor.header("csrf", "X-CSRF"))
+                        .extract(Extractor.jsonPointer("orderId", "/order/id")))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, requests.size());
+        Assert.assertTrue(requests.toString(), requests.stream()
+                .allMatch("/orders/42|token1|order=42&unknown=${unknown}"::equals));
+    }
+
+    @Test
+    public void testScenario() throws Exception {
+        prepare(new TestHandler());
+
+        Queue<String> steps = new ConcurrentLinkedDeque<>();
+        Queue<Integer> journeys = new ConcurrentLinkedDeque<>();
+        Scenario scenario = new Scenario()
+                .step(new Scenario.Step("home", new Resource("/", new Resource("/style.css"))).to("search", 1))
+                .step(new Scenario.Step("search", new Resource("/search")).to("checkout", 1))
+                .step(new Scenario.Step("checkout", new Resource("/checkout").method("POST")));
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .warmupIterationsPerThread(3)
+                .iterationsPerThread(6)
+                // Spaced so that each step completes before the
+                // next one, and before the HttpClients are stopped.
+                .resourceRate(20)
+                .scenario(scenario)
+                .listener((Scenario.StepListener)(generator, step, info) -> steps.offer(step.getName()))
+                .listener((Scenario.JourneyListener)(generator, count, time) -> journeys.offer(count))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        // Warmup steps are not reported.
+        Assert.assertEquals(6, steps.size());
+        Assert.assertEquals(2, steps.stream().filter("home"::equals).count());
+        Assert.assertEquals(2, steps.stream().filter("checkout"::equals).count());
+        Assert.assertEquals(Arrays.asList(3, 3), new ArrayList<>(journeys));
+    }
+
+    @Test
+    public void testMix() throws Exception {
+        prepare(new TestHandler());
+
+        Queue<Resource.Info> nodes = new ConcurrentLinkedDeque<>();
+        Queue<String> trees = new ConcurrentLinkedDeque<>();
+        ResourceMix mix = new ResourceMix()
+                .profile("pages", new Resource("/", new Resource("/style.css")), 3)
+                .profile("api", new Resource("/api"), 1);
+        int iterations = 20;
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .iterationsPerThread(iterations)
+                // Spaced so that each tree completes before the
+                // next one, and before the HttpClients are stopped.
+                .resourceRate(20)
+                .mix(mix)
+                .resourceListener((Resource.NodeListener)nodes::offer)
+                .resourceListener((Resource.TreeListener)info -> trees.offer(info.getProfile()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(iterations, trees.size());
+        Assert.assertTrue(trees.stream().allMatch(profile -> "pages".equals(profile) || "api".equals(profile)));
+        // Children carry the profile of their tree.
+        Assert.assertTrue(nodes.stream()
+                .filter(info -> info.getResource().getPath().equals("/style.css"))
+                .allMatch(info -> "pages".equals(info.getProfile())));
+        Assert.assertTrue(nodes.stream()
+                .filter(info -> info.getResource().getPath().equals("/api"))
+                .allMatch(info -> "api".equals(info.getProfile())));
+    }
+
+    @Test
+    public void testScheduleListener() throws Exception {
+        prepare(new TestHandler());
+
+        Queue<Long> lags = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .warmupIterationsPerThread(2)
+                .iterationsPerThread(4)
+                .resourceRate(10)
+                .listener((LoadGenerator.ScheduleListener)(generator, lag) -> lags.offer(lag))
+                .build();
+
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        // Warmup iterations are not notified.
+        Assert.assertEquals(4, lags.size());
+        // The sender thread has nothing else to do, so it is on schedule.
+        Assert.assertTrue(lags.toString(), lags.stream().allMatch(lag -> lag < TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void testSharded() throws Exception {
+        prepare(new TestHandler());
+
+        int threads = 3;
+        int iterations = 4;
+        Set<Integer> boundShards = ConcurrentHashMap.newKeySet();
+        Queue<String> threadNames = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .threads(threads)
+                .iterationsPerThread(iterations)
+                // Spaced so that each tree completes before the
+                // next one, and before the HttpClients are stopped.
+                .resourceRate(threads * 10)
+                .sharded(true)
+                .threadAffinity((shard, shards) -> {
+                    Assert.assertEquals(threads, shards);
+                    boundShards.add(shard);
+                })
+                .shardResourceListener(CountingNodeListener::new)
+                .resourceListener((Resource.NodeListener)info -> threadNames.offer(Thread.currentThread().getName()))
+                .build();
+
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(threads, boundShards.size());
+        // Each shard listener only sees the resources of its own sender thread.
+        Set<String> shardThreadNames = new HashSet<>();
+        for (int i = 0; i < threads; ++i) {
+            List<Resource.Listener> listeners = loadGenerator.getShardResourceListeners(i);
+            Assert.assertEquals(1, listeners.size());
+            CountingNodeListener listener = (CountingNodeListener)listeners.get(0);
+            Assert.assertEquals(iterations, listener.count.get());
+            // The sender thread or the pool of the shard, which no other shard uses.
+            Assert.assertTrue(listener.threadNames.stream().allMatch(shardThreadNames::add));
+        }
+        // Shared listeners are notified by all the shards.
+        Assert.assertEquals(threads * iterations, threadNames.size());
+        Assert.assertEquals(shardThreadNames, new HashSet<>(threadNames));
+    }
+
     @Test
     public void testTwoRuns() throws Exception {
         prepare(new TestHandler());
@@ -305,4 +673,171 @@ public class LoadGeneratorTest {
             }
         }).get(5, TimeUnit.SECONDS);
     }
+
+    @Test
+    public void testLocalAddress() throws Exception {
+        // Not the default local address, so that the binding is actually verified.
+        // Only Linux routes the whole 127.0.0.0/8 block to the loopback by default.
+        String localAddress = "127.0.0.2";
+        try (Socket socket = new Socket()) {
+            socket.bind(new InetSocketAddress(localAddress, 0));
+        } catch (IOException x) {
+            Assume.assumeNoException(x);
+        }
+
+        Set<String> remoteAddresses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                remoteAddresses.add(request.getRemoteAddr());
+            }
+        });
+
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .usersPerThread(2)
+                .iterationsPerThread(2)
+                .localAddress(localAddress)
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(Collections.singleton(localAddress), remoteAddresses);
+    }
+
+    @Test
+    public void testCachingSocketAddressResolver() throws Exception {
+        prepare(new TestHandler());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CachingSocketAddressResolver.Hosts hosts = new CachingSocketAddressResolver.Hosts()
+                    .add("loadgen.test", "127.0.0.1");
+            CachingSocketAddressResolver resolver = new CachingSocketAddressResolver(executor, hosts, 1, 1, TimeUnit.MINUTES);
+            LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                    .host("loadgen.test")
+                    .port(connector.getLocalPort())
+                    .httpClientTransportBuilder(clientTransportBuilder)
+                    .usersPerThread(2)
+                    // One iteration per user, so that both users connect.
+                    .iterationsPerThread(2)
+                    .socketAddressResolver(resolver)
+                    .build();
+            loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+            Assert.assertEquals(2, resolver.getResolutions());
+            Assert.assertEquals(1, resolver.getLookups());
+            Assert.assertEquals(0, resolver.getFailures());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConnectionStatistics() throws Exception {
+        prepare(new TestHandler());
+
+        Queue<Connection> connections = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .iterationsPerThread(3)
+                .resource(new Resource("/", new Resource("/1"), new Resource("/2")))
+                .connectionListener(new Connection.Listener.Adapter() {
+                    @Override
+                    public void onOpened(Connection connection) {
+                        connections.offer(connection);
+                    }
+                })
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertFalse(connections.isEmpty());
+        // HttpClient may open pooled connections that stay idle,
+        // so only the totals are bound to be positive.
+        Assert.assertTrue(connections.stream().mapToLong(Connection::getBytesIn).sum() > 0);
+        Assert.assertTrue(connections.stream().mapToLong(Connection::getBytesOut).sum() > 0);
+        // HTTP/2 connections do not count requests
+        if (!(connections.peek() instanceof HTTP2Connection)) {
+            Assert.assertEquals(9, connections.stream().mapToLong(Connection::getMessagesOut).sum());
+        }
+    }
+
+    @Test
+    public void testServerSentEvents() throws Exception {
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                response.setContentType("text/event-stream");
+                ServletOutputStream output = response.getOutputStream();
+                for (int i = 0; i < 3; ++i) {
+                    output.print(": keep-alive\n\n");
+                    output.print("timestamp: " + System.currentTimeMillis() + "\n");
+                    output.print("data: event " + i + "\n\n");
+                    output.flush();
+                }
+            }
+        });
+
+        List<Long> timestamps = new CopyOnWriteArrayList<>();
+        AtomicLong events = new AtomicLong();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .resource(new Resource("/events").streaming(true))
+                .resourceListener((Resource.StreamListener)(info, gap, timestamp) -> timestamps.add(timestamp))
+                .resourceListener((Resource.NodeListener)info -> events.set(info.getEvents()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(3, timestamps.size());
+        Assert.assertTrue(timestamps.stream().allMatch(timestamp -> timestamp > 0));
+        Assert.assertEquals(3, events.get());
+    }
+
+    @Test
+    public void testStreamClosedAfterEvents() throws Exception {
+        prepare(new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                jettyRequest.setHandled(true);
+                response.setContentType("text/event-stream");
+                ServletOutputStream output = response.getOutputStream();
+                try {
+                    // Stream forever, until the client closes the stream.
+                    while (true) {
+                        output.print("data: event\n\n");
+                        output.flush();
+                        Thread.sleep(10);
+                    }
+                } catch (InterruptedException x) {
+                    throw new InterruptedIOException();
+                }
+            }
+        });
+
+        AtomicLong events = new AtomicLong();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .port(connector.getLocalPort())
+                .httpClientTransportBuilder(clientTransportBuilder)
+                .resource(new Resource("/events").streaming(true).events(5))
+                .resourceListener((Resource.NodeListener)info -> events.set(info.getEvents()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(5, events.get());
+    }
+
+    private static class CountingNodeListener implements Resource.NodeListener {
+        private final AtomicLong count = new AtomicLong();
+        private final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void onResourceNode(Resource.Info info) {
+            count.incrementAndGet();
+            threadNames.add(Thread.currentThread().getName());
+        }
+    }
 }
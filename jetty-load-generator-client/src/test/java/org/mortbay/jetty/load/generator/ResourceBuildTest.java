@@ -22,6 +22,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import groovy.lang.GroovyShell;
@@ -150,4 +153,27 @@ public class ResourceBuildTest {
         Assert.assertEquals("/favicon.ico", sample.getResources().get(0)
                 .getResources().get(6).getPath());
     }
+
+    @Test
+    public void dependencies_resolved() throws Exception {
+        Resource style = new Resource("/style.css");
+        Resource script = new Resource("/script.js").dependsOn("/style.css");
+        Resource sample = new Resource("/index.html", style, script);
+
+        Map<Resource, List<Resource>> dependencies = sample.resolveDependencies();
+
+        Assert.assertEquals(1, dependencies.size());
+        Assert.assertEquals(Collections.singletonList(style), dependencies.get(script));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dependencies_unknown() throws Exception {
+        new Resource("/index.html", new Resource("/script.js").dependsOn("/missing.css")).resolveDependencies();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dependencies_cycle_with_descendant() throws Exception {
+        // The parent cannot depend on its own child.
+        new Resource("/index.html", new Resource("/script.js")).dependsOn("/script.js").resolveDependencies();
+    }
 }
@@ -0,0 +1,69 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceMixTest {
+    @Test
+    public void profiles_follow_weights() throws Exception {
+        ResourceMix mix = new ResourceMix()
+                .profile("pages", new Resource("/"), 70)
+                .profile("api", new Resource("/api"), 25)
+                .profile("admin", new Resource("/admin"), 5);
+        mix.resolve();
+
+        Random random = new Random(1);
+        Map<String, Integer> counts = new HashMap<>();
+        int samples = 100_000;
+        for (int i = 0; i < samples; ++i) {
+            counts.merge(mix.next(random).getName(), 1, Integer::sum);
+        }
+
+        Assert.assertEquals(0.70, counts.get("pages") / (double)samples, 0.01);
+        Assert.assertEquals(0.25, counts.get("api") / (double)samples, 0.01);
+        Assert.assertEquals(0.05, counts.get("admin") / (double)samples, 0.01);
+    }
+
+    @Test
+    public void single_profile() throws Exception {
+        ResourceMix mix = new ResourceMix().profile("only", new Resource("/"), 1);
+        mix.resolve();
+        Random random = new Random();
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals("only", mix.next(random).getName());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicate_profile() throws Exception {
+        new ResourceMix().profile("a", new Resource("/"), 1).profile("a", new Resource("/b"), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void empty_mix() throws Exception {
+        new ResourceMix().resolve();
+    }
+}
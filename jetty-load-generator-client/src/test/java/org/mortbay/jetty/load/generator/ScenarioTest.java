@@ -0,0 +1,62 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScenarioTest {
+    @Test
+    public void transitions_follow_weights() throws Exception {
+        Scenario scenario = new Scenario()
+                .step(new Scenario.Step("home", new Resource("/")).to("search", 3).to("product", 1).exit(0.2))
+                .step(new Scenario.Step("search", new Resource("/search")))
+                .step(new Scenario.Step("product", new Resource("/product")));
+        scenario.resolve();
+
+        Random random = new Random(1);
+        Map<String, Integer> counts = new HashMap<>();
+        int samples = 100_000;
+        for (int i = 0; i < samples; ++i) {
+            Scenario.Step next = scenario.getFirstStep().next(random);
+            counts.merge(next == null ? "exit" : next.getName(), 1, Integer::sum);
+        }
+
+        Assert.assertEquals(0.2, counts.get("exit") / (double)samples, 0.01);
+        Assert.assertEquals(0.6, counts.get("search") / (double)samples, 0.01);
+        Assert.assertEquals(0.2, counts.get("product") / (double)samples, 0.01);
+    }
+
+    @Test
+    public void step_without_transitions_exits() throws Exception {
+        Scenario scenario = new Scenario().step(new Scenario.Step("only", new Resource("/")));
+        scenario.resolve();
+        Assert.assertNull(scenario.getFirstStep().next(new Random()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_step() throws Exception {
+        new Scenario().step(new Scenario.Step("home", new Resource("/")).to("missing", 1)).resolve();
+    }
+}
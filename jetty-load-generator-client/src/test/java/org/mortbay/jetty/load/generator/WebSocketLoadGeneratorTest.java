@@ -0,0 +1,122 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebSocketLoadGeneratorTest {
+    private Server server;
+    private ServerConnector connector;
+
+    @Before
+    public void prepare() throws Exception {
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        server.setHandler(new WebSocketHandler() {
+            @Override
+            public void configure(WebSocketServletFactory factory) {
+                factory.register(EchoSocket.class);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void dispose() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testEchoMessages() throws Exception {
+        AtomicLong messages = new AtomicLong();
+        AtomicLong nodes = new AtomicLong();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP1ClientTransportBuilder())
+                .port(connector.getLocalPort())
+                .resource(new Resource("/echo").webSocket(true).messages(10).messageLength(1024))
+                .resourceListener((Resource.MessageListener)(info, sendTime, echoTime) -> {
+                    Assert.assertTrue(echoTime >= sendTime);
+                    messages.incrementAndGet();
+                })
+                .resourceListener((Resource.NodeListener)info -> {
+                    Assert.assertEquals(10 * 1024, info.getContentLength());
+                    nodes.incrementAndGet();
+                })
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(10, messages.get());
+        Assert.assertEquals(1, nodes.get());
+    }
+
+    @Test
+    public void testMessageRateWithoutEcho() throws Exception {
+        AtomicLong nodes = new AtomicLong();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP1ClientTransportBuilder())
+                .port(connector.getLocalPort())
+                .resource(new Resource("/echo").webSocket(true).messages(5).messageLength(16).messageRate(50).messageEcho(false))
+                .resourceListener((Resource.NodeListener)info -> nodes.incrementAndGet())
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, nodes.get());
+    }
+
+    @Test
+    public void testShardedEchoMessages() throws Exception {
+        Queue<String> threadNames = new ConcurrentLinkedDeque<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder()
+                .httpClientTransportBuilder(new HTTP1ClientTransportBuilder())
+                .port(connector.getLocalPort())
+                .sharded(true)
+                .resource(new Resource("/echo").webSocket(true).messages(10).messageLength(1024))
+                .resourceListener((Resource.MessageListener)(info, sendTime, echoTime) -> threadNames.offer(Thread.currentThread().getName()))
+                .build();
+        loadGenerator.begin().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(10, threadNames.size());
+        // Echoes are read by the WebSocketClient, which runs in the shard executor.
+        Assert.assertTrue(threadNames.toString(), threadNames.stream().allMatch(name -> name.startsWith("shard-")));
+    }
+
+    public static class EchoSocket extends WebSocketAdapter {
+        @Override
+        public void onWebSocketBinary(byte[] payload, int offset, int length) {
+            getRemote().sendBytesByFuture(ByteBuffer.wrap(payload, offset, length));
+        }
+    }
+}
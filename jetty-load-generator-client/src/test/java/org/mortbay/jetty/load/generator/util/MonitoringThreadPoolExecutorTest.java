@@ -0,0 +1,94 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MonitoringThreadPoolExecutorTest {
+    private MonitoringThreadPoolExecutor executor;
+
+    @After
+    public void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLatencies() throws Exception {
+        executor = new MonitoringThreadPoolExecutor(2, 60, TimeUnit.SECONDS);
+
+        int tasks = 20;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; ++i) {
+            executor.execute(() -> {
+                sleep(10);
+                latch.countDown();
+            });
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // The latch is counted down before the task latency is recorded.
+        Thread.sleep(100);
+
+        Assert.assertEquals(tasks, executor.getTasks());
+        Assert.assertEquals(tasks, executor.getTaskLatencyHistogram().getTotalCount());
+        Assert.assertEquals(2, executor.getMaxActiveThreads());
+        Assert.assertTrue(executor.getMaxQueueSize() > 1);
+        Assert.assertTrue(executor.getTaskLatencyPercentile(50D) >= TimeUnit.MILLISECONDS.toNanos(10));
+        // 2 threads for 20 tasks of 10 ms, the last tasks wait about 90 ms.
+        Assert.assertTrue(executor.getMaxQueueLatency() >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        executor.reset();
+        Assert.assertEquals(0, executor.getTasks());
+        Assert.assertEquals(0, executor.getQueueLatencyHistogram().getTotalCount());
+        Assert.assertEquals(-1, executor.getAverageTaskLatency());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        executor = new MonitoringThreadPoolExecutor(4, 60, TimeUnit.SECONDS);
+        executor.setSamplingPeriod(10);
+
+        int tasks = 10_000;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; ++i) {
+            executor.execute(latch::countDown);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        Assert.assertEquals(tasks, executor.getTasks());
+        long timed = executor.getTaskLatencyHistogram().getTotalCount();
+        Assert.assertTrue(String.valueOf(timed), timed > tasks / 20 && timed < tasks / 5);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+
+package org.mortbay.jetty.load.generator.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThreadAffinityTest {
+    @Test
+    public void testParseCpuList() {
+        Assert.assertArrayEquals(new int[]{0}, ThreadAffinity.parseCpuList("0"));
+        Assert.assertArrayEquals(new int[]{2, 3, 4, 5, 8, 10, 11}, ThreadAffinity.parseCpuList(" 2-5,8,10-11\n"));
+    }
+
+    @Test
+    public void testCpusSplitBetweenShards() {
+        // E.g. a container allowed to run on CPUs 2-5 and 8-11.
+        int[] cpus = ThreadAffinity.parseCpuList("2-5,8-11");
+        Assert.assertEquals("2,3,4,5", ThreadAffinity.cpus(0, 2, cpus));
+        Assert.assertEquals("8,9,10,11", ThreadAffinity.cpus(1, 2, cpus));
+        Assert.assertEquals("2,3,4", ThreadAffinity.cpus(0, 3, new int[]{2, 3, 4, 5, 8, 9, 10, 11, 12}));
+        // More shards than CPUs, the shards share the CPUs.
+        Assert.assertEquals("5", ThreadAffinity.cpus(3, 4, new int[]{3, 5}));
+    }
+
+    @Test
+    public void testAllowedCpus() {
+        int[] cpus = LinuxThreadAffinity.allowedCpus();
+        Assert.assertTrue(cpus.length > 0);
+        Assert.assertTrue(cpus.length <= Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -34,6 +35,7 @@ import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.listeners.ClockOffset;
 import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
 
 /**
@@ -60,6 +62,11 @@ public class CollectorClient
 
     private List<CollectorResultHandler> collectorResultHandlers;
 
+    /**
+     * clock offset per address, refined on each collection
+     */
+    private final Map<String, ClockOffset> clockOffsets = new ConcurrentHashMap<>();
+
     public CollectorClient( List<String> addresses, long scheduleDelayInMillis,
                             List<CollectorResultHandler> collectorResultHandlers )
     {
@@ -95,6 +102,9 @@ public class CollectorClient
 
                         ObjectMapper objectMapper = new ObjectMapper();
 
+                        // the remote timestamps are converted to the local clock to be merged
+                        ClockOffset clockOffset = clockOffsets.computeIfAbsent( address, k -> new ClockOffset() ) //
+                            .sample( httpClient, "http://" + address + "/collector/time" );
 
                         // response time per path informations
                         ContentResponse contentResponse = httpClient //
@@ -112,7 +122,7 @@ public class CollectorClient
 
                         Map<String, CollectorInformations> responseTimePerPath =
                             objectMapper.readValue( contentResponse.getContentAsString(), typeRef );
-
+                        responseTimePerPath.values().forEach( clockOffset::correct );
 
                         for (CollectorResultHandler collectorResultHandler: collectorResultHandlers)
                         {
@@ -142,6 +152,14 @@ public class CollectorClient
         return this;
     }
 
+    /**
+     * @return the estimated clock offset of each address, used to convert the collected timestamps to the local clock
+     */
+    public Map<String, ClockOffset> getClockOffsets()
+    {
+        return clockOffsets;
+    }
+
     //--------------------------------------------------------------
     //  Builder
     //--------------------------------------------------------------
@@ -0,0 +1,183 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>NTP-style estimation of the offset between a remote clock and the local clock.</p>
+ * <p>Each sample reads the remote time between two local times: assuming a symmetric network path,
+ * the remote time was read at the middle of the round trip, so the offset is the remote time minus the local time
+ * at the middle of the round trip. The sample with the shortest round trip is kept, as its error is bounded by
+ * half its round trip time.</p>
+ * <p>The estimated offset is used to convert remote timestamps (i.e. {@link ValueListener.Values#getEventTimestamp()}
+ * or {@link CollectorInformations} start and end timestamps) to the local clock, so that timelines of several
+ * nodes can be merged.</p>
+ */
+public class ClockOffset
+{
+
+    private static final Logger LOGGER = Log.getLogger( ClockOffset.class );
+
+    private long offset;
+
+    private long roundTripTime = Long.MAX_VALUE;
+
+    private long samples;
+
+    /**
+     * @param localBeginTime the local time (in millis) before reading the remote time
+     * @param remoteTime the remote time (in millis)
+     * @param roundTripNanos the round trip time (in nanos) to read the remote time
+     * @return this ClockOffset
+     */
+    public synchronized ClockOffset addSample( long localBeginTime, long remoteTime, long roundTripNanos )
+    {
+        samples++;
+        long rtt = TimeUnit.NANOSECONDS.toMillis( roundTripNanos );
+        if ( rtt <= roundTripTime )
+        {
+            roundTripTime = rtt;
+            offset = remoteTime - ( localBeginTime + TimeUnit.NANOSECONDS.toMillis( roundTripNanos / 2 ) );
+        }
+        return this;
+    }
+
+    /**
+     * @return the remote clock minus the local clock in millis, 0 if there is no sample
+     */
+    public synchronized long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return the round trip time (in millis) of the best sample, so twice the max error of the offset,
+     * or -1 if there is no sample
+     */
+    public synchronized long getRoundTripTime()
+    {
+        return samples == 0 ? -1 : roundTripTime;
+    }
+
+    public synchronized long getSamples()
+    {
+        return samples;
+    }
+
+    /**
+     * @param remoteTime a remote timestamp in millis
+     * @return the timestamp in the local clock
+     */
+    public long toLocalTime( long remoteTime )
+    {
+        return remoteTime - getOffset();
+    }
+
+    /**
+     * @param localTime a local timestamp in millis
+     * @return the timestamp in the remote clock
+     */
+    public long toRemoteTime( long localTime )
+    {
+        return localTime + getOffset();
+    }
+
+    /**
+     * Converts the event timestamp of the values to the local clock.
+     *
+     * @param values values collected on the remote node
+     * @return the values
+     */
+    public ValueListener.Values correct( ValueListener.Values values )
+    {
+        return values.eventTimestamp( toLocalTime( values.getEventTimestamp() ) );
+    }
+
+    /**
+     * Converts the start and end timestamps of the informations to the local clock.
+     *
+     * @param collectorInformations informations collected on the remote node
+     * @return the informations
+     */
+    public CollectorInformations correct( CollectorInformations collectorInformations )
+    {
+        return collectorInformations //
+            .startTimeStamp( toLocalTime( collectorInformations.getStartTimeStamp() ) ) //
+            .endTimeStamp( toLocalTime( collectorInformations.getEndTimeStamp() ) );
+    }
+
+    /**
+     * Reads a remote clock exposed as the plain text current time in millis, and adds the sample.
+     *
+     * @param httpClient the started HttpClient to use
+     * @param uri the uri returning the remote time
+     * @return this ClockOffset
+     * @throws Exception if the remote time cannot be read
+     * @throws IllegalStateException if the remote time is not returned with a 200 status
+     */
+    public ClockOffset sample( HttpClient httpClient, String uri )
+        throws Exception
+    {
+        long begin = System.currentTimeMillis();
+        long beginNanos = System.nanoTime();
+        ContentResponse response = httpClient.newRequest( uri ).timeout( 10, TimeUnit.SECONDS ).send();
+        long roundTripNanos = System.nanoTime() - beginNanos;
+        if ( response.getStatus() != HttpStatus.OK_200 )
+        {
+            throw new IllegalStateException(
+                "cannot read the remote time from " + uri + ": " + response.getStatus() + " " + response.getReason() );
+        }
+        return addSample( begin, Long.parseLong( response.getContentAsString().trim() ), roundTripNanos );
+    }
+
+    /**
+     * Estimates the offset of a remote clock exposed as the plain text current time in millis.
+     *
+     * @param httpClient the started HttpClient to use
+     * @param uri the uri returning the remote time
+     * @param samples the number of samples
+     * @return the estimated offset
+     * @throws Exception if the remote time cannot be read
+     */
+    public static ClockOffset estimate( HttpClient httpClient, String uri, int samples )
+        throws Exception
+    {
+        ClockOffset clockOffset = new ClockOffset();
+        for ( int i = 0; i < samples; i++ )
+        {
+            clockOffset.sample( httpClient, uri );
+        }
+        LOGGER.debug( "clock offset of {}: {}", uri, clockOffset );
+        return clockOffset;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ClockOffset{" + "offset=" + getOffset() + ", roundTripTime=" + getRoundTripTime() + ", samples="
+            + getSamples() + '}';
+    }
+}
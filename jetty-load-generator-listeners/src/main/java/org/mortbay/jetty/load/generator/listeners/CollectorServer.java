@@ -32,6 +32,7 @@ import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.mortbay.jetty.load.generator.LoadGenerator;
 import org.mortbay.jetty.load.generator.Resource;
 
 import javax.servlet.ServletException;
@@ -45,10 +46,15 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
- *
+ * <p>Serves the response time histograms per path, since the last read, at {@code /collector/response-times}.</p>
+ * <p>With coordinated omission correction, the histograms corrected with the expected interval
+ * between two requests of a sender thread at the configured resource rate
+ * (see {@link LoadGenerator.Config#getIterationPeriod()}) are served at
+ * {@code /collector/corrected-response-times}; the listener must then also be registered with
+ * {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)} to get the rate.</p>
  */
 public class CollectorServer
-    implements Resource.NodeListener
+    implements Resource.NodeListener, LoadGenerator.BeginListener
 {
 
     private static final Logger LOGGER = Log.getLogger( CollectorServer.class );
@@ -61,9 +67,21 @@ public class CollectorServer
 
     private final Map<String, Recorder> recorderPerPath = new ConcurrentHashMap<>(  );
 
+    private final Map<String, Recorder> correctedRecorderPerPath = new ConcurrentHashMap<>(  );
+
+    private final boolean coordinatedOmissionCorrection;
+
+    private volatile long expectedInterval;
+
     public CollectorServer( int port )
+    {
+        this( port, false );
+    }
+
+    public CollectorServer( int port, boolean coordinatedOmissionCorrection )
     {
         this.port = port;
+        this.coordinatedOmissionCorrection = coordinatedOmissionCorrection;
     }
 
     public int getPort()
@@ -86,7 +104,7 @@ public class CollectorServer
 
         server.setHandler( context );
 
-        CollectorServlet collectorServlet = new CollectorServlet( recorderPerPath );
+        CollectorServlet collectorServlet = new CollectorServlet( recorderPerPath, correctedRecorderPerPath );
 
         // TODO path configurable?
         context.addServlet( new ServletHolder( collectorServlet ), "/collector/*" );
@@ -123,9 +141,17 @@ public class CollectorServer
 
         private Map<String, Recorder> recorderPerPath;
 
+        private Map<String, Recorder> correctedRecorderPerPath;
+
         public CollectorServlet(  Map<String, Recorder> recorderPerPath )
+        {
+            this( recorderPerPath, new HashMap<>() );
+        }
+
+        public CollectorServlet( Map<String, Recorder> recorderPerPath, Map<String, Recorder> correctedRecorderPerPath )
         {
             this.recorderPerPath = recorderPerPath;
+            this.correctedRecorderPerPath = correctedRecorderPerPath;
         }
 
         @Override
@@ -137,18 +163,43 @@ public class CollectorServer
 
             ObjectMapper mapper = new ObjectMapper();
 
+            if ( StringUtil.endsWithIgnoreCase( pathInfo, "/time" ) )
+            {
+                // used by collectors to estimate the clock offset, see ClockOffset
+                resp.setContentType( "text/plain" );
+                resp.getWriter().print( System.currentTimeMillis() );
+                return;
+            }
+
+            if ( StringUtil.endsWithIgnoreCase( pathInfo, "corrected-response-times" ) )
+            {
+                mapper.writeValue( resp.getOutputStream(), toInfos( correctedRecorderPerPath ) );
+                return;
+            }
+
             if ( StringUtil.endsWithIgnoreCase( pathInfo, "response-times" ) )
             {
-                Map<String, CollectorInformations> infos = new HashMap<>( recorderPerPath.size() );
-                for ( Map.Entry<String, Recorder> entry : recorderPerPath.entrySet() )
-                {
-                    infos.put( entry.getKey(), new CollectorInformations( entry.getValue().getIntervalHistogram()) );
-                }
-                mapper.writeValue( resp.getOutputStream(), infos );
+                mapper.writeValue( resp.getOutputStream(), toInfos( recorderPerPath ) );
                 return;
             }
 
         }
+
+        private Map<String, CollectorInformations> toInfos( Map<String, Recorder> recorders )
+        {
+            Map<String, CollectorInformations> infos = new HashMap<>( recorders.size() );
+            for ( Map.Entry<String, Recorder> entry : recorders.entrySet() )
+            {
+                infos.put( entry.getKey(), new CollectorInformations( entry.getValue().getIntervalHistogram()) );
+            }
+            return infos;
+        }
+    }
+
+    @Override
+    public void onBegin( LoadGenerator generator )
+    {
+        expectedInterval = coordinatedOmissionCorrection ? generator.getConfig().getIterationPeriod() : 0;
     }
 
     @Override
@@ -156,26 +207,27 @@ public class CollectorServer
     {
         String path = info.getResource().getPath();
 
-        Recorder recorder = recorderPerPath.get( path );
-        if ( recorder == null )
-        {
-            recorder = new Recorder( TimeUnit.MICROSECONDS.toNanos( 1 ), //
-                                     TimeUnit.MINUTES.toNanos( 1 ), //
-                                     3 );
-            recorderPerPath.put( path, recorder );
-        }
-
-
         long time = info.getResponseTime() - info.getRequestTime();
+        long expectedInterval = this.expectedInterval;
         try
         {
-            recorder.recordValue( time );
+            recorderPerPath.computeIfAbsent( path, k -> newRecorder() ).recordValue( time );
+            if ( expectedInterval > 0 )
+            {
+                correctedRecorderPerPath.computeIfAbsent( path, k -> newRecorder() ) //
+                    .recordValueWithExpectedInterval( time, expectedInterval );
+            }
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
             LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
         }
+    }
 
-
+    private Recorder newRecorder()
+    {
+        return new Recorder( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+                             TimeUnit.MINUTES.toNanos( 1 ), //
+                             3 );
     }
 }
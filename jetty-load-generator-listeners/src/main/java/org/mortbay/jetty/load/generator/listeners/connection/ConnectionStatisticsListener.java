@@ -0,0 +1,338 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.connection;
+
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
+import org.eclipse.jetty.fcgi.client.http.HttpConnectionOverFCGI;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.FCGIClientTransportBuilder;
+import org.mortbay.jetty.load.generator.HTTP1ClientTransportBuilder;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Session;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records per connection statistics: the bytes read and written, the number of requests sent
+ * and the lifetime of each connection, along with the number of opened connections.</p>
+ * <p>Bytes are network bytes (so including TLS records) for the connections created by
+ * {@link HTTP1ClientTransportBuilder} and {@link FCGIClientTransportBuilder},
+ * and HTTP/2 frame bytes (so including the HPACK encoded headers) for HTTP/2 connections.
+ * The number of requests per connection is not known for HTTP/2 connections.</p>
+ * <p>Statistics are aggregated globally and per user (i.e. per {@link Session}, whatever the
+ * number of {@link HttpClient}s of the user), the latter being only available for HTTP/1.1
+ * and FastCGI connections.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#connectionListener(Connection.Listener)}
+ * and {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ */
+public class ConnectionStatisticsListener
+    implements Connection.Listener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( ConnectionStatisticsListener.class );
+
+    private static final long HIGHEST_TRACKABLE_BYTES = 1L << 40;
+
+    private static final long HIGHEST_TRACKABLE_REQUESTS = 1L << 30;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    private final Statistics statistics = new Statistics();
+
+    private final Map<Session, Statistics> userStatistics = new ConcurrentHashMap<>();
+
+    private final AtomicLong openConnections = new AtomicLong();
+
+    private final AtomicLong maxOpenConnections = new AtomicLong();
+
+    private final Recorder lifeTimeHistogram;
+
+    private final AtomicHistogram bytesInHistogram = new AtomicHistogram( HIGHEST_TRACKABLE_BYTES, 3 );
+
+    private final AtomicHistogram bytesOutHistogram = new AtomicHistogram( HIGHEST_TRACKABLE_BYTES, 3 );
+
+    private final AtomicHistogram requestsHistogram = new AtomicHistogram( HIGHEST_TRACKABLE_REQUESTS, 3 );
+
+    private boolean printOnEnd = true;
+
+    public ConnectionStatisticsListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                         int numberOfSignificantValueDigits )
+    {
+        this.lifeTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public ConnectionStatisticsListener( boolean printOnEnd )
+    {
+        this( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+              HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+              HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public ConnectionStatisticsListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onOpened( Connection connection )
+    {
+        // the decrypted connection of a TLS connection carries the statistics
+        if ( connection instanceof SslConnection )
+        {
+            return;
+        }
+        connections.add( connection );
+        long open = openConnections.incrementAndGet();
+        maxOpenConnections.accumulateAndGet( open, Math::max );
+    }
+
+    @Override
+    public void onClosed( Connection connection )
+    {
+        if ( !connections.remove( connection ) )
+        {
+            return;
+        }
+        openConnections.decrementAndGet();
+
+        long lifeTime = TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis() - connection.getCreatedTimeStamp() );
+        long bytesIn = connection.getBytesIn();
+        long bytesOut = connection.getBytesOut();
+        long requests = connection.getMessagesOut();
+
+        statistics.collect( bytesIn, bytesOut, requests );
+        Session session = getSession( connection );
+        if ( session != null )
+        {
+            userStatistics.computeIfAbsent( session, k -> new Statistics() ).collect( bytesIn, bytesOut, requests );
+        }
+
+        try
+        {
+            lifeTimeHistogram.recordValue( lifeTime );
+            if ( bytesIn >= 0 )
+            {
+                bytesInHistogram.recordValue( bytesIn );
+            }
+            if ( bytesOut >= 0 )
+            {
+                bytesOutHistogram.recordValue( bytesOut );
+            }
+            if ( requests >= 0 )
+            {
+                requestsHistogram.recordValue( requests );
+            }
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording connection {}, {}", connection, e.getMessage() );
+        }
+    }
+
+    private static Session getSession( Connection connection )
+    {
+        HttpDestination destination = null;
+        if ( connection instanceof HttpConnectionOverHTTP )
+        {
+            destination = ( (HttpConnectionOverHTTP) connection ).getHttpDestination();
+        }
+        else if ( connection instanceof HttpConnectionOverFCGI )
+        {
+            destination = ( (HttpConnectionOverFCGI) connection ).getHttpDestination();
+        }
+        // the HttpClients of a user share the user session
+        return destination == null ? null : destination.getHttpClient().getBean( Session.class );
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        // connections still opened are collected as well
+        connections.forEach( this::onClosed );
+
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Connection Statistics Summary      " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "connections=" ).append( statistics.getConnections() ) //
+                .append( ", max open=" ).append( getMaxOpenConnections() ) //
+                .append( ", bytes in=" ).append( statistics.getBytesIn() ) //
+                .append( ", bytes out=" ).append( statistics.getBytesOut() ) //
+                .append( ", requests=" ).append( statistics.getRequests() ) //
+                .append( System.lineSeparator() ) //
+                .append( "users=" ).append( userStatistics.size() ) //
+                .append( ", connections per user: min=" ) //
+                .append( userStatistics.values().stream().mapToLong( Statistics::getConnections ).min().orElse( 0 ) ) //
+                .append( ", max=" ) //
+                .append( userStatistics.values().stream().mapToLong( Statistics::getConnections ).max().orElse( 0 ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "bytes in per connection: mean=" ) //
+                .append( String.format( "%.2f", bytesInHistogram.getMean() ) ) //
+                .append( ", 50%=" ).append( bytesInHistogram.getValueAtPercentile( 50D ) ) //
+                .append( ", max=" ).append( bytesInHistogram.getMaxValue() ) //
+                .append( System.lineSeparator() ) //
+                .append( "bytes out per connection: mean=" ) //
+                .append( String.format( "%.2f", bytesOutHistogram.getMean() ) ) //
+                .append( ", 50%=" ).append( bytesOutHistogram.getValueAtPercentile( 50D ) ) //
+                .append( ", max=" ).append( bytesOutHistogram.getMaxValue() ) //
+                .append( System.lineSeparator() ) //
+                .append( "requests per connection: mean=" ) //
+                .append( String.format( "%.2f", requestsHistogram.getMean() ) ) //
+                .append( ", 50%=" ).append( requestsHistogram.getValueAtPercentile( 50D ) ) //
+                .append( ", max=" ).append( requestsHistogram.getMaxValue() ) //
+                .append( System.lineSeparator() ) //
+                .append( "connection lifetime:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( lifeTimeHistogram.getIntervalHistogram() ) //
+                             .toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the number of currently opened connections
+     */
+    public long getOpenConnections()
+    {
+        return openConnections.get();
+    }
+
+    /**
+     * @return the max number of connections opened at the same time
+     */
+    public long getMaxOpenConnections()
+    {
+        return maxOpenConnections.get();
+    }
+
+    /**
+     * @return the statistics of all the closed connections
+     */
+    public Statistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return the statistics of the closed connections per user {@link Session}
+     */
+    public Map<Session, Statistics> getUserStatistics()
+    {
+        return userStatistics;
+    }
+
+    /**
+     * @return the connection lifetime (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getLifeTimeHistogram()
+    {
+        return lifeTimeHistogram;
+    }
+
+    /**
+     * @return the bytes read per connection histogram
+     */
+    public AtomicHistogram getBytesInHistogram()
+    {
+        return bytesInHistogram;
+    }
+
+    /**
+     * @return the bytes written per connection histogram
+     */
+    public AtomicHistogram getBytesOutHistogram()
+    {
+        return bytesOutHistogram;
+    }
+
+    /**
+     * @return the requests per connection histogram
+     */
+    public AtomicHistogram getRequestsHistogram()
+    {
+        return requestsHistogram;
+    }
+
+    /**
+     * The totals of a set of closed connections, unknown values (i.e. negative) being ignored.
+     */
+    public static class Statistics
+    {
+        private final LongAdder connections = new LongAdder();
+
+        private final LongAdder bytesIn = new LongAdder();
+
+        private final LongAdder bytesOut = new LongAdder();
+
+        private final LongAdder requests = new LongAdder();
+
+        private void collect( long bytesIn, long bytesOut, long requests )
+        {
+            this.connections.increment();
+            this.bytesIn.add( Math.max( 0, bytesIn ) );
+            this.bytesOut.add( Math.max( 0, bytesOut ) );
+            this.requests.add( Math.max( 0, requests ) );
+        }
+
+        public long getConnections()
+        {
+            return connections.longValue();
+        }
+
+        public long getBytesIn()
+        {
+            return bytesIn.longValue();
+        }
+
+        public long getBytesOut()
+        {
+            return bytesOut.longValue();
+        }
+
+        public long getRequests()
+        {
+            return requests.longValue();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Statistics{" + "connections=" + connections + ", bytesIn=" + bytesIn + ", bytesOut=" + bytesOut
+                + ", requests=" + requests + '}';
+        }
+    }
+}
@@ -0,0 +1,228 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.http2;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Measures whether HTTP/2 server push is effective for the resource trees.</p>
+ * <p>Push promises are counted per outcome (accepted, unmatched, redundant), pushed bytes are
+ * summed, and the tree time is recorded along with the estimated tree time without push
+ * (see {@link Resource.Info#getPushSavedTime()}).</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#resourceListener(Resource.Listener)}
+ * and {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ */
+public class PushEffectivenessListener
+    implements Resource.NodeListener, Resource.TreeListener, Resource.PushListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( PushEffectivenessListener.class );
+
+    private final Map<Resource.Push, LongAdder> promises = new EnumMap<>( Resource.Push.class );
+
+    private final LongAdder pushedResources = new LongAdder();
+
+    private final LongAdder pushedBytes = new LongAdder();
+
+    private final LongAdder pushedTrees = new LongAdder();
+
+    private final Recorder treeTimeHistogram;
+
+    private final Recorder noPushTreeTimeHistogram;
+
+    private final Recorder savedTimeHistogram;
+
+    private boolean printOnEnd = true;
+
+    public PushEffectivenessListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                      int numberOfSignificantValueDigits )
+    {
+        for ( Resource.Push push : Resource.Push.values() )
+        {
+            promises.put( push, new LongAdder() );
+        }
+        this.treeTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+        this.noPushTreeTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+        this.savedTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public PushEffectivenessListener( boolean printOnEnd )
+    {
+        this( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+              HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+              HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public PushEffectivenessListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onResourcePush( URI uri, Resource.Push push )
+    {
+        promises.get( push ).increment();
+    }
+
+    @Override
+    public void onResourceNode( Resource.Info info )
+    {
+        if ( info.isPushed() )
+        {
+            pushedResources.increment();
+            pushedBytes.add( info.getContentLength() );
+        }
+    }
+
+    @Override
+    public void onResourceTree( Resource.Info info )
+    {
+        long treeTime = info.getTreeTime() - info.getRequestTime();
+        long savedTime = info.getPushSavedTime();
+        if ( savedTime > 0 )
+        {
+            pushedTrees.increment();
+        }
+        try
+        {
+            treeTimeHistogram.recordValue( treeTime );
+            noPushTreeTimeHistogram.recordValue( treeTime + savedTime );
+            savedTimeHistogram.recordValue( savedTime );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", treeTime, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            Histogram treeTimes = treeTimeHistogram.getIntervalHistogram();
+            Histogram noPushTreeTimes = noPushTreeTimeHistogram.getIntervalHistogram();
+            Histogram savedTimes = savedTimeHistogram.getIntervalHistogram();
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   HTTP/2 Push Summary                " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "promised=" ).append( getPromised() ) //
+                .append( ", accepted=" ).append( getPromised( Resource.Push.ACCEPTED ) ) //
+                .append( ", unmatched=" ).append( getPromised( Resource.Push.UNMATCHED ) ) //
+                .append( ", redundant=" ).append( getPromised( Resource.Push.REDUNDANT ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "pushed resources=" ).append( getPushedResources() ) //
+                .append( ", pushed bytes=" ).append( getPushedBytes() ) //
+                .append( ", trees with push=" ).append( getPushedTrees() ) //
+                .append( System.lineSeparator() ) //
+                .append( "tree time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( treeTimes ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "estimated tree time without push:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( noPushTreeTimes ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "time saved per tree:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( savedTimes ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the number of push promises received
+     */
+    public long getPromised()
+    {
+        return promises.values().stream().mapToLong( LongAdder::longValue ).sum();
+    }
+
+    /**
+     * @param push the push outcome
+     * @return the number of push promises received with the given outcome
+     */
+    public long getPromised( Resource.Push push )
+    {
+        return promises.get( push ).longValue();
+    }
+
+    /**
+     * @return the number of pushed resources successfully received
+     */
+    public long getPushedResources()
+    {
+        return pushedResources.longValue();
+    }
+
+    /**
+     * @return the content bytes of the pushed resources
+     */
+    public long getPushedBytes()
+    {
+        return pushedBytes.longValue();
+    }
+
+    /**
+     * @return the number of trees for which server push saved time
+     */
+    public long getPushedTrees()
+    {
+        return pushedTrees.longValue();
+    }
+
+    /**
+     * @return the tree time (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getTreeTimeHistogram()
+    {
+        return treeTimeHistogram;
+    }
+
+    /**
+     * @return the estimated tree time (in nanos) without push histogram, reset on each interval read
+     */
+    public Recorder getNoPushTreeTimeHistogram()
+    {
+        return noPushTreeTimeHistogram;
+    }
+
+    /**
+     * @return the time saved (in nanos) per tree histogram, reset on each interval read
+     */
+    public Recorder getSavedTimeHistogram()
+    {
+        return savedTimeHistogram;
+    }
+}
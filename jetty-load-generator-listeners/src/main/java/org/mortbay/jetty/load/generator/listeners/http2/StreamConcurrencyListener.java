@@ -0,0 +1,198 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.http2;
+
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Samples the number of concurrent streams of each HTTP/2 connection.</p>
+ * <p>Only samples of connections with at least one open stream are recorded,
+ * so idle periods between iterations do not skew the distribution.</p>
+ * <p>To be registered with both {@link LoadGenerator.Builder#connectionListener(Connection.Listener)}
+ * and {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}: the sampling runs in a daemon
+ * thread from the begin to the end of the load.</p>
+ */
+public class StreamConcurrencyListener
+    implements Connection.Listener, LoadGenerator.BeginListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( StreamConcurrencyListener.class );
+
+    private static final long HIGHEST_TRACKABLE_STREAMS = 1024 * 1024;
+
+    private final Map<HTTP2Connection, Histogram> streamsPerConnection = new ConcurrentHashMap<>();
+
+    /**
+     * all the samples of all the connections
+     */
+    private final AtomicHistogram streamsHistogram = new AtomicHistogram( HIGHEST_TRACKABLE_STREAMS, 3 );
+
+    /**
+     * the max concurrent streams reached by each closed connection
+     */
+    private final AtomicHistogram maxStreamsHistogram = new AtomicHistogram( HIGHEST_TRACKABLE_STREAMS, 3 );
+
+    private final long samplePeriod;
+
+    private final TimeUnit timeUnit;
+
+    private ScheduledExecutorService sampler;
+
+    private boolean printOnEnd = true;
+
+    public StreamConcurrencyListener( long samplePeriod, TimeUnit timeUnit, boolean printOnEnd )
+    {
+        this.samplePeriod = samplePeriod;
+        this.timeUnit = timeUnit;
+        this.printOnEnd = printOnEnd;
+    }
+
+    public StreamConcurrencyListener()
+    {
+        this( 10, TimeUnit.MILLISECONDS, true );
+    }
+
+    @Override
+    public void onBegin( LoadGenerator generator )
+    {
+        sampler = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread thread = new Thread( r, "stream-concurrency-sampler" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        sampler.scheduleAtFixedRate( this::sample, samplePeriod, samplePeriod, timeUnit );
+    }
+
+    @Override
+    public void onOpened( Connection connection )
+    {
+        if ( connection instanceof HTTP2Connection )
+        {
+            streamsPerConnection.put( (HTTP2Connection) connection, new Histogram( HIGHEST_TRACKABLE_STREAMS, 3 ) );
+        }
+    }
+
+    @Override
+    public void onClosed( Connection connection )
+    {
+        if ( connection instanceof HTTP2Connection )
+        {
+            Histogram histogram = streamsPerConnection.remove( connection );
+            if ( histogram != null )
+            {
+                collect( histogram );
+            }
+        }
+    }
+
+    private void sample()
+    {
+        try
+        {
+            for ( Map.Entry<HTTP2Connection, Histogram> entry : streamsPerConnection.entrySet() )
+            {
+                int streams = entry.getKey().getSession().getStreams().size();
+                if ( streams > 0 )
+                {
+                    Histogram histogram = entry.getValue();
+                    // the connection may be concurrently closed and collected
+                    synchronized ( histogram )
+                    {
+                        histogram.recordValue( streams );
+                    }
+                }
+            }
+        }
+        catch ( Throwable x )
+        {
+            LOGGER.warn( "skip error sampling streams", x );
+        }
+    }
+
+    private void collect( Histogram histogram )
+    {
+        synchronized ( histogram )
+        {
+            if ( histogram.getTotalCount() > 0 )
+            {
+                streamsHistogram.add( histogram );
+                maxStreamsHistogram.recordValue( histogram.getMaxValue() );
+            }
+        }
+    }
+
+    /**
+     * @return the concurrent streams samples of all connections
+     */
+    public AtomicHistogram getStreamsHistogram()
+    {
+        return streamsHistogram;
+    }
+
+    /**
+     * @return the max concurrent streams reached by each connection
+     */
+    public AtomicHistogram getMaxStreamsHistogram()
+    {
+        return maxStreamsHistogram;
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( sampler != null )
+        {
+            sampler.shutdownNow();
+        }
+        // connections still opened are collected as well
+        streamsPerConnection.keySet().forEach( this::onClosed );
+
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   HTTP/2 Stream Concurrency Summary  " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "connections=" ).append( maxStreamsHistogram.getTotalCount() ) //
+                .append( System.lineSeparator() ) //
+                .append( "max streams per connection: min=" ).append( maxStreamsHistogram.getMinValue() ) //
+                .append( ", mean=" ).append( String.format( "%.2f", maxStreamsHistogram.getMean() ) ) //
+                .append( ", max=" ).append( maxStreamsHistogram.getMaxValue() ) //
+                .append( System.lineSeparator() ) //
+                .append( "concurrent streams: mean=" ).append( String.format( "%.2f", streamsHistogram.getMean() ) ) //
+                .append( ", 50%=" ).append( streamsHistogram.getValueAtPercentile( 50D ) ) //
+                .append( ", 90%=" ).append( streamsHistogram.getValueAtPercentile( 90D ) ) //
+                .append( ", max=" ).append( streamsHistogram.getMaxValue() ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+}
@@ -37,7 +37,11 @@ import org.mortbay.jetty.load.generator.Resource;
 import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
 
 /**
- *
+ * <p>Periodically reports the latency time histogram of each path to {@link ValueListener}s.</p>
+ * <p>With coordinated omission correction, the times are also recorded with the expected
+ * interval between two requests of a sender thread at the configured resource rate
+ * (see {@link LoadGenerator.Config#getIterationPeriod()}), and the corrected histogram
+ * is reported along with the raw one.</p>
  */
 public class LatencyTimeDisplayListener
     implements Resource.NodeListener, LoadGenerator.BeginListener, LoadGenerator.EndListener
@@ -45,7 +49,13 @@ public class LatencyTimeDisplayListener
 
     private static final Logger LOGGER = Log.getLogger( LatencyTimeDisplayListener.class );
 
-    private volatile Map<String, Recorder> recorderPerPath;
+    private final Map<String, Recorder> recorderPerPath;
+
+    private final Map<String, Recorder> correctedRecorderPerPath;
+
+    private final boolean coordinatedOmissionCorrection;
+
+    private volatile long expectedInterval;
 
     private ScheduledExecutorService scheduledExecutorService;
 
@@ -71,10 +81,21 @@ public class LatencyTimeDisplayListener
     public LatencyTimeDisplayListener( long lowestDiscernibleValue, long highestTrackableValue,
                                        int numberOfSignificantValueDigits, long initial, long delay,
                                        TimeUnit timeUnit, List<ValueListener> valueListeners )
+    {
+        this( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits, initial, delay,
+              timeUnit, valueListeners, false );
+    }
+
+    public LatencyTimeDisplayListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                       int numberOfSignificantValueDigits, long initial, long delay,
+                                       TimeUnit timeUnit, List<ValueListener> valueListeners,
+                                       boolean coordinatedOmissionCorrection )
     {
         this.valueListeners.addAll( valueListeners );
         this.recorderPerPath = new ConcurrentHashMap<>();
-        this.runnable = new ValueListenerRunnable( recorderPerPath, this.valueListeners );
+        this.correctedRecorderPerPath = new ConcurrentHashMap<>();
+        this.coordinatedOmissionCorrection = coordinatedOmissionCorrection;
+        this.runnable = new ValueListenerRunnable( recorderPerPath, correctedRecorderPerPath, this.valueListeners );
         // FIXME configurable or using a shared one
         scheduledExecutorService = Executors.newScheduledThreadPool( 1 );
         scheduledExecutorService.scheduleWithFixedDelay( runnable, initial, delay, timeUnit );
@@ -87,8 +108,15 @@ public class LatencyTimeDisplayListener
     public void onBegin( LoadGenerator loadGenerator )
     {
         // we initialize Maps to avoid concurrent issues
-        recorderPerPath = new ConcurrentHashMap<>();
+        // they are cleared rather than replaced as they are shared with the runnable
+        recorderPerPath.clear();
+        correctedRecorderPerPath.clear();
         initializeMap( recorderPerPath, loadGenerator.getConfig().getResource().getResources() );
+        expectedInterval = coordinatedOmissionCorrection ? loadGenerator.getConfig().getIterationPeriod() : 0;
+        if ( expectedInterval > 0 )
+        {
+            initializeMap( correctedRecorderPerPath, loadGenerator.getConfig().getResource().getResources() );
+        }
     }
 
     private void initializeMap( Map<String, Recorder> recorderMap, List<Resource> resources )
@@ -117,11 +145,16 @@ public class LatencyTimeDisplayListener
     {
         private final Map<String, Recorder> recorderPerPath;
 
+        private final Map<String, Recorder> correctedRecorderPerPath;
+
         private final List<ValueListener> valueListeners;
 
-        private ValueListenerRunnable( Map<String, Recorder> recorderPerPath, List<ValueListener> valueListeners )
+        private ValueListenerRunnable( Map<String, Recorder> recorderPerPath,
+                                       Map<String, Recorder> correctedRecorderPerPath,
+                                       List<ValueListener> valueListeners )
         {
             this.recorderPerPath = recorderPerPath;
+            this.correctedRecorderPerPath = correctedRecorderPerPath;
             this.valueListeners = valueListeners;
         }
 
@@ -132,9 +165,11 @@ public class LatencyTimeDisplayListener
             {
                 String path = entry.getKey();
                 Histogram histogram = entry.getValue().getIntervalHistogram();
+                Recorder correctedRecorder = correctedRecorderPerPath.get( path );
+                Histogram corrected = correctedRecorder == null ? null : correctedRecorder.getIntervalHistogram();
                 for (ValueListener valueListener : valueListeners )
                 {
-                    valueListener.onValue( path, histogram );
+                    valueListener.onValue( path, histogram, corrected );
                 }
             }
         }
@@ -145,17 +180,15 @@ public class LatencyTimeDisplayListener
     {
         String path = info.getResource().getPath();
         long time = info.getLatencyTime() - info.getRequestTime();
-        Recorder recorder = recorderPerPath.get( path );
-        if ( recorder == null )
-        {
-            recorder = new Recorder( lowestDiscernibleValue, //
-                                     highestTrackableValue, //
-                                     numberOfSignificantValueDigits );
-            recorderPerPath.put( path, recorder );
-        }
+        long expectedInterval = this.expectedInterval;
         try
         {
-            recorder.recordValue( time );
+            recorderPerPath.computeIfAbsent( path, k -> newRecorder() ).recordValue( time );
+            if ( expectedInterval > 0 )
+            {
+                correctedRecorderPerPath.computeIfAbsent( path, k -> newRecorder() ) //
+                    .recordValueWithExpectedInterval( time, expectedInterval );
+            }
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
@@ -163,6 +196,13 @@ public class LatencyTimeDisplayListener
         }
     }
 
+    private Recorder newRecorder()
+    {
+        return new Recorder( lowestDiscernibleValue, //
+                             highestTrackableValue, //
+                             numberOfSignificantValueDigits );
+    }
+
     @Override
     public void onEnd( LoadGenerator generator )
     {
@@ -174,6 +214,16 @@ public class LatencyTimeDisplayListener
     interface ValueListener
     {
         void onValue( String path, Histogram histogram );
+
+        /**
+         * @param path the resource path
+         * @param histogram the latency time histogram of the interval
+         * @param corrected the same histogram corrected for coordinated omission, or null without correction
+         */
+        default void onValue( String path, Histogram histogram, Histogram corrected )
+        {
+            onValue( path, histogram );
+        }
     }
 
     public static class PrintValueListener
@@ -188,5 +238,24 @@ public class LatencyTimeDisplayListener
                 .append( System.lineSeparator() );
             LOGGER.info( message.toString() );
         }
+
+        @Override
+        public void onValue( String path, Histogram histogram, Histogram corrected )
+        {
+            if ( corrected == null )
+            {
+                onValue( path, histogram );
+                return;
+            }
+            StringBuilder message = new StringBuilder( "Path:" ).append( path ).append( System.lineSeparator() );
+            message.append( new CollectorInformations( histogram ) //
+                                .toString( true ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "Corrected for coordinated omission:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( corrected ) //
+                             .toString( true ) ) //
+                .append( System.lineSeparator() );
+            LOGGER.info( message.toString() );
+        }
     }
 }
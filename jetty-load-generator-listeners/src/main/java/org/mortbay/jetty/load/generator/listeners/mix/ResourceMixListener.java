@@ -0,0 +1,183 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.mix;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.ResourceMix;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the response time of the resources and the tree time of the trees
+ * of each profile of a {@link ResourceMix}, along with the number of trees per profile.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#resourceListener(Resource.Listener)},
+ * along with a {@link LoadGenerator.Builder#mix(ResourceMix) mix}.</p>
+ */
+public class ResourceMixListener
+    implements Resource.NodeListener, Resource.TreeListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( ResourceMixListener.class );
+
+    private final Map<String, Recorder> responseTimeHistograms = new ConcurrentHashMap<>();
+
+    private final Map<String, Recorder> treeTimeHistograms = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> trees = new ConcurrentHashMap<>();
+
+    private final long lowestDiscernibleValue;
+
+    private final long highestTrackableValue;
+
+    private final int numberOfSignificantValueDigits;
+
+    private boolean printOnEnd = true;
+
+    public ResourceMixListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                int numberOfSignificantValueDigits )
+    {
+        this.lowestDiscernibleValue = lowestDiscernibleValue;
+        this.highestTrackableValue = highestTrackableValue;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+    }
+
+    public ResourceMixListener( boolean printOnEnd )
+    {
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.MINUTES.toNanos( 1 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public ResourceMixListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onResourceNode( Resource.Info info )
+    {
+        String profile = info.getProfile();
+        if ( profile != null )
+        {
+            record( histogram( responseTimeHistograms, profile ), info.getResponseTime() - info.getRequestTime() );
+        }
+    }
+
+    @Override
+    public void onResourceTree( Resource.Info info )
+    {
+        String profile = info.getProfile();
+        if ( profile != null )
+        {
+            trees.computeIfAbsent( profile, k -> new LongAdder() ).increment();
+            record( histogram( treeTimeHistograms, profile ), info.getTreeTime() - info.getRequestTime() );
+        }
+    }
+
+    private Recorder histogram( Map<String, Recorder> histograms, String profile )
+    {
+        return histograms.computeIfAbsent( profile, k -> new Recorder( lowestDiscernibleValue, //
+                                                                        highestTrackableValue, //
+                                                                        numberOfSignificantValueDigits ) );
+    }
+
+    private void record( Recorder recorder, long time )
+    {
+        try
+        {
+            recorder.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Resource Mix Summary               " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() );
+            long total = trees.values().stream().mapToLong( LongAdder::longValue ).sum();
+            new TreeMap<>( trees ).forEach( ( profile, count ) ->
+            {
+                message.append( "Profile:" ).append( profile ) //
+                    .append( ", trees=" ).append( count.longValue() ) //
+                    .append( String.format( " (%.2f%%)", total == 0 ? 0D : 100D * count.longValue() / total ) ) //
+                    .append( System.lineSeparator() );
+                Recorder treeTime = treeTimeHistograms.get( profile );
+                if ( treeTime != null )
+                {
+                    message.append( "tree time:" ).append( System.lineSeparator() ) //
+                        .append( new CollectorInformations( treeTime.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                        .append( System.lineSeparator() );
+                }
+                Recorder responseTime = responseTimeHistograms.get( profile );
+                if ( responseTime != null )
+                {
+                    message.append( "response time:" ).append( System.lineSeparator() ) //
+                        .append( new CollectorInformations( responseTime.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                        .append( System.lineSeparator() );
+                }
+            } );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the resource response time (in nanos) histograms per profile name, reset on each interval read
+     */
+    public Map<String, Recorder> getResponseTimeHistograms()
+    {
+        return responseTimeHistograms;
+    }
+
+    /**
+     * @return the tree time (in nanos) histograms per profile name, reset on each interval read
+     */
+    public Map<String, Recorder> getTreeTimeHistograms()
+    {
+        return treeTimeHistograms;
+    }
+
+    /**
+     * @param profile the profile name
+     * @return the number of resource trees sent for the given profile
+     */
+    public long getTrees( String profile )
+    {
+        LongAdder count = trees.get( profile );
+        return count == null ? 0 : count.longValue();
+    }
+}
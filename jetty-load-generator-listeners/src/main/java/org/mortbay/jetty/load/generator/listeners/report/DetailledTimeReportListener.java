@@ -20,32 +20,62 @@ package org.mortbay.jetty.load.generator.listeners.report;
 
 import org.mortbay.jetty.load.generator.Resource;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
 
 /**
  * Use this one to collect all values
+ * <p>
+ * Each response is recorded once, with both its latency and response times, in a
+ * {@link SampleStore} that both reports read; with a spill file, the full chunks
+ * of samples are written to disk.
+ * </p>
  */
 public class DetailledTimeReportListener
     implements  Serializable, Resource.NodeListener
 {
-    private DetailledTimeValuesReport detailledResponseTimeValuesReport = new DetailledTimeValuesReport();
+    private final SampleStore store;
 
-    private DetailledTimeValuesReport detailledLatencyTimeValuesReport = new DetailledTimeValuesReport();
+    private final DetailledTimeValuesReport detailledResponseTimeValuesReport;
+
+    private final DetailledTimeValuesReport detailledLatencyTimeValuesReport;
+
+    public DetailledTimeReportListener()
+    {
+        this( new SampleStore() );
+    }
+
+    /**
+     * @param spillFile the file where the samples are spilled, deleted by {@link SampleStore#close()}
+     * @throws IOException if the file cannot be created
+     */
+    public DetailledTimeReportListener( Path spillFile )
+        throws IOException
+    {
+        this( new SampleStore( SampleStore.DEFAULT_CHUNK_SIZE, spillFile ) );
+    }
+
+    public DetailledTimeReportListener( SampleStore store )
+    {
+        this.store = store;
+        this.detailledResponseTimeValuesReport = new DetailledTimeValuesReport( store, false );
+        this.detailledLatencyTimeValuesReport = new DetailledTimeValuesReport( store, true );
+    }
 
     @Override
     public void onResourceNode( Resource.Info info )
     {
-        this.detailledLatencyTimeValuesReport.addEntry(
-            new DetailledTimeValuesReport.Entry( info.getRequestTime(), //
-                                                 info.getResource().getPath(), //
-                                                 info.getStatus(), //
-                                                 info.getLatencyTime() - info.getRequestTime() ) );
-
-        this.detailledResponseTimeValuesReport.addEntry(
-            new DetailledTimeValuesReport.Entry( info.getRequestTime(), //
-                                                 info.getResource().getPath(), //
-                                                 info.getStatus(), //
-                                                 info.getResponseTime() - info.getRequestTime()) );
+        store.add( info.getRequestTime(), //
+                   info.getResource().getPath(), //
+                   info.getStatus(), //
+                   info.getLatencyTime() - info.getRequestTime(), //
+                   info.getResponseTime() - info.getRequestTime() );
+    }
+
+    public SampleStore getStore()
+    {
+        return store;
     }
 
     public DetailledTimeValuesReport getDetailledResponseTimeValuesReport()
@@ -18,35 +18,56 @@
 
 package org.mortbay.jetty.load.generator.listeners.report;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Contains all response time values!
+ * <p>
+ * The values are kept in a {@link SampleStore}, possibly shared by the latency and response time
+ * reports of a {@link DetailledTimeReportListener}; the {@link Entry} objects are only created
+ * when the entries are read.
+ * </p>
  */
 public class DetailledTimeValuesReport
 {
 
-    private List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final SampleStore store;
+
+    private final boolean latency;
 
     public DetailledTimeValuesReport()
     {
-        // no op
+        this( new SampleStore(), false );
+    }
+
+    /**
+     * @param store   the store of the samples
+     * @param latency whether the entries time is the latency time rather than the response time
+     */
+    public DetailledTimeValuesReport( SampleStore store, boolean latency )
+    {
+        this.store = store;
+        this.latency = latency;
     }
 
     public List<Entry> getEntries()
     {
+        List<Entry> entries = new ArrayList<>( (int) Math.min( store.size(), Integer.MAX_VALUE ) );
+        store.forEach( ( timeStamp, path, status, latencyTime, responseTime ) -> entries.add(
+            new Entry( timeStamp, path, status, latency ? latencyTime : responseTime ) ) );
         return entries;
     }
 
     public void setEntries( List<Entry> entries )
     {
-        this.entries = entries;
+        store.clear();
+        entries.forEach( this::addEntry );
     }
 
     public void addEntry( Entry entry )
     {
-        this.entries.add( entry );
+        store.add( entry.getTimeStamp(), entry.getPath(), entry.getHttpStatus(), entry.getTime(), entry.getTime() );
     }
 
     public static class Entry
@@ -21,51 +21,100 @@ package org.mortbay.jetty.load.generator.listeners.report;
 import org.HdrHistogram.Recorder;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
 import org.mortbay.jetty.load.generator.Resource;
 import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
 
 /**
  * This will collect a global histogram for all response and latency times
+ * <p>
+ * With coordinated omission correction, the times are also recorded in corrected histograms
+ * with the expected interval between two requests of a sender thread at the configured
+ * resource rate (see {@link LoadGenerator.Config#getIterationPeriod()}), so that the
+ * requests a stalled sender should have sent are accounted for.
+ * The listener must then also be registered with
+ * {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)} to get the rate.
+ * </p>
  */
 public class GlobalSummaryListener
-    implements Resource.NodeListener
+    implements Resource.NodeListener, LoadGenerator.BeginListener
 {
 
     private static final Logger LOGGER = Log.getLogger( GlobalSummaryListener.class );
 
     private Recorder responseHistogram, latencyHistogram;
 
+    private Recorder correctedResponseHistogram, correctedLatencyHistogram;
+
+    private final boolean coordinatedOmissionCorrection;
+
+    private volatile long expectedInterval;
+
 
     public GlobalSummaryListener( long lowestDiscernibleValue, long highestTrackableValue,
-                                  int numberOfSignificantValueDigits )
+                                  int numberOfSignificantValueDigits, boolean coordinatedOmissionCorrection )
     {
         this.responseHistogram =
             new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
         this.latencyHistogram =
             new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+        this.correctedResponseHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+        this.correctedLatencyHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+        this.coordinatedOmissionCorrection = coordinatedOmissionCorrection;
     }
 
-    public GlobalSummaryListener()
+    public GlobalSummaryListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                  int numberOfSignificantValueDigits )
+    {
+        this( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits, false );
+    }
+
+    public GlobalSummaryListener( boolean coordinatedOmissionCorrection )
     {
         this( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
               HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
-              HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+              HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS, //
+              coordinatedOmissionCorrection );
+    }
+
+    public GlobalSummaryListener()
+    {
+        this( false );
+    }
+
+    @Override
+    public void onBegin( LoadGenerator generator )
+    {
+        expectedInterval = coordinatedOmissionCorrection ? generator.getConfig().getIterationPeriod() : 0;
     }
 
     @Override
     public void onResourceNode( Resource.Info info )
     {
+        long expectedInterval = this.expectedInterval;
+        long latencyTime = info.getLatencyTime() - info.getRequestTime();
         try
         {
-            latencyHistogram.recordValue( info.getLatencyTime() - info.getRequestTime() );
+            latencyHistogram.recordValue( latencyTime );
+            if ( expectedInterval > 0 )
+            {
+                correctedLatencyHistogram.recordValueWithExpectedInterval( latencyTime, expectedInterval );
+            }
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
             LOGGER.warn( "fail to record latency value: {}", info.getLatencyTime() );
         }
+        long responseTime = info.getResponseTime() - info.getRequestTime();
         try
         {
-            responseHistogram.recordValue( info.getResponseTime() - info.getRequestTime() );
+            responseHistogram.recordValue( responseTime );
+            if ( expectedInterval > 0 )
+            {
+                correctedResponseHistogram.recordValueWithExpectedInterval( responseTime, expectedInterval );
+            }
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
@@ -84,4 +133,27 @@ public class GlobalSummaryListener
         return latencyHistogram;
     }
 
+    /**
+     * @return the response time histogram corrected for coordinated omission,
+     * empty if the correction is disabled or the resource rate is unbounded
+     */
+    public Recorder getCorrectedResponseTimeHistogram()
+    {
+        return correctedResponseHistogram;
+    }
+
+    /**
+     * @return the latency time histogram corrected for coordinated omission,
+     * empty if the correction is disabled or the resource rate is unbounded
+     */
+    public Recorder getCorrectedLatencyTimeHistogram()
+    {
+        return correctedLatencyHistogram;
+    }
+
+    public boolean isCoordinatedOmissionCorrection()
+    {
+        return coordinatedOmissionCorrection;
+    }
+
 }
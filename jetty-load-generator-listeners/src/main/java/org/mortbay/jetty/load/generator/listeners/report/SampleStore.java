@@ -0,0 +1,340 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Append-only store of raw samples, one per response: timestamp, path, HTTP status,
+ * latency time and response time.</p>
+ * <p>Samples are stored in columns of primitive arrays, in fixed size chunks. Each thread
+ * appends to its own chunk and publishes each sample with a volatile write of the chunk
+ * size, so recording neither locks nor allocates, except for a new chunk every
+ * {@code chunkSize} samples. Paths are stored as ids in a dictionary.</p>
+ * <p>With a spill file, full chunks are written to the file and their arrays released,
+ * so that the memory used is bounded by the chunks being filled.</p>
+ */
+public class SampleStore
+    implements Closeable
+{
+    private static final Logger LOGGER = Log.getLogger( SampleStore.class );
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    // timestamp, path id, status, latency time and response time.
+    private static final int SAMPLE_BYTES = 8 + 4 + 4 + 8 + 8;
+
+    private final int chunkSize;
+
+    private final Path spillFile;
+
+    private final FileChannel spillChannel;
+
+    private final AtomicLong spillPosition = new AtomicLong();
+
+    private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+
+    // Replaced by clear(), so that all the threads move on to a new chunk.
+    private volatile ThreadLocal<Chunk> chunk = new ThreadLocal<>();
+
+    private final Map<String, Integer> pathIds = new ConcurrentHashMap<>();
+
+    private volatile String[] paths = new String[0];
+
+    public SampleStore()
+    {
+        this( DEFAULT_CHUNK_SIZE );
+    }
+
+    public SampleStore( int chunkSize )
+    {
+        this.chunkSize = chunkSize;
+        this.spillFile = null;
+        this.spillChannel = null;
+    }
+
+    /**
+     * @param chunkSize the number of samples per chunk
+     * @param spillFile the file where full chunks are written, deleted by {@link #close()}
+     * @throws IOException if the file cannot be created
+     */
+    public SampleStore( int chunkSize, Path spillFile )
+        throws IOException
+    {
+        this.chunkSize = chunkSize;
+        this.spillFile = spillFile;
+        this.spillChannel = FileChannel.open( spillFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                              StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+    }
+
+    /**
+     * @param timeStamp    the time the request was sent
+     * @param path         the resource path
+     * @param status       the response HTTP status
+     * @param latencyTime  the latency time, in nanos
+     * @param responseTime the response time, in nanos
+     */
+    public void add( long timeStamp, String path, int status, long latencyTime, long responseTime )
+    {
+        ThreadLocal<Chunk> local = this.chunk;
+        Chunk chunk = local.get();
+        if ( chunk == null || chunk.size == chunkSize )
+        {
+            chunk = newChunk( local, chunk );
+        }
+        Columns columns = chunk.columns;
+        int index = chunk.size;
+        columns.timeStamps[index] = timeStamp;
+        columns.pathIds[index] = pathId( path );
+        columns.statuses[index] = status;
+        columns.latencyTimes[index] = latencyTime;
+        columns.responseTimes[index] = responseTime;
+        // Publishes the sample to the readers.
+        chunk.size = index + 1;
+    }
+
+    private Chunk newChunk( ThreadLocal<Chunk> local, Chunk full )
+    {
+        if ( full != null && spillChannel != null )
+        {
+            spill( full );
+        }
+        Chunk result = new Chunk( chunkSize );
+        chunks.offer( result );
+        local.set( result );
+        return result;
+    }
+
+    private void spill( Chunk chunk )
+    {
+        Columns columns = chunk.columns;
+        int size = chunk.size;
+        ByteBuffer buffer = ByteBuffer.allocate( size * SAMPLE_BYTES );
+        buffer.asLongBuffer().put( columns.timeStamps, 0, size );
+        buffer.position( size * 8 );
+        buffer.asIntBuffer().put( columns.pathIds, 0, size );
+        buffer.position( size * 12 );
+        buffer.asIntBuffer().put( columns.statuses, 0, size );
+        buffer.position( size * 16 );
+        buffer.asLongBuffer().put( columns.latencyTimes, 0, size );
+        buffer.position( size * 24 );
+        buffer.asLongBuffer().put( columns.responseTimes, 0, size );
+        buffer.clear();
+        // Positional writes, at a reserved range, do not need a lock.
+        long position = spillPosition.getAndAdd( buffer.remaining() );
+        try
+        {
+            long offset = position;
+            while ( buffer.hasRemaining() )
+            {
+                offset += spillChannel.write( buffer, offset );
+            }
+        }
+        catch ( IOException x )
+        {
+            LOGGER.warn( "cannot spill samples to " + spillFile + ", keeping them in memory", x );
+            return;
+        }
+        chunk.position = position;
+        chunk.columns = null;
+    }
+
+    private int pathId( String path )
+    {
+        if ( path == null )
+        {
+            return -1;
+        }
+        Integer id = pathIds.get( path );
+        if ( id == null )
+        {
+            id = newPathId( path );
+        }
+        return id;
+    }
+
+    private synchronized int newPathId( String path )
+    {
+        Integer id = pathIds.get( path );
+        if ( id == null )
+        {
+            String[] paths = Arrays.copyOf( this.paths, this.paths.length + 1 );
+            id = paths.length - 1;
+            paths[id] = path;
+            this.paths = paths;
+            pathIds.put( path, id );
+        }
+        return id;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public long size()
+    {
+        return chunks.stream().mapToLong( chunk -> chunk.size ).sum();
+    }
+
+    /**
+     * <p>Iterates over the samples, chunk by chunk; the samples of a thread are in recording order.</p>
+     *
+     * @param consumer the consumer of the samples
+     */
+    public void forEach( SampleConsumer consumer )
+    {
+        for ( Chunk chunk : chunks )
+        {
+            int size = chunk.size;
+            Columns columns = chunk.columns;
+            if ( columns == null )
+            {
+                columns = read( chunk.position, size );
+            }
+            String[] paths = this.paths;
+            for ( int i = 0; i < size; ++i )
+            {
+                int pathId = columns.pathIds[i];
+                consumer.accept( columns.timeStamps[i], //
+                                 pathId < 0 ? null : paths[pathId], //
+                                 columns.statuses[i], //
+                                 columns.latencyTimes[i], //
+                                 columns.responseTimes[i] );
+            }
+        }
+    }
+
+    private Columns read( long position, int size )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( size * SAMPLE_BYTES );
+        try
+        {
+            long offset = position;
+            while ( buffer.hasRemaining() )
+            {
+                int read = spillChannel.read( buffer, offset );
+                if ( read < 0 )
+                {
+                    throw new IOException( "Truncated spill file " + spillFile );
+                }
+                offset += read;
+            }
+        }
+        catch ( IOException x )
+        {
+            throw new UncheckedIOException( x );
+        }
+        Columns columns = new Columns( size );
+        buffer.position( 0 );
+        buffer.asLongBuffer().get( columns.timeStamps, 0, size );
+        buffer.position( size * 8 );
+        buffer.asIntBuffer().get( columns.pathIds, 0, size );
+        buffer.position( size * 12 );
+        buffer.asIntBuffer().get( columns.statuses, 0, size );
+        buffer.position( size * 16 );
+        buffer.asLongBuffer().get( columns.latencyTimes, 0, size );
+        buffer.position( size * 24 );
+        buffer.asLongBuffer().get( columns.responseTimes, 0, size );
+        return columns;
+    }
+
+    /**
+     * <p>Removes all the samples; must not be called while samples are added.</p>
+     */
+    public void clear()
+    {
+        chunk = new ThreadLocal<>();
+        chunks.clear();
+        spillPosition.set( 0 );
+    }
+
+    /**
+     * <p>Closes and deletes the spill file, if any.</p>
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( spillChannel != null )
+        {
+            spillChannel.close();
+            Files.deleteIfExists( spillFile );
+        }
+    }
+
+    @FunctionalInterface
+    public interface SampleConsumer
+    {
+        void accept( long timeStamp, String path, int status, long latencyTime, long responseTime );
+    }
+
+    private static class Chunk
+    {
+        // Written by the owner thread only; null once spilled.
+        private volatile Columns columns;
+
+        private volatile int size;
+
+        // The position of the chunk in the spill file.
+        private volatile long position = -1;
+
+        private Chunk( int capacity )
+        {
+            this.columns = new Columns( capacity );
+        }
+    }
+
+    private static class Columns
+    {
+        private final long[] timeStamps;
+
+        private final int[] pathIds;
+
+        private final int[] statuses;
+
+        private final long[] latencyTimes;
+
+        private final long[] responseTimes;
+
+        private Columns( int capacity )
+        {
+            timeStamps = new long[capacity];
+            pathIds = new int[capacity];
+            statuses = new int[capacity];
+            latencyTimes = new long[capacity];
+            responseTimes = new long[capacity];
+        }
+    }
+}
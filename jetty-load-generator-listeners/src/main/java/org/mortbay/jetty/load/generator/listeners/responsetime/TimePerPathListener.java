@@ -19,6 +19,8 @@
 package org.mortbay.jetty.load.generator.listeners.responsetime;
 
 import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
@@ -27,9 +29,12 @@ import org.mortbay.jetty.load.generator.Resource;
 import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * <p>Use {@link AtomicHistogram} to tracker response/latency time per path</p>
@@ -37,6 +42,16 @@ import java.util.concurrent.ConcurrentHashMap;
  * Print out general statistics when stopping.
  * To prevent that and only get the values simply use the constructor with <code>false</code>
  * </p>
+ * <p>Threads record in a fixed number of stripes (twice the number of processors), picked by
+ * thread, so that they seldom contend while the footprint does not grow with the number of
+ * threads. The histograms of a stripe are indexed by the {@link Resource#getId() resource id},
+ * created on the first response of each path, and merged per path when the histograms are read.
+ * Resources unknown to the {@link LoadGenerator} are recorded in shared histograms, looked up
+ * by path.</p>
+ * <p>With coordinated omission correction, the times are also recorded with the expected
+ * interval between two requests of a sender thread at the configured resource rate
+ * (see {@link LoadGenerator.Config#getIterationPeriod()}), and the report shows the
+ * corrected values next to the raw ones.</p>
  */
 public class TimePerPathListener
     implements Resource.NodeListener, LoadGenerator.EndListener, LoadGenerator.BeginListener, Serializable
@@ -44,9 +59,17 @@ public class TimePerPathListener
 
     private static final Logger LOGGER = Log.getLogger( TimePerPathListener.class );
 
-    private Map<String, AtomicHistogram> responseTimePerPath = new ConcurrentHashMap<>();
+    private static final int STRIPES = 2 * Runtime.getRuntime().availableProcessors();
 
-    private Map<String, AtomicHistogram> latencyTimePerPath = new ConcurrentHashMap<>();
+    private final Map<String, AtomicHistogram> responseTimePerPath = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicHistogram> latencyTimePerPath = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicHistogram> correctedResponseTimePerPath = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicHistogram> correctedLatencyTimePerPath = new ConcurrentHashMap<>();
+
+    private transient volatile Stripes stripes = new Stripes( Collections.emptyList(), 0 );
 
     private boolean printOnEnd = true;
 
@@ -58,6 +81,8 @@ public class TimePerPathListener
 
     private boolean nanoDisplay = true;
 
+    private boolean coordinatedOmissionCorrection;
+
     public TimePerPathListener( boolean printOnEnd, long lowestDiscernibleValue, long highestTrackableValue,
                                 int numberOfSignificantValueDigits )
     {
@@ -68,6 +93,12 @@ public class TimePerPathListener
     }
 
 
+    public TimePerPathListener( boolean printOnEnd, boolean nanoDisplay, boolean coordinatedOmissionCorrection )
+    {
+        this( printOnEnd, nanoDisplay );
+        this.coordinatedOmissionCorrection = coordinatedOmissionCorrection;
+    }
+
     public TimePerPathListener( boolean printOnEnd, boolean nanoDisplay )
     {
         this.printOnEnd = printOnEnd;
@@ -88,63 +119,90 @@ public class TimePerPathListener
     @Override
     public void onBegin( LoadGenerator loadGenerator )
     {
-        // we initialize Maps to avoid concurrent issues
-        responseTimePerPath = new ConcurrentHashMap<>();
-        initializeMap( responseTimePerPath, loadGenerator.getConfig().getResource().getResources() );
-        latencyTimePerPath = new ConcurrentHashMap<>();
-        initializeMap( latencyTimePerPath, loadGenerator.getConfig().getResource().getResources() );
-    }
-
-    private void initializeMap( Map<String, AtomicHistogram> histogramMap, List<Resource> resources )
-    {
-        for ( Resource resource : resources )
+        synchronized ( this )
         {
-            AtomicHistogram atomicHistogram = histogramMap.get( resource.getPath() );
-            if ( atomicHistogram == null )
+            responseTimePerPath.clear();
+            latencyTimePerPath.clear();
+            correctedResponseTimePerPath.clear();
+            correctedLatencyTimePerPath.clear();
+            long expectedInterval =
+                coordinatedOmissionCorrection ? loadGenerator.getConfig().getIterationPeriod() : 0;
+            stripes = new Stripes( loadGenerator.getResources(), expectedInterval );
+            for ( String path : stripes.paths )
             {
-                atomicHistogram = new AtomicHistogram( lowestDiscernibleValue, //
-                                         highestTrackableValue, //
-                                         numberOfSignificantValueDigits );
-                histogramMap.put( resource.getPath(), atomicHistogram );
+                responseTimePerPath.put( path, newHistogram() );
+                latencyTimePerPath.put( path, newHistogram() );
+                if ( expectedInterval > 0 )
+                {
+                    correctedResponseTimePerPath.put( path, newHistogram() );
+                    correctedLatencyTimePerPath.put( path, newHistogram() );
+                }
             }
-            initializeMap( histogramMap, resource.getResources() );
         }
     }
 
+    private AtomicHistogram newHistogram()
+    {
+        return new AtomicHistogram( lowestDiscernibleValue, //
+                                    highestTrackableValue, //
+                                    numberOfSignificantValueDigits );
+    }
+
     @Override
     public void onResourceNode( Resource.Info info )
     {
-        String path = info.getResource().getPath();
+        Resource resource = info.getResource();
+        if ( resource.getPath() == null )
+        {
+            return;
+        }
         long responseTime = info.getResponseTime() - info.getRequestTime();
-        AtomicHistogram atomicHistogram = responseTimePerPath.get( path );
-        if ( atomicHistogram == null )
+        long latencyTime = info.getLatencyTime() - info.getRequestTime();
+        Stripes stripes = this.stripes;
+        int id = resource.getId();
+        if ( id >= 0 && id < stripes.resources.size() && stripes.resources.get( id ) == resource )
+        {
+            Recorders recorders = stripes.stripe().recorders( stripes.pathIndexes[id] );
+            record( recorders.responseTimes, responseTime, 0 );
+            record( recorders.latencyTimes, latencyTime, 0 );
+            if ( stripes.expectedInterval > 0 )
+            {
+                record( recorders.correctedResponseTimes, responseTime, stripes.expectedInterval );
+                record( recorders.correctedLatencyTimes, latencyTime, stripes.expectedInterval );
+            }
+        }
+        else
         {
-            atomicHistogram = new AtomicHistogram( lowestDiscernibleValue, //
-                                     highestTrackableValue, //
-                                     numberOfSignificantValueDigits );
-            responseTimePerPath.put( path, atomicHistogram );
+            String path = resource.getPath();
+            record( responseTimePerPath.computeIfAbsent( path, k -> newHistogram() ), responseTime, 0 );
+            record( latencyTimePerPath.computeIfAbsent( path, k -> newHistogram() ), latencyTime, 0 );
+            if ( stripes.expectedInterval > 0 )
+            {
+                record( correctedResponseTimePerPath.computeIfAbsent( path, k -> newHistogram() ), responseTime,
+                        stripes.expectedInterval );
+                record( correctedLatencyTimePerPath.computeIfAbsent( path, k -> newHistogram() ), latencyTime,
+                        stripes.expectedInterval );
+            }
         }
+    }
+
+    private void record( Recorder recorder, long time, long expectedInterval )
+    {
         try
         {
-            atomicHistogram.recordValue( responseTime );
+            recorder.recordValueWithExpectedInterval( time, expectedInterval );
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
-            LOGGER.warn( "skip error recording time {}, {}", responseTime, e.getMessage() );
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
         }
+    }
 
-        long time = info.getLatencyTime() - info.getRequestTime();
-        atomicHistogram = latencyTimePerPath.get( path );
-        if ( atomicHistogram == null )
-        {
-            atomicHistogram = new AtomicHistogram( lowestDiscernibleValue, //
-                                     highestTrackableValue, //
-                                     numberOfSignificantValueDigits );
-            latencyTimePerPath.put( path, atomicHistogram );
-        }
+    private void record( AtomicHistogram histogram, long time, long expectedInterval )
+    {
         try
         {
-            atomicHistogram.recordValue( time );
+            histogram.recordValueWithExpectedInterval( time, expectedInterval );
         }
         catch ( ArrayIndexOutOfBoundsException e )
         {
@@ -152,11 +210,52 @@ public class TimePerPathListener
         }
     }
 
+    /**
+     * <p>Adds the values recorded in each stripe since the last merge to the per path histograms.</p>
+     */
+    private synchronized void merge()
+    {
+        Stripes stripes = this.stripes;
+        if ( stripes.interval == null )
+        {
+            stripes.interval = new Histogram( lowestDiscernibleValue, //
+                                              highestTrackableValue, //
+                                              numberOfSignificantValueDigits );
+        }
+        for ( Stripe stripe : stripes.all )
+        {
+            for ( int i = 0; i < stripes.paths.length; ++i )
+            {
+                Recorders recorders = stripe.recorders.get( i );
+                if ( recorders == null )
+                {
+                    continue;
+                }
+                String path = stripes.paths[i];
+                merge( stripes.interval, recorders.responseTimes, responseTimePerPath, path );
+                merge( stripes.interval, recorders.latencyTimes, latencyTimePerPath, path );
+                if ( stripes.expectedInterval > 0 )
+                {
+                    merge( stripes.interval, recorders.correctedResponseTimes, correctedResponseTimePerPath, path );
+                    merge( stripes.interval, recorders.correctedLatencyTimes, correctedLatencyTimePerPath, path );
+                }
+            }
+        }
+    }
+
+    private void merge( Histogram interval, Recorder recorder, Map<String, AtomicHistogram> histograms,
+                        String path )
+    {
+        recorder.getIntervalHistogramInto( interval );
+        histograms.computeIfAbsent( path, k -> newHistogram() ).add( interval );
+    }
+
     @Override
     public void onEnd( LoadGenerator generator )
     {
         if ( printOnEnd )
         {
+            merge();
             StringBuilder reportMessage = new StringBuilder();
             if ( !latencyTimePerPath.isEmpty() )
             {
@@ -167,14 +266,8 @@ public class TimePerPathListener
 
                 for ( Map.Entry<String, AtomicHistogram> entry : latencyTimePerPath.entrySet() )
                 {
-                    latencyTimeMessage.append( "Path:" ).append( entry.getKey() ).append( System.lineSeparator() );
-                    CollectorInformations collectorInformations =
-                        new CollectorInformations( entry.getValue() );
-                    latencyTimeMessage.append( nanoDisplay
-                                                   ? collectorInformations.toStringInNanos( true )
-                                                   : collectorInformations.toString( true ) ) //
-                        .append( System.lineSeparator() );
-
+                    appendPath( latencyTimeMessage, entry.getKey(), entry.getValue(),
+                                correctedLatencyTimePerPath.get( entry.getKey() ) );
                 }
 
                 latencyTimeMessage.append( System.lineSeparator() );
@@ -193,15 +286,8 @@ public class TimePerPathListener
 
                 for ( Map.Entry<String, AtomicHistogram> entry : responseTimePerPath.entrySet() )
                 {
-                    responseTimeMessage.append( "Path:" ).append( entry.getKey() ).append( System.lineSeparator() );
-                    CollectorInformations collectorInformations =
-                        new CollectorInformations( entry.getValue() );
-
-                    responseTimeMessage.append( nanoDisplay
-                                                    ? collectorInformations.toStringInNanos( true )
-                                                    : collectorInformations.toString( true ) ) //
-                        .append( System.lineSeparator() );
-
+                    appendPath( responseTimeMessage, entry.getKey(), entry.getValue(),
+                                correctedResponseTimePerPath.get( entry.getKey() ) );
                 }
 
                 responseTimeMessage.append( System.lineSeparator() );
@@ -212,14 +298,173 @@ public class TimePerPathListener
 
     }
 
+    private void appendPath( StringBuilder message, String path, AtomicHistogram histogram,
+                             AtomicHistogram corrected )
+    {
+        message.append( "Path:" ).append( path ).append( System.lineSeparator() );
+        CollectorInformations collectorInformations = new CollectorInformations( histogram );
+        message.append( nanoDisplay
+                            ? collectorInformations.toStringInNanos( true )
+                            : collectorInformations.toString( true ) ) //
+            .append( System.lineSeparator() );
+        if ( corrected != null )
+        {
+            collectorInformations = new CollectorInformations( corrected );
+            message.append( "Corrected for coordinated omission:" ).append( System.lineSeparator() ) //
+                .append( nanoDisplay
+                             ? collectorInformations.toStringInNanos( true )
+                             : collectorInformations.toString( true ) ) //
+                .append( System.lineSeparator() );
+        }
+    }
+
     public Map<String, AtomicHistogram> getResponseTimePerPath()
     {
+        merge();
         return responseTimePerPath;
     }
 
 
     public Map<String, AtomicHistogram> getLatencyTimePerPath()
     {
+        merge();
         return latencyTimePerPath;
     }
+
+    /**
+     * @return the response time histograms per path corrected for coordinated omission,
+     * empty if the correction is disabled or the resource rate is unbounded
+     */
+    public Map<String, AtomicHistogram> getCorrectedResponseTimePerPath()
+    {
+        merge();
+        return correctedResponseTimePerPath;
+    }
+
+    /**
+     * @return the latency time histograms per path corrected for coordinated omission,
+     * empty if the correction is disabled or the resource rate is unbounded
+     */
+    public Map<String, AtomicHistogram> getCorrectedLatencyTimePerPath()
+    {
+        merge();
+        return correctedLatencyTimePerPath;
+    }
+
+    /**
+     * @return the number of per path histogram sets of the stripes, bounded by the stripes times the paths
+     */
+    int getRecordersCount()
+    {
+        int result = 0;
+        for ( Stripe stripe : stripes.all )
+        {
+            for ( int i = 0; i < stripe.recorders.length(); ++i )
+            {
+                result += stripe.recorders.get( i ) == null ? 0 : 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>The striped histograms for the resources of one {@link LoadGenerator} run.</p>
+     */
+    private class Stripes
+    {
+        private final List<Resource> resources;
+
+        private final int[] pathIndexes;
+
+        private final String[] paths;
+
+        private final long expectedInterval;
+
+        private final Stripe[] all = new Stripe[STRIPES];
+
+        // Only used by merge(), under lock.
+        private Histogram interval;
+
+        private Stripes( List<Resource> resources, long expectedInterval )
+        {
+            this.resources = resources;
+            this.expectedInterval = expectedInterval;
+            this.pathIndexes = new int[resources.size()];
+            Map<String, Integer> indexes = new HashMap<>();
+            for ( int i = 0; i < pathIndexes.length; ++i )
+            {
+                String path = resources.get( i ).getPath();
+                // Resources without path only group their children.
+                pathIndexes[i] = path == null ? -1 : indexes.computeIfAbsent( path, k -> indexes.size() );
+            }
+            this.paths = new String[indexes.size()];
+            indexes.forEach( ( path, index ) -> paths[index] = path );
+            for ( int i = 0; i < all.length; ++i )
+            {
+                all[i] = new Stripe( paths.length, expectedInterval > 0 );
+            }
+        }
+
+        private Stripe stripe()
+        {
+            // Thread ids are sequential, so the threads of a pool spread evenly.
+            return all[Math.floorMod( Long.hashCode( Thread.currentThread().getId() ), all.length )];
+        }
+    }
+
+    /**
+     * <p>The histograms of the threads of one stripe, indexed by path index.</p>
+     */
+    private class Stripe
+    {
+        // Set by the first thread recording a path, read by merge().
+        private final AtomicReferenceArray<Recorders> recorders;
+
+        private final boolean corrected;
+
+        private Stripe( int paths, boolean corrected )
+        {
+            this.recorders = new AtomicReferenceArray<>( paths );
+            this.corrected = corrected;
+        }
+
+        private Recorders recorders( int index )
+        {
+            Recorders result = recorders.get( index );
+            if ( result == null )
+            {
+                recorders.compareAndSet( index, null, new Recorders( corrected ) );
+                result = recorders.get( index );
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>The histograms of one path for the threads of one stripe.</p>
+     */
+    private class Recorders
+    {
+        private final Recorder responseTimes = newRecorder();
+
+        private final Recorder latencyTimes = newRecorder();
+
+        // Null without coordinated omission correction.
+        private final Recorder correctedResponseTimes;
+
+        private final Recorder correctedLatencyTimes;
+
+        private Recorders( boolean corrected )
+        {
+            correctedResponseTimes = corrected ? newRecorder() : null;
+            correctedLatencyTimes = corrected ? newRecorder() : null;
+        }
+
+        private Recorder newRecorder()
+        {
+            return new Recorder( lowestDiscernibleValue, //
+                                 highestTrackableValue, //
+                                 numberOfSignificantValueDigits );
+        }
+    }
 }
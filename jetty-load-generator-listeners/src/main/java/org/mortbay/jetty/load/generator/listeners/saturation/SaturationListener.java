@@ -0,0 +1,344 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.saturation;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Detects when the load generator itself is the bottleneck, rather than the server.</p>
+ * <p>Records the lag of the sender threads behind the schedule of the resource rate, and compares the achieved
+ * rate with the requested one. While running, samples every second the CPU load of the process and the busy ratio
+ * of the busiest client thread (the threads running the selectors, matched by name), as a generator saturating
+ * one of these also falls behind.</p>
+ * <p>When the lag exceeds the threshold, a warning is logged and the run is flagged as {@link #isSaturated()
+ * saturated}: its results measure the generator as much as the server.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ */
+public class SaturationListener
+    implements LoadGenerator.BeginListener, LoadGenerator.ScheduleListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( SaturationListener.class );
+
+    /**
+     * the name prefix of the threads of the default HttpClient executor, where the selectors run
+     */
+    public static final String DEFAULT_CLIENT_THREADS_PREFIX = "HttpClient@";
+
+    private final Recorder lagHistogram = new Recorder( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+                                                        TimeUnit.HOURS.toNanos( 1 ), //
+                                                        3 );
+
+    private final LongAdder sends = new LongAdder();
+
+    private final AtomicLong firstSendTime = new AtomicLong();
+
+    private final LongAccumulator lastSendTime = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+    private final long lagThreshold;
+
+    private final String clientThreadsPrefix;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final Map<Long, Long> threadCpuTimes = new HashMap<>();
+
+    private ScheduledExecutorService sampler;
+
+    private volatile boolean saturated;
+
+    private volatile int requestedRate;
+
+    private long samples;
+
+    private double cpuLoadSum;
+
+    private double maxCpuLoad = -1;
+
+    private double busyRatioSum;
+
+    private double maxBusyRatio = -1;
+
+    private long lastSampleTime;
+
+    private Histogram lagSnapshot;
+
+    private boolean printOnEnd = true;
+
+    /**
+     * @param lagThreshold the lag (in ms) beyond which the run is flagged as saturated
+     * @param clientThreadsPrefix the name prefix of the client threads to sample the busy ratio of
+     */
+    public SaturationListener( long lagThreshold, String clientThreadsPrefix )
+    {
+        this.lagThreshold = TimeUnit.MILLISECONDS.toNanos( lagThreshold );
+        this.clientThreadsPrefix = clientThreadsPrefix;
+    }
+
+    public SaturationListener( long lagThreshold )
+    {
+        this( lagThreshold, DEFAULT_CLIENT_THREADS_PREFIX );
+    }
+
+    public SaturationListener()
+    {
+        this( 100 );
+    }
+
+    public SaturationListener printOnEnd( boolean printOnEnd )
+    {
+        this.printOnEnd = printOnEnd;
+        return this;
+    }
+
+    @Override
+    public void onBegin( LoadGenerator generator )
+    {
+        requestedRate = generator.getConfig().getResourceRate();
+        synchronized ( this )
+        {
+            lastSampleTime = System.nanoTime();
+            // so that the first sample does not count the CPU time spent before the load began
+            threadCpuTimes.putAll( clientThreadCpuTimes() );
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread thread = new Thread( r, "saturation-sampler" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        sampler.scheduleAtFixedRate( this::sample, 1, 1, TimeUnit.SECONDS );
+    }
+
+    @Override
+    public void onSchedule( LoadGenerator generator, long lag )
+    {
+        long now = System.nanoTime();
+        sends.increment();
+        if ( firstSendTime.get() == 0 )
+        {
+            firstSendTime.compareAndSet( 0, now );
+        }
+        lastSendTime.accumulate( now );
+        try
+        {
+            lagHistogram.recordValue( lag );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording lag {}, {}", lag, e.getMessage() );
+        }
+        if ( lag > lagThreshold && !saturated )
+        {
+            saturated = true;
+            LOGGER.warn( "load generator saturated: sender thread {} is {} ms behind schedule, "
+                             + "the results measure the generator as much as the server", //
+                         Thread.currentThread().getName(), TimeUnit.NANOSECONDS.toMillis( lag ) );
+        }
+    }
+
+    private synchronized void sample()
+    {
+        long now = System.nanoTime();
+        long elapsed = now - lastSampleTime;
+        lastSampleTime = now;
+        if ( elapsed <= 0 )
+        {
+            return;
+        }
+
+        double cpuLoad = processCpuLoad();
+
+        double busyRatio = -1;
+        if ( threadMXBean.isThreadCpuTimeSupported() )
+        {
+            Map<Long, Long> cpuTimes = clientThreadCpuTimes();
+            for ( Map.Entry<Long, Long> entry : cpuTimes.entrySet() )
+            {
+                // threads started during the interval count from 0
+                long previous = threadCpuTimes.getOrDefault( entry.getKey(), 0L );
+                busyRatio = Math.max( busyRatio, Math.min( 1D, (double) ( entry.getValue() - previous ) / elapsed ) );
+            }
+            threadCpuTimes.clear();
+            threadCpuTimes.putAll( cpuTimes );
+        }
+
+        samples++;
+        cpuLoadSum += Math.max( 0D, cpuLoad );
+        maxCpuLoad = Math.max( maxCpuLoad, cpuLoad );
+        busyRatioSum += Math.max( 0D, busyRatio );
+        maxBusyRatio = Math.max( maxBusyRatio, busyRatio );
+    }
+
+    /**
+     * @return the CPU times (in nanos) of the client threads, by thread id, empty if not supported
+     */
+    private Map<Long, Long> clientThreadCpuTimes()
+    {
+        Map<Long, Long> result = new HashMap<>();
+        if ( !threadMXBean.isThreadCpuTimeSupported() )
+        {
+            return result;
+        }
+        for ( ThreadInfo threadInfo : threadMXBean.getThreadInfo( threadMXBean.getAllThreadIds() ) )
+        {
+            if ( threadInfo == null || !threadInfo.getThreadName().startsWith( clientThreadsPrefix ) )
+            {
+                continue;
+            }
+            long cpuTime = threadMXBean.getThreadCpuTime( threadInfo.getThreadId() );
+            if ( cpuTime >= 0 )
+            {
+                result.put( threadInfo.getThreadId(), cpuTime );
+            }
+        }
+        return result;
+    }
+
+    private static double processCpuLoad()
+    {
+        OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+        if ( operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean )
+        {
+            return ( (com.sun.management.OperatingSystemMXBean) operatingSystemMXBean ).getProcessCpuLoad();
+        }
+        return -1;
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( sampler != null )
+        {
+            sampler.shutdownNow();
+        }
+        synchronized ( this )
+        {
+            lagSnapshot = lagHistogram.getIntervalHistogram();
+        }
+        double rate = getAchievedRate();
+        if ( requestedRate > 0 && rate < requestedRate * 0.95D )
+        {
+            LOGGER.warn( "achieved rate {} is lower than the requested rate {}", //
+                         String.format( "%.2f", rate ), requestedRate );
+        }
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Load Generator Saturation          " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "saturated=" ).append( isSaturated() ) //
+                .append( ", requested rate=" ).append( requestedRate > 0 ? requestedRate : "unbounded" ) //
+                .append( ", achieved rate=" ).append( String.format( "%.2f", rate ) ) //
+                .append( System.lineSeparator() ) //
+                .append( String.format( "process cpu load: avg=%.2f, max=%.2f", getAverageCpuLoad(), getMaxCpuLoad() ) ) //
+                .append( System.lineSeparator() ) //
+                .append( String.format( "busiest client thread busy ratio: avg=%.2f, max=%.2f", //
+                                        getAverageBusyRatio(), getMaxBusyRatio() ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "sender lag:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( lagSnapshot ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return whether a sender thread lagged behind the schedule more than the threshold
+     */
+    public boolean isSaturated()
+    {
+        return saturated;
+    }
+
+    /**
+     * @return the sender lag (in nanos) histogram of the whole run once ended
+     */
+    public synchronized Histogram getLagHistogram()
+    {
+        return lagSnapshot;
+    }
+
+    /**
+     * @return the number of resource trees sent, warmup excluded
+     */
+    public long getSends()
+    {
+        return sends.longValue();
+    }
+
+    /**
+     * @return the achieved resource tree rate per second, between the first and the last send
+     */
+    public double getAchievedRate()
+    {
+        long elapsed = lastSendTime.get() - firstSendTime.get();
+        return elapsed > 0 ? ( getSends() - 1 ) * (double) TimeUnit.SECONDS.toNanos( 1 ) / elapsed : 0D;
+    }
+
+    public int getRequestedRate()
+    {
+        return requestedRate;
+    }
+
+    /**
+     * @return the average process cpu load, between 0 and 1 over all the cores, or -1 if not sampled
+     */
+    public synchronized double getAverageCpuLoad()
+    {
+        return samples == 0 || maxCpuLoad < 0 ? -1 : cpuLoadSum / samples;
+    }
+
+    public synchronized double getMaxCpuLoad()
+    {
+        return maxCpuLoad;
+    }
+
+    /**
+     * @return the average busy ratio (cpu time over wall time) of the busiest client thread, or -1 if not sampled
+     */
+    public synchronized double getAverageBusyRatio()
+    {
+        return samples == 0 || maxBusyRatio < 0 ? -1 : busyRatioSum / samples;
+    }
+
+    public synchronized double getMaxBusyRatio()
+    {
+        return maxBusyRatio;
+    }
+}
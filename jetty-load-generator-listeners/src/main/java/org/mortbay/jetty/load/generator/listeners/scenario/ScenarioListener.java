@@ -0,0 +1,164 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.scenario;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.Scenario;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the tree time of each step of a {@link Scenario}, and the time of complete journeys.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)},
+ * along with a {@link LoadGenerator.Builder#scenario(Scenario) scenario}.</p>
+ */
+public class ScenarioListener
+    implements Scenario.StepListener, Scenario.JourneyListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( ScenarioListener.class );
+
+    private final Map<String, Recorder> stepTimeHistograms = new ConcurrentHashMap<>();
+
+    private final LongAdder journeys = new LongAdder();
+
+    private final LongAdder journeySteps = new LongAdder();
+
+    private final Recorder journeyTimeHistogram;
+
+    private final long lowestDiscernibleValue;
+
+    private final long highestTrackableValue;
+
+    private final int numberOfSignificantValueDigits;
+
+    private boolean printOnEnd = true;
+
+    public ScenarioListener( long lowestDiscernibleValue, long highestTrackableValue,
+                             int numberOfSignificantValueDigits )
+    {
+        this.lowestDiscernibleValue = lowestDiscernibleValue;
+        this.highestTrackableValue = highestTrackableValue;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        this.journeyTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public ScenarioListener( boolean printOnEnd )
+    {
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.MINUTES.toNanos( 10 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public ScenarioListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onStep( LoadGenerator generator, Scenario.Step step, Resource.Info info )
+    {
+        Recorder recorder = stepTimeHistograms.computeIfAbsent( step.getName(), k -> new Recorder(
+            lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits ) );
+        record( recorder, info.getTreeTime() - info.getRequestTime() );
+    }
+
+    @Override
+    public void onJourney( LoadGenerator generator, int steps, long time )
+    {
+        journeys.increment();
+        journeySteps.add( steps );
+        record( journeyTimeHistogram, time );
+    }
+
+    private void record( Recorder recorder, long time )
+    {
+        try
+        {
+            recorder.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Scenario Summary                   " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "journeys=" ).append( getJourneys() ) //
+                .append( ", average steps per journey=" ).append( String.format( "%.2f", getAverageJourneySteps() ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "journey time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( journeyTimeHistogram.getIntervalHistogram() ) //
+                             .toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            new TreeMap<>( stepTimeHistograms ).forEach( ( name, recorder ) -> message //
+                .append( "step " ).append( name ).append( " time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( recorder.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() ) );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the step tree time (in nanos) histograms per step name, reset on each interval read
+     */
+    public Map<String, Recorder> getStepTimeHistograms()
+    {
+        return stepTimeHistograms;
+    }
+
+    /**
+     * @return the journey time (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getJourneyTimeHistogram()
+    {
+        return journeyTimeHistogram;
+    }
+
+    public long getJourneys()
+    {
+        return journeys.longValue();
+    }
+
+    public double getAverageJourneySteps()
+    {
+        long count = journeys.longValue();
+        return count == 0 ? 0D : (double) journeySteps.longValue() / count;
+    }
+}
@@ -0,0 +1,135 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.session;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.Session;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the session set-up cost, that is the time users take to log in,
+ * separately from the measured resource trees.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)},
+ * along with a {@link LoadGenerator.Builder#login(Resource) login resource}.</p>
+ */
+public class SessionSetupListener
+    implements LoadGenerator.SessionListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( SessionSetupListener.class );
+
+    private final LongAdder logins = new LongAdder();
+
+    private final LongAdder tokens = new LongAdder();
+
+    private final Recorder loginTimeHistogram;
+
+    private boolean printOnEnd = true;
+
+    public SessionSetupListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                 int numberOfSignificantValueDigits )
+    {
+        this.loginTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public SessionSetupListener( boolean printOnEnd )
+    {
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.MINUTES.toNanos( 1 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public SessionSetupListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onSession( LoadGenerator generator, Session session, Resource.Info info )
+    {
+        logins.increment();
+        if ( session.getBearerToken() != null )
+        {
+            tokens.increment();
+        }
+        long time = info.getTreeTime() - info.getRequestTime();
+        try
+        {
+            loginTimeHistogram.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Session Setup Summary              " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "logins=" ).append( getLogins() ) //
+                .append( ", with bearer token=" ).append( getTokens() ) //
+                .append( System.lineSeparator() ) //
+                .append( "login time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( loginTimeHistogram.getIntervalHistogram() ) //
+                             .toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the login tree time (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getLoginTimeHistogram()
+    {
+        return loginTimeHistogram;
+    }
+
+    /**
+     * @return the number of logins, including session refreshes
+     */
+    public long getLogins()
+    {
+        return logins.longValue();
+    }
+
+    /**
+     * @return the number of logins that obtained a bearer token
+     */
+    public long getTokens()
+    {
+        return tokens.longValue();
+    }
+}
@@ -0,0 +1,221 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.streaming;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the inter-event gaps and the event lag of streaming resources.</p>
+ * <p>The event lag is the difference between the event arrival time and the
+ * {@link Resource#EVENT_TIMESTAMP server timestamp} of the event, so it is only
+ * recorded for events carrying a timestamp, and relies on synchronized clocks.</p>
+ * <p>To show how the event delivery degrades with the number of open streams,
+ * the lag is also recorded per order of magnitude of concurrently open streams
+ * (1+, 10+, 100+, etc).</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#resourceListener(Resource.Listener)}
+ * and {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ */
+public class StreamEventListener
+    implements Resource.StreamListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( StreamEventListener.class );
+
+    private final long lowestDiscernibleValue;
+
+    private final long highestTrackableValue;
+
+    private final int numberOfSignificantValueDigits;
+
+    private final Recorder gapHistogram;
+
+    private final Recorder lagHistogram;
+
+    private final Map<Long, Recorder> lagHistogramPerStreams = new ConcurrentHashMap<>();
+
+    private final LongAdder events = new LongAdder();
+
+    private final AtomicLong openStreams = new AtomicLong();
+
+    private final AtomicLong maxOpenStreams = new AtomicLong();
+
+    private boolean printOnEnd = true;
+
+    public StreamEventListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                int numberOfSignificantValueDigits )
+    {
+        this.lowestDiscernibleValue = lowestDiscernibleValue;
+        this.highestTrackableValue = highestTrackableValue;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        this.gapHistogram = newRecorder();
+        this.lagHistogram = newRecorder();
+    }
+
+    public StreamEventListener( boolean printOnEnd )
+    {
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.HOURS.toNanos( 1 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public StreamEventListener()
+    {
+        this( true );
+    }
+
+    private Recorder newRecorder()
+    {
+        return new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    @Override
+    public void onResourceEvent( Resource.Info info, long gap, long timestamp )
+    {
+        long now = System.currentTimeMillis();
+        events.increment();
+        long streams = openStreams.get();
+        if ( info.getEvents() == 1 )
+        {
+            streams = openStreams.incrementAndGet();
+            maxOpenStreams.accumulateAndGet( streams, Math::max );
+        }
+        record( gapHistogram, gap );
+        if ( timestamp > 0 )
+        {
+            // negative lags due to clock skew are recorded as zero
+            long lag = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, now - timestamp ) );
+            record( lagHistogram, lag );
+            record( lagHistogramPerStreams.computeIfAbsent( magnitude( streams ), k -> newRecorder() ), lag );
+        }
+    }
+
+    @Override
+    public void onResourceStreamEnd( Resource.Info info, Throwable failure )
+    {
+        // whatever the outcome, as failed streams do not emit node events
+        if ( info.getEvents() > 0 )
+        {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    private static long magnitude( long streams )
+    {
+        long result = 1;
+        while ( result * 10 <= streams )
+        {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private void record( Recorder recorder, long time )
+    {
+        try
+        {
+            recorder.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   Stream Events Summary              " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "events=" ).append( getEvents() ) //
+                .append( ", max open streams=" ).append( getMaxOpenStreams() ) //
+                .append( System.lineSeparator() ) //
+                .append( "inter-event gap:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( gapHistogram.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "event lag:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( lagHistogram.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            new TreeMap<>( lagHistogramPerStreams ).forEach( ( streams, recorder ) -> //
+                message.append( "event lag with " ).append( streams ).append( "+ open streams:" ) //
+                    .append( System.lineSeparator() ) //
+                    .append( new CollectorInformations( recorder.getIntervalHistogram() ).toStringInNanos( true ) ) //
+                    .append( System.lineSeparator() ) );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the inter-event gap (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getGapHistogram()
+    {
+        return gapHistogram;
+    }
+
+    /**
+     * @return the event lag (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getLagHistogram()
+    {
+        return lagHistogram;
+    }
+
+    /**
+     * @return the event lag (in nanos) histograms per order of magnitude of open streams
+     */
+    public Map<Long, Recorder> getLagHistogramPerStreams()
+    {
+        return lagHistogramPerStreams;
+    }
+
+    public long getEvents()
+    {
+        return events.longValue();
+    }
+
+    /**
+     * @return the number of streams that received events and did not complete yet
+     */
+    public long getOpenStreams()
+    {
+        return openStreams.get();
+    }
+
+    public long getMaxOpenStreams()
+    {
+        return maxOpenStreams.get();
+    }
+}
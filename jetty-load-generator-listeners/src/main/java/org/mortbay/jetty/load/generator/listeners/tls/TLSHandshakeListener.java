@@ -0,0 +1,235 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.tls;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the cost of TLS handshakes performed by the load generator connections.</p>
+ * <p>The handshake time is measured from the connection open event to the handshake completion,
+ * and negotiated protocols and cipher suites are counted.
+ * A handshake is considered resumed when the negotiated session was created before the connection opened.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#connectionListener(Connection.Listener)}.</p>
+ */
+public class TLSHandshakeListener
+    implements Connection.Listener, SslHandshakeListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( TLSHandshakeListener.class );
+
+    private final Map<SSLEngine, Handshake> handshakes = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> protocols = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> cipherSuites = new ConcurrentHashMap<>();
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final LongAdder resumed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final Recorder handshakeTimeHistogram;
+
+    private boolean printOnEnd = true;
+
+    public TLSHandshakeListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                 int numberOfSignificantValueDigits )
+    {
+        this.handshakeTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public TLSHandshakeListener( boolean printOnEnd )
+    {
+        // handshakes are typically sub milli seconds when resumed
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.MINUTES.toNanos( 1 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public TLSHandshakeListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onOpened( Connection connection )
+    {
+        if ( connection instanceof SslConnection )
+        {
+            SSLEngine sslEngine = ( (SslConnection) connection ).getSSLEngine();
+            handshakes.put( sslEngine, new Handshake( System.nanoTime(), System.currentTimeMillis() ) );
+        }
+    }
+
+    @Override
+    public void onClosed( Connection connection )
+    {
+        if ( connection instanceof SslConnection )
+        {
+            // the handshake may never have completed
+            handshakes.remove( ( (SslConnection) connection ).getSSLEngine() );
+        }
+    }
+
+    @Override
+    public void handshakeSucceeded( Event event )
+    {
+        SSLEngine sslEngine = event.getSSLEngine();
+        Handshake handshake = handshakes.remove( sslEngine );
+        SSLSession session = sslEngine.getSession();
+        succeeded.increment();
+        protocols.computeIfAbsent( session.getProtocol(), k -> new LongAdder() ).increment();
+        cipherSuites.computeIfAbsent( session.getCipherSuite(), k -> new LongAdder() ).increment();
+
+        if ( handshake == null )
+        {
+            return;
+        }
+        if ( session.getCreationTime() < handshake.beginMillis )
+        {
+            resumed.increment();
+        }
+        long time = System.nanoTime() - handshake.beginNanos;
+        try
+        {
+            handshakeTimeHistogram.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void handshakeFailed( Event event, Throwable failure )
+    {
+        handshakes.remove( event.getSSLEngine() );
+        failed.increment();
+        LOGGER.debug( "handshake failed", failure );
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   TLS Handshake Summary              " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "handshakes=" ).append( getHandshakes() ) //
+                .append( ", resumed=" ).append( getResumedHandshakes() ) //
+                .append( ", failed=" ).append( getFailedHandshakes() ) //
+                .append( ", resumption ratio=" ).append( String.format( "%.3f", getResumptionRatio() ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "protocols=" ).append( getProtocols() ).append( System.lineSeparator() ) //
+                .append( "cipher suites=" ).append( getCipherSuites() ).append( System.lineSeparator() ) //
+                .append( "handshake time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( handshakeTimeHistogram.getIntervalHistogram() ) //
+                             .toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the handshake time (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getHandshakeTimeHistogram()
+    {
+        return handshakeTimeHistogram;
+    }
+
+    public long getHandshakes()
+    {
+        return succeeded.longValue();
+    }
+
+    public long getResumedHandshakes()
+    {
+        return resumed.longValue();
+    }
+
+    public long getFailedHandshakes()
+    {
+        return failed.longValue();
+    }
+
+    /**
+     * @return the ratio of resumed handshakes over successful handshakes, or 0 if there was no handshake
+     */
+    public double getResumptionRatio()
+    {
+        long count = succeeded.longValue();
+        return count == 0 ? 0D : (double) resumed.longValue() / count;
+    }
+
+    /**
+     * @return the number of successful handshakes per negotiated protocol (i.e. TLSv1.2)
+     */
+    public Map<String, Long> getProtocols()
+    {
+        return snapshot( protocols );
+    }
+
+    /**
+     * @return the number of successful handshakes per negotiated cipher suite
+     */
+    public Map<String, Long> getCipherSuites()
+    {
+        return snapshot( cipherSuites );
+    }
+
+    private static Map<String, Long> snapshot( Map<String, LongAdder> counters )
+    {
+        Map<String, Long> result = new ConcurrentHashMap<>( counters.size() );
+        counters.forEach( ( key, value ) -> result.put( key, value.longValue() ) );
+        return result;
+    }
+
+    private static class Handshake
+    {
+        private final long beginNanos;
+
+        private final long beginMillis;
+
+        private Handshake( long beginNanos, long beginMillis )
+        {
+            this.beginNanos = beginNanos;
+            this.beginMillis = beginMillis;
+        }
+    }
+}
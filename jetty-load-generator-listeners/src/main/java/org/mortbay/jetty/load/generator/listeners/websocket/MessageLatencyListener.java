@@ -0,0 +1,153 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.websocket;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Records the round trip time of the echoed WebSocket messages and the message throughput.</p>
+ * <p>The throughput is the number of echoed messages over the time between the first message
+ * sent and the last echo received.</p>
+ * <p>To be registered with {@link LoadGenerator.Builder#resourceListener(Resource.Listener)}
+ * and {@link LoadGenerator.Builder#listener(LoadGenerator.Listener)}.</p>
+ */
+public class MessageLatencyListener
+    implements Resource.MessageListener, LoadGenerator.EndListener
+{
+
+    private static final Logger LOGGER = Log.getLogger( MessageLatencyListener.class );
+
+    private final Recorder roundTripTimeHistogram;
+
+    private final LongAdder messages = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAccumulator firstSendTime = new LongAccumulator( Math::min, Long.MAX_VALUE );
+
+    private final LongAccumulator lastEchoTime = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+    private boolean printOnEnd = true;
+
+    public MessageLatencyListener( long lowestDiscernibleValue, long highestTrackableValue,
+                                   int numberOfSignificantValueDigits )
+    {
+        this.roundTripTimeHistogram =
+            new Recorder( lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits );
+    }
+
+    public MessageLatencyListener( boolean printOnEnd )
+    {
+        // round trips are typically sub milli seconds on a local network
+        this( TimeUnit.MICROSECONDS.toNanos( 1 ), //
+              TimeUnit.MINUTES.toNanos( 1 ), //
+              3 );
+        this.printOnEnd = printOnEnd;
+    }
+
+    public MessageLatencyListener()
+    {
+        this( true );
+    }
+
+    @Override
+    public void onResourceMessage( Resource.Info info, long sendTime, long echoTime )
+    {
+        messages.increment();
+        bytes.add( info.getResource().getMessageLength() );
+        firstSendTime.accumulate( sendTime );
+        lastEchoTime.accumulate( echoTime );
+        long time = echoTime - sendTime;
+        try
+        {
+            roundTripTimeHistogram.recordValue( time );
+        }
+        catch ( ArrayIndexOutOfBoundsException e )
+        {
+            LOGGER.warn( "skip error recording time {}, {}", time, e.getMessage() );
+        }
+    }
+
+    @Override
+    public void onEnd( LoadGenerator generator )
+    {
+        if ( printOnEnd )
+        {
+            StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+                .append( System.lineSeparator() ) //
+                .append( "   WebSocket Messages Summary         " ).append( System.lineSeparator() ) //
+                .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+                .append( "messages=" ).append( getMessages() ) //
+                .append( ", bytes=" ).append( getBytes() ) //
+                .append( ", messages/s=" ).append( String.format( "%.2f", getMessageRate() ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "round trip time:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( roundTripTimeHistogram.getIntervalHistogram() ) //
+                             .toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+            System.out.println( message );
+        }
+    }
+
+    /**
+     * @return the message round trip time (in nanos) histogram, reset on each interval read
+     */
+    public Recorder getRoundTripTimeHistogram()
+    {
+        return roundTripTimeHistogram;
+    }
+
+    /**
+     * @return the number of echoed messages
+     */
+    public long getMessages()
+    {
+        return messages.longValue();
+    }
+
+    /**
+     * @return the number of bytes of the echoed messages
+     */
+    public long getBytes()
+    {
+        return bytes.longValue();
+    }
+
+    /**
+     * @return the number of echoed messages per second, or 0 if there was no message
+     */
+    public double getMessageRate()
+    {
+        long elapsed = lastEchoTime.get() - firstSendTime.get();
+        if ( messages.longValue() == 0 || elapsed <= 0 )
+        {
+            return 0D;
+        }
+        return messages.doubleValue() * TimeUnit.SECONDS.toNanos( 1 ) / elapsed;
+    }
+}
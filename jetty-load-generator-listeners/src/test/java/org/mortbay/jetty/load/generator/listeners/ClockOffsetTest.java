@@ -0,0 +1,111 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClockOffsetTest
+{
+    @Test
+    public void shortest_round_trip_kept()
+    {
+        ClockOffset clockOffset = new ClockOffset();
+        Assert.assertEquals( 0, clockOffset.getOffset() );
+        Assert.assertEquals( -1, clockOffset.getRoundTripTime() );
+
+        // remote clock 500ms ahead, read after 30ms of a 60ms round trip
+        clockOffset.addSample( 1000, 1530, TimeUnit.MILLISECONDS.toNanos( 60 ) );
+        Assert.assertEquals( 500, clockOffset.getOffset() );
+        Assert.assertEquals( 60, clockOffset.getRoundTripTime() );
+
+        // shorter round trip, remote clock 200ms behind
+        clockOffset.addSample( 2000, 1805, TimeUnit.MILLISECONDS.toNanos( 10 ) );
+        Assert.assertEquals( -200, clockOffset.getOffset() );
+        Assert.assertEquals( 10, clockOffset.getRoundTripTime() );
+
+        // longer round trip, so less accurate, ignored
+        clockOffset.addSample( 3000, 4100, TimeUnit.MILLISECONDS.toNanos( 200 ) );
+        Assert.assertEquals( -200, clockOffset.getOffset() );
+        Assert.assertEquals( 10, clockOffset.getRoundTripTime() );
+        Assert.assertEquals( 3, clockOffset.getSamples() );
+    }
+
+    @Test
+    public void local_remote_round_trip()
+    {
+        ClockOffset clockOffset = new ClockOffset().addSample( 1000, 1530, TimeUnit.MILLISECONDS.toNanos( 60 ) );
+        long local = 1_500_000_000_000L;
+        Assert.assertEquals( local + 500, clockOffset.toRemoteTime( local ) );
+        Assert.assertEquals( local - 500, clockOffset.toLocalTime( local ) );
+        Assert.assertEquals( local, clockOffset.toLocalTime( clockOffset.toRemoteTime( local ) ) );
+        Assert.assertEquals( local, clockOffset.toRemoteTime( clockOffset.toLocalTime( local ) ) );
+    }
+
+    @Test
+    public void sample_fails_without_remote_time()
+        throws Exception
+    {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector( server );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response )
+                throws IOException, ServletException
+            {
+                // e.g. a node not exposing its time
+                baseRequest.setHandled( true );
+                response.setStatus( HttpServletResponse.SC_NOT_FOUND );
+            }
+        } );
+        server.start();
+        HttpClient httpClient = new HttpClient();
+        httpClient.start();
+        try
+        {
+            new ClockOffset().sample( httpClient, "http://localhost:" + connector.getLocalPort() + "/time" );
+            Assert.fail();
+        }
+        catch ( IllegalStateException x )
+        {
+            Assert.assertTrue( x.getMessage(), x.getMessage().contains( "404" ) );
+        }
+        finally
+        {
+            httpClient.stop();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.latency.LatencyTimeDisplayListener;
+import org.mortbay.jetty.load.generator.listeners.report.GlobalSummaryListener;
+import org.mortbay.jetty.load.generator.listeners.responsetime.TimePerPathListener;
+
+public class CoordinatedOmissionCorrectionTest
+{
+    private static final int RESOURCE_RATE = 20;
+
+    private static final long STALL = 10 * TimeUnit.SECONDS.toMillis( 1 ) / RESOURCE_RATE;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // 0 not to stall any request
+    private volatile int stalledRequest;
+
+    private Server server;
+
+    private ServerConnector connector;
+
+    private HttpClient httpClient;
+
+    private CollectorServer collectorServer;
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector( server );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response )
+                throws IOException, ServletException
+            {
+                baseRequest.setHandled( true );
+                if ( requests.incrementAndGet() == stalledRequest )
+                {
+                    try
+                    {
+                        // stalls for several periods of the resource rate
+                        Thread.sleep( STALL );
+                    }
+                    catch ( InterruptedException x )
+                    {
+                        throw new ServletException( x );
+                    }
+                }
+            }
+        } );
+        server.start();
+        httpClient = new HttpClient();
+        httpClient.start();
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        if ( collectorServer != null )
+        {
+            collectorServer.stop();
+        }
+        httpClient.stop();
+        server.stop();
+    }
+
+    @Test
+    public void corrected_values_exceed_raw_ones_at_bounded_rate()
+        throws Exception
+    {
+        stalledRequest = 3;
+        Listeners listeners = run( RESOURCE_RATE, 20 );
+
+        Histogram raw = listeners.globalSummaryListener.getResponseTimeHistogram().getIntervalHistogram();
+        Histogram corrected =
+            listeners.globalSummaryListener.getCorrectedResponseTimeHistogram().getIntervalHistogram();
+        assertCorrected( raw.getTotalCount(), raw.getValueAtPercentile( 90D ), //
+                         corrected.getTotalCount(), corrected.getValueAtPercentile( 90D ) );
+
+        AtomicHistogram rawPerPath = listeners.timePerPathListener.getResponseTimePerPath().get( "/" );
+        AtomicHistogram correctedPerPath = listeners.timePerPathListener.getCorrectedResponseTimePerPath().get( "/" );
+        assertCorrected( rawPerPath.getTotalCount(), rawPerPath.getValueAtPercentile( 90D ), //
+                         correctedPerPath.getTotalCount(), correctedPerPath.getValueAtPercentile( 90D ) );
+
+        Histogram rawLatency = listeners.latencyValues.histogram;
+        Histogram correctedLatency = listeners.latencyValues.corrected;
+        assertCorrected( rawLatency.getTotalCount(), rawLatency.getValueAtPercentile( 90D ), //
+                         correctedLatency.getTotalCount(), correctedLatency.getValueAtPercentile( 90D ) );
+
+        CollectorInformations rawInformations = listeners.responseTimes.get( "/" );
+        CollectorInformations correctedInformations = listeners.correctedResponseTimes.get( "/" );
+        assertCorrected( rawInformations.getTotalCount(), rawInformations.getValue90(), //
+                         correctedInformations.getTotalCount(), correctedInformations.getValue90() );
+    }
+
+    @Test
+    public void no_correction_at_unbounded_rate()
+        throws Exception
+    {
+        Listeners listeners = run( 0, 5 );
+        Assert.assertEquals( 0, listeners.loadGenerator.getConfig().getIterationPeriod() );
+
+        // values recorded, though not necessarily all of them as the requests
+        // still in flight are aborted once the last iteration completes
+        Assert.assertTrue( listeners.globalSummaryListener.getResponseTimeHistogram() //
+                               .getIntervalHistogram().getTotalCount() > 0 );
+        Assert.assertEquals( 0, listeners.globalSummaryListener.getCorrectedResponseTimeHistogram() //
+            .getIntervalHistogram().getTotalCount() );
+
+        Assert.assertTrue( listeners.timePerPathListener.getResponseTimePerPath().get( "/" ).getTotalCount() > 0 );
+        Assert.assertTrue( listeners.timePerPathListener.getCorrectedResponseTimePerPath().isEmpty() );
+
+        Assert.assertTrue( listeners.latencyValues.histogram.getTotalCount() > 0 );
+        Assert.assertNull( listeners.latencyValues.corrected );
+
+        Assert.assertTrue( listeners.responseTimes.get( "/" ).getTotalCount() > 0 );
+        Assert.assertTrue( listeners.correctedResponseTimes.isEmpty() );
+    }
+
+    private static void assertCorrected( long rawCount, long rawValue90, long correctedCount, long correctedValue90 )
+    {
+        // the requests that could not be sent during the stall are accounted for
+        Assert.assertTrue( rawCount + " " + correctedCount, correctedCount > rawCount );
+        Assert.assertTrue( rawValue90 + " " + correctedValue90, correctedValue90 > rawValue90 );
+    }
+
+    private Listeners run( int resourceRate, int iterations )
+        throws Exception
+    {
+        Listeners listeners = new Listeners();
+        collectorServer = new CollectorServer( 0, true ).start();
+        LatencyTimeDisplayListener latencyTimeDisplayListener =
+            new LatencyTimeDisplayListener( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+                                            HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+                                            HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS, //
+                                            1, 1, TimeUnit.HOURS, //
+                                            Collections.singletonList( listeners.latencyValues ), true );
+        listeners.loadGenerator = new LoadGenerator.Builder() //
+            .port( connector.getLocalPort() ) //
+            .resource( new Resource( "/" ) ) //
+            .resourceRate( resourceRate ) //
+            .iterationsPerThread( iterations ) //
+            .resourceListener( listeners.globalSummaryListener ) //
+            .resourceListener( listeners.timePerPathListener ) //
+            .resourceListener( latencyTimeDisplayListener ) //
+            .resourceListener( collectorServer ) //
+            .listener( listeners.globalSummaryListener ) //
+            .listener( listeners.timePerPathListener ) //
+            .listener( latencyTimeDisplayListener ) //
+            .listener( collectorServer ) //
+            .build();
+        listeners.loadGenerator.begin().get( 10, TimeUnit.SECONDS );
+
+        listeners.responseTimes = collect( "response-times" );
+        listeners.correctedResponseTimes = collect( "corrected-response-times" );
+        return listeners;
+    }
+
+    private Map<String, CollectorInformations> collect( String path )
+        throws Exception
+    {
+        String json = httpClient.GET( "http://localhost:" + collectorServer.getPort() + "/collector/" + path ) //
+            .getContentAsString();
+        return new ObjectMapper().readValue( json, new TypeReference<Map<String, CollectorInformations>>()
+        {
+        } );
+    }
+
+    private static class Listeners
+    {
+        private final GlobalSummaryListener globalSummaryListener = new GlobalSummaryListener( true );
+
+        private final TimePerPathListener timePerPathListener = new TimePerPathListener( false, true, true );
+
+        private final LatencyValues latencyValues = new LatencyValues();
+
+        private LoadGenerator loadGenerator;
+
+        private Map<String, CollectorInformations> responseTimes;
+
+        private Map<String, CollectorInformations> correctedResponseTimes;
+    }
+
+    /**
+     * Keeps the values of the last run, i.e. the last interval, of a {@link LatencyTimeDisplayListener}.
+     */
+    private static class LatencyValues
+        extends LatencyTimeDisplayListener.PrintValueListener
+    {
+        private volatile Histogram histogram;
+
+        private volatile Histogram corrected;
+
+        @Override
+        public void onValue( String path, Histogram histogram, Histogram corrected )
+        {
+            this.histogram = histogram;
+            this.corrected = corrected;
+        }
+    }
+}
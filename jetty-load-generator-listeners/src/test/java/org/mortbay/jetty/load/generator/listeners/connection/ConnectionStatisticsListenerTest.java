@@ -0,0 +1,96 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.connection;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+
+public class ConnectionStatisticsListenerTest
+{
+    private Server server;
+
+    private ServerConnector connector;
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector( server );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response )
+                throws IOException, ServletException
+            {
+                baseRequest.setHandled( true );
+            }
+        } );
+        server.start();
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void connections_aggregated_per_user()
+        throws Exception
+    {
+        ConnectionStatisticsListener listener = new ConnectionStatisticsListener( false );
+        LoadGenerator loadGenerator = new LoadGenerator.Builder() //
+            .port( connector.getLocalPort() ) //
+            .usersPerThread( 2 ) //
+            .connectionsPerUser( 2 ) //
+            .resource( new Resource( "/", new Resource( "/1" ) ) ) //
+            .iterationsPerThread( 2 ) //
+            .resourceRate( 5 ) //
+            .connectionListener( listener ) //
+            .listener( listener ) //
+            .build();
+        loadGenerator.begin().get( 10, TimeUnit.SECONDS );
+
+        // each user sends the children over its second HttpClient
+        Assert.assertEquals( 4, listener.getStatistics().getConnections() );
+        Assert.assertEquals( 2, listener.getUserStatistics().size() );
+        listener.getUserStatistics().values().forEach( statistics -> //
+            Assert.assertEquals( 2, statistics.getConnections() ) );
+    }
+}
@@ -0,0 +1,108 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.http2;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.HTTP2ClientTransportBuilder;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+
+public class StreamConcurrencyListenerTest
+{
+    private Server server;
+
+    private ServerConnector connector;
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector( server, new HTTP2CServerConnectionFactory( new HttpConfiguration() ) );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response )
+                throws IOException, ServletException
+            {
+                baseRequest.setHandled( true );
+                try
+                {
+                    // slow enough for the streams to be sampled while open
+                    Thread.sleep( 200 );
+                }
+                catch ( InterruptedException x )
+                {
+                    throw new ServletException( x );
+                }
+            }
+        } );
+        server.start();
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void max_concurrent_streams_sampled_per_connection()
+        throws Exception
+    {
+        StreamConcurrencyListener listener = new StreamConcurrencyListener( 10, TimeUnit.MILLISECONDS, false );
+        // nothing sampled, so no thread to keep the JVM alive, until the load begins
+        Assert.assertFalse( Thread.getAllStackTraces().keySet().stream() //
+                                .anyMatch( thread -> "stream-concurrency-sampler".equals( thread.getName() ) ) );
+
+        LoadGenerator loadGenerator = new LoadGenerator.Builder() //
+            .port( connector.getLocalPort() ) //
+            .httpClientTransportBuilder( new HTTP2ClientTransportBuilder().maxConcurrentStreams( 2 ) ) //
+            .resource( new Resource( "/", new Resource( "/1" ), new Resource( "/2" ), new Resource( "/3" ),
+                                     new Resource( "/4" ) ) ) //
+            .connectionListener( listener ) //
+            .listener( listener ) //
+            .build();
+        loadGenerator.begin().get( 10, TimeUnit.SECONDS );
+
+        // one user with one connection, never more streams than allowed
+        Assert.assertEquals( 1, listener.getMaxStreamsHistogram().getTotalCount() );
+        Assert.assertEquals( 2, listener.getMaxStreamsHistogram().getMaxValue() );
+        Assert.assertTrue( listener.getStreamsHistogram().getTotalCount() > 0 );
+    }
+}
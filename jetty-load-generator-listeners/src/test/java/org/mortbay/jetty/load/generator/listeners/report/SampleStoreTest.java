@@ -0,0 +1,124 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.report;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SampleStoreTest
+{
+    @Test
+    public void samples_from_several_threads()
+        throws Exception
+    {
+        SampleStore store = new SampleStore( 64 );
+        int threads = 4;
+        int samples = 1000;
+        List<Thread> writers = new ArrayList<>();
+        for ( int t = 0; t < threads; ++t )
+        {
+            int thread = t;
+            writers.add( new Thread( () ->
+            {
+                for ( int i = 0; i < samples; ++i )
+                {
+                    store.add( i, "/path" + thread, 200, thread, i );
+                }
+            } ) );
+        }
+        writers.forEach( Thread::start );
+        for ( Thread writer : writers )
+        {
+            writer.join();
+        }
+
+        Assert.assertEquals( threads * samples, store.size() );
+        AtomicLong sum = new AtomicLong();
+        store.forEach( ( timeStamp, path, status, latencyTime, responseTime ) ->
+        {
+            Assert.assertEquals( "/path" + latencyTime, path );
+            Assert.assertEquals( 200, status );
+            Assert.assertEquals( timeStamp, responseTime );
+            sum.addAndGet( responseTime );
+        } );
+        Assert.assertEquals( threads * ( (long) samples * ( samples - 1 ) / 2 ), sum.get() );
+    }
+
+    @Test
+    public void spilled_samples_are_read_back()
+        throws Exception
+    {
+        Path file = Files.createTempFile( "samples", ".bin" );
+        try (SampleStore store = new SampleStore( 16, file ))
+        {
+            for ( int i = 0; i < 100; ++i )
+            {
+                store.add( i, i % 2 == 0 ? "/even" : "/odd", 200 + i, 2L * i, 3L * i );
+            }
+            // All the chunks but the current one are on disk.
+            Assert.assertEquals( 96L * 32, Files.size( file ) );
+
+            List<Long> timeStamps = new ArrayList<>();
+            store.forEach( ( timeStamp, path, status, latencyTime, responseTime ) ->
+            {
+                Assert.assertEquals( timeStamp % 2 == 0 ? "/even" : "/odd", path );
+                Assert.assertEquals( 200 + timeStamp, status );
+                Assert.assertEquals( 2 * timeStamp, latencyTime );
+                Assert.assertEquals( 3 * timeStamp, responseTime );
+                timeStamps.add( timeStamp );
+            } );
+            Assert.assertEquals( 100, timeStamps.size() );
+            for ( int i = 0; i < timeStamps.size(); ++i )
+            {
+                Assert.assertEquals( i, timeStamps.get( i ).longValue() );
+            }
+        }
+        Assert.assertFalse( Files.exists( file ) );
+    }
+
+    @Test
+    public void report_entries()
+        throws Exception
+    {
+        DetailledTimeReportListener listener = new DetailledTimeReportListener();
+        listener.getStore().add( 1, "/", 200, 10, 20 );
+        listener.getStore().add( 2, "/", 404, 30, 40 );
+
+        List<DetailledTimeValuesReport.Entry> latencies =
+            listener.getDetailledLatencyTimeValuesReport().getEntries();
+        List<DetailledTimeValuesReport.Entry> responses =
+            listener.getDetailledResponseTimeValuesReport().getEntries();
+        Assert.assertEquals( 2, latencies.size() );
+        Assert.assertEquals( 10, latencies.get( 0 ).getTime() );
+        Assert.assertEquals( 40, responses.get( 1 ).getTime() );
+        Assert.assertEquals( 404, responses.get( 1 ).getHttpStatus() );
+
+        listener.getStore().clear();
+        Assert.assertEquals( 0, listener.getStore().size() );
+        listener.getStore().add( 3, "/", 200, 50, 60 );
+        Assert.assertEquals( 1, listener.getDetailledResponseTimeValuesReport().getEntries().size() );
+    }
+}
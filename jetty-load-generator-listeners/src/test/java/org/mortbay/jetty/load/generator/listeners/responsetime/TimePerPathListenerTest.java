@@ -0,0 +1,149 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.listeners.responsetime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.HdrHistogram.AtomicHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+
+public class TimePerPathListenerTest
+{
+    @Test
+    public void no_value_lost_while_threads_terminate_and_histograms_are_read()
+        throws Exception
+    {
+        Resource root = new Resource( "/", new Resource( "/style.css" ), new Resource( "/script.js" ) );
+        LoadGenerator loadGenerator = new LoadGenerator.Builder().resource( root ).build();
+        TimePerPathListener listener = new TimePerPathListener( false, true, true );
+        listener.onBegin( loadGenerator );
+
+        // Reads, and so merges, the histograms while the values are recorded.
+        AtomicBoolean recording = new AtomicBoolean( true );
+        Thread reader = new Thread( () ->
+        {
+            while ( recording.get() )
+            {
+                listener.getResponseTimePerPath();
+            }
+        } );
+        reader.start();
+
+        // Short lived threads, more than the stripes, so that threads share and reuse stripes.
+        int rounds = 10;
+        int threads = 4;
+        int values = 1000;
+        List<Resource> resources = loadGenerator.getResources();
+        for ( int r = 0; r < rounds; ++r )
+        {
+            List<Thread> writers = new ArrayList<>();
+            for ( int t = 0; t < threads; ++t )
+            {
+                writers.add( new Thread( () ->
+                {
+                    for ( int i = 0; i < values; ++i )
+                    {
+                        Resource.Info info = resources.get( i % resources.size() ).newInfo();
+                        info.setRequestTime( 0 );
+                        info.setLatencyTime( 1000 + i );
+                        info.setResponseTime( 2000 + i );
+                        listener.onResourceNode( info );
+                    }
+                } ) );
+            }
+            writers.forEach( Thread::start );
+            for ( Thread writer : writers )
+            {
+                writer.join();
+            }
+        }
+        recording.set( false );
+        reader.join();
+
+        long expected = (long) rounds * threads * values;
+        Assert.assertEquals( expected, totalCount( listener.getResponseTimePerPath() ) );
+        Assert.assertEquals( expected, totalCount( listener.getLatencyTimePerPath() ) );
+        Assert.assertEquals( expected, totalCount( listener.getCorrectedResponseTimePerPath() ) );
+        Assert.assertEquals( expected, totalCount( listener.getCorrectedLatencyTimePerPath() ) );
+        Assert.assertEquals( 3, listener.getResponseTimePerPath().size() );
+    }
+
+    @Test
+    public void footprint_bounded_by_stripes_not_threads()
+        throws Exception
+    {
+        Resource root = new Resource( "/", new Resource( "/style.css" ), new Resource( "/script.js" ) );
+        LoadGenerator loadGenerator = new LoadGenerator.Builder().resource( root ).build();
+        TimePerPathListener listener = new TimePerPathListener( false );
+        listener.onBegin( loadGenerator );
+
+        // Many more live threads than stripes, all recording at the same time.
+        int stripes = 2 * Runtime.getRuntime().availableProcessors();
+        int threads = 8 * stripes;
+        int values = 100;
+        List<Resource> resources = loadGenerator.getResources();
+        CountDownLatch started = new CountDownLatch( threads );
+        List<Thread> writers = new ArrayList<>();
+        for ( int t = 0; t < threads; ++t )
+        {
+            writers.add( new Thread( () ->
+            {
+                started.countDown();
+                try
+                {
+                    started.await();
+                }
+                catch ( InterruptedException x )
+                {
+                    throw new RuntimeException( x );
+                }
+                for ( int i = 0; i < values; ++i )
+                {
+                    Resource.Info info = resources.get( i % resources.size() ).newInfo();
+                    info.setRequestTime( 0 );
+                    info.setLatencyTime( 1000 + i );
+                    info.setResponseTime( 2000 + i );
+                    listener.onResourceNode( info );
+                }
+            } ) );
+        }
+        writers.forEach( Thread::start );
+        for ( Thread writer : writers )
+        {
+            writer.join();
+        }
+
+        Assert.assertTrue( String.valueOf( listener.getRecordersCount() ),
+                           listener.getRecordersCount() <= stripes * resources.size() );
+        Assert.assertEquals( (long) threads * values, totalCount( listener.getResponseTimePerPath() ) );
+        Assert.assertEquals( (long) threads * values, totalCount( listener.getLatencyTimePerPath() ) );
+    }
+
+    private static long totalCount( Map<String, AtomicHistogram> histograms )
+    {
+        return histograms.values().stream().mapToLong( AtomicHistogram::getTotalCount ).sum();
+    }
+}
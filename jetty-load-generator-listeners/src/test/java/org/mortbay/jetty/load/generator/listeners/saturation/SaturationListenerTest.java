@@ -0,0 +1,79 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.saturation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+
+public class SaturationListenerTest
+{
+    @Test
+    public void cpu_time_before_begin_not_sampled()
+        throws Exception
+    {
+        Assume.assumeTrue( ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported() );
+
+        CountDownLatch burnt = new CountDownLatch( 1 );
+        CountDownLatch done = new CountDownLatch( 1 );
+        Thread client = new Thread( () -> {
+            // busy before the load begins, idle afterwards
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( 800 );
+            while ( System.nanoTime() < end )
+            {
+                // spin
+            }
+            burnt.countDown();
+            try
+            {
+                done.await();
+            }
+            catch ( InterruptedException x )
+            {
+                // the test is over
+            }
+        }, "test-client-1" );
+        client.setDaemon( true );
+        client.start();
+        Assert.assertTrue( burnt.await( 10, TimeUnit.SECONDS ) );
+
+        SaturationListener listener = new SaturationListener( 100, "test-client-" ).printOnEnd( false );
+        LoadGenerator generator = new LoadGenerator.Builder().build();
+        listener.onBegin( generator );
+        try
+        {
+            Thread.sleep( 1500 );
+        }
+        finally
+        {
+            listener.onEnd( generator );
+            done.countDown();
+        }
+
+        // sampled, without the CPU time spent before the load began
+        Assert.assertTrue( listener.getMaxBusyRatio() >= 0 );
+        Assert.assertTrue( String.valueOf( listener.getMaxBusyRatio() ), listener.getMaxBusyRatio() < 0.3 );
+    }
+}
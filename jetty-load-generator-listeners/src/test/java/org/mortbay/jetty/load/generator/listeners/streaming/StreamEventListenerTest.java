@@ -0,0 +1,107 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.listeners.streaming;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+
+public class StreamEventListenerTest
+{
+    private Server server;
+
+    private ServerConnector connector;
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector( server );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response )
+                throws IOException, ServletException
+            {
+                baseRequest.setHandled( true );
+                response.setContentType( "text/event-stream" );
+                ServletOutputStream output = response.getOutputStream();
+                output.print( "data: event\n\n" );
+                output.flush();
+                // the response is committed, so the connection is aborted
+                throw new EOFException( "stream broken after one event" );
+            }
+        } );
+        server.start();
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void failed_stream_closed()
+        throws Exception
+    {
+        StreamEventListener listener = new StreamEventListener( false );
+        LoadGenerator loadGenerator = new LoadGenerator.Builder() //
+            .port( connector.getLocalPort() ) //
+            .resource( new Resource( "/events" ).streaming( true ) ) //
+            .resourceListener( listener ) //
+            .listener( listener ) //
+            .build();
+        try
+        {
+            loadGenerator.begin().get( 5, TimeUnit.SECONDS );
+        }
+        catch ( ExecutionException x )
+        {
+            // the failed stream may fail the load
+        }
+
+        Assert.assertEquals( 1, listener.getEvents() );
+        Assert.assertEquals( 1, listener.getMaxOpenStreams() );
+        // no node event for the failed stream, still no longer open
+        Assert.assertEquals( 0, listener.getOpenStreams() );
+    }
+}
@@ -0,0 +1,139 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A distribution of the latency injected by the {@link TargetHandler} before responding.</p>
+ * <p>Distributions are parsed from a {@code name:parameters} specification, with parameters in millis:</p>
+ * <ul>
+ * <li>{@code none}: no latency</li>
+ * <li>{@code constant:10}: always 10 ms</li>
+ * <li>{@code uniform:5,50}: uniformly distributed between 5 and 50 ms</li>
+ * <li>{@code exponential:20}: exponentially distributed with a mean of 20 ms</li>
+ * <li>{@code normal:20,5}: normally distributed with a mean of 20 ms and a standard deviation of 5 ms</li>
+ * <li>{@code lognormal:20,0.5}: log-normally distributed with a median of 20 ms and a shape (sigma) of 0.5,
+ * giving the long tail of real backends</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface Latency
+{
+
+    Latency NONE = () -> 0;
+
+    /**
+     * @return the next latency to inject, in nanos (0 or negative for none)
+     */
+    long next();
+
+    static Latency constant( long millis )
+    {
+        long nanos = TimeUnit.MILLISECONDS.toNanos( millis );
+        return () -> nanos;
+    }
+
+    static Latency uniform( long minMillis, long maxMillis )
+    {
+        if ( maxMillis < minMillis )
+        {
+            throw new IllegalArgumentException( "max latency " + maxMillis + " lower than min latency " + minMillis );
+        }
+        long min = TimeUnit.MILLISECONDS.toNanos( minMillis );
+        long max = TimeUnit.MILLISECONDS.toNanos( maxMillis );
+        return () -> min + (long) ( ThreadLocalRandom.current().nextDouble() * ( max - min ) );
+    }
+
+    static Latency exponential( double meanMillis )
+    {
+        double mean = meanMillis * 1_000_000D;
+        return () -> (long) ( -mean * Math.log( 1D - ThreadLocalRandom.current().nextDouble() ) );
+    }
+
+    static Latency normal( double meanMillis, double stdDevMillis )
+    {
+        double mean = meanMillis * 1_000_000D;
+        double stdDev = stdDevMillis * 1_000_000D;
+        return () -> (long) ( mean + stdDev * ThreadLocalRandom.current().nextGaussian() );
+    }
+
+    static Latency logNormal( double medianMillis, double sigma )
+    {
+        double mu = Math.log( medianMillis * 1_000_000D );
+        return () -> (long) Math.exp( mu + sigma * ThreadLocalRandom.current().nextGaussian() );
+    }
+
+    /**
+     * @param spec the distribution specification, i.e. {@code uniform:5,50}
+     * @return the distribution
+     * @throws IllegalArgumentException if the specification cannot be parsed
+     */
+    static Latency parse( String spec )
+    {
+        if ( spec == null || spec.trim().isEmpty() )
+        {
+            return NONE;
+        }
+        String[] parts = spec.trim().split( ":", 2 );
+        String name = parts[0].trim().toLowerCase();
+        String[] params = parts.length > 1 ? parts[1].split( "," ) : new String[0];
+        try
+        {
+            switch ( name )
+            {
+                case "none":
+                    return NONE;
+                case "constant":
+                    checkParams( spec, params, 1 );
+                    return constant( Long.parseLong( params[0].trim() ) );
+                case "uniform":
+                    checkParams( spec, params, 2 );
+                    return uniform( Long.parseLong( params[0].trim() ), Long.parseLong( params[1].trim() ) );
+                case "exponential":
+                    checkParams( spec, params, 1 );
+                    return exponential( Double.parseDouble( params[0].trim() ) );
+                case "normal":
+                    checkParams( spec, params, 2 );
+                    return normal( Double.parseDouble( params[0].trim() ), Double.parseDouble( params[1].trim() ) );
+                case "lognormal":
+                    checkParams( spec, params, 2 );
+                    return logNormal( Double.parseDouble( params[0].trim() ), Double.parseDouble( params[1].trim() ) );
+                default:
+                    throw new IllegalArgumentException( "unknown latency distribution " + spec );
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "invalid latency distribution " + spec, e );
+        }
+    }
+
+    static void checkParams( String spec, String[] params, int expected )
+    {
+        if ( params.length != expected )
+        {
+            throw new IllegalArgumentException(
+                "latency distribution " + spec + " needs " + expected + " parameter(s)" );
+        }
+    }
+
+}
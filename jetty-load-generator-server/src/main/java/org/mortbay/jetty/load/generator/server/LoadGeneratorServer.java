@@ -0,0 +1,201 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import com.beust.jcommander.JCommander;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.mortbay.jetty.load.generator.Resource;
+
+/**
+ * <p>A Jetty server to be targeted by the load generator, to measure the load generator own ceiling
+ * or validate a profile without a real backend.</p>
+ * <p>Each request is answered by a {@link TargetHandler} honoring {@link Resource#RESPONSE_LENGTH},
+ * with a configurable {@link Latency} and {@link StatusMix}.</p>
+ * <p>The clear text port serves http/1.1 and h2c (with the upgrade or prior knowledge),
+ * the optional TLS port serves h2 and http/1.1 negotiated with ALPN
+ * (which on Java 8 requires the alpn-boot jar in the boot classpath).</p>
+ */
+public class LoadGeneratorServer
+{
+
+    private static final Logger LOGGER = Log.getLogger( LoadGeneratorServer.class );
+
+    private final LoadGeneratorServerArgs args;
+
+    private Server server;
+
+    private ServerConnector connector;
+
+    private ServerConnector tlsConnector;
+
+    private StatisticsHandler statisticsHandler;
+
+    public LoadGeneratorServer( LoadGeneratorServerArgs args )
+    {
+        this.args = args;
+    }
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        LoadGeneratorServerArgs serverArgs = new LoadGeneratorServerArgs();
+        try
+        {
+            JCommander jCommander = new JCommander( serverArgs, args );
+            if ( serverArgs.isHelp() )
+            {
+                jCommander.usage();
+                return;
+            }
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+            new JCommander( serverArgs ).usage();
+            System.exit( 1 );
+        }
+
+        LoadGeneratorServer loadGeneratorServer = new LoadGeneratorServer( serverArgs ).start();
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+            try
+            {
+                loadGeneratorServer.stop();
+            }
+            catch ( Exception e )
+            {
+                LOGGER.warn( e );
+            }
+        } ) );
+        loadGeneratorServer.join();
+    }
+
+    public LoadGeneratorServer start()
+        throws Exception
+    {
+        QueuedThreadPool serverThreads = new QueuedThreadPool( args.getMaxThreads() );
+        serverThreads.setName( "target" );
+        server = new Server( serverThreads );
+
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setSendServerVersion( false );
+        httpConfiguration.setSendDateHeader( false );
+
+        if ( args.getPort() >= 0 )
+        {
+            HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory( httpConfiguration );
+            h2c.setMaxConcurrentStreams( args.getMaxConcurrentStreams() );
+            connector = new ServerConnector( server, -1, args.getSelectors(), //
+                                             new HttpConnectionFactory( httpConfiguration ), h2c );
+            connector.setPort( args.getPort() );
+            server.addConnector( connector );
+        }
+
+        if ( args.getTlsPort() >= 0 )
+        {
+            if ( args.getKeyStorePath() == null )
+            {
+                throw new IllegalArgumentException( "a keystore is mandatory for the TLS port" );
+            }
+            SslContextFactory sslContextFactory = new SslContextFactory();
+            sslContextFactory.setKeyStorePath( args.getKeyStorePath() );
+            sslContextFactory.setKeyStorePassword( args.getKeyStorePassword() );
+
+            HttpConfiguration httpsConfiguration = new HttpConfiguration( httpConfiguration );
+            httpsConfiguration.addCustomizer( new SecureRequestCustomizer() );
+
+            HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory( httpsConfiguration );
+            h2.setMaxConcurrentStreams( args.getMaxConcurrentStreams() );
+            HttpConnectionFactory http = new HttpConnectionFactory( httpsConfiguration );
+            ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory( h2.getProtocol(), http.getProtocol() );
+            alpn.setDefaultProtocol( HttpVersion.HTTP_1_1.asString() );
+            SslConnectionFactory ssl = new SslConnectionFactory( sslContextFactory, alpn.getProtocol() );
+
+            tlsConnector = new ServerConnector( server, -1, args.getSelectors(), ssl, alpn, h2, http );
+            tlsConnector.setPort( args.getTlsPort() );
+            server.addConnector( tlsConnector );
+        }
+
+        statisticsHandler = new StatisticsHandler();
+        statisticsHandler.setHandler( new TargetHandler( Latency.parse( args.getLatency() ), //
+                                                         StatusMix.parse( args.getStatusMix() ), //
+                                                         args.getBufferSize() ) );
+        server.setHandler( statisticsHandler );
+
+        server.start();
+
+        LOGGER.info( "LoadGeneratorServer started on port {}, tls port {}: {}", getPort(), getTlsPort(), args );
+
+        return this;
+    }
+
+    public void stop()
+        throws Exception
+    {
+        LOGGER.info( "LoadGeneratorServer stopping - requests: {}, max active requests: {}, mean request time: {} ms", //
+                     statisticsHandler.getRequests(), //
+                     statisticsHandler.getRequestsActiveMax(), //
+                     statisticsHandler.getRequestTimeMean() );
+        server.stop();
+    }
+
+    public void join()
+        throws InterruptedException
+    {
+        server.join();
+    }
+
+    /**
+     * @return the local clear text port, or -1 if disabled
+     */
+    public int getPort()
+    {
+        return connector == null ? -1 : connector.getLocalPort();
+    }
+
+    /**
+     * @return the local TLS port, or -1 if disabled
+     */
+    public int getTlsPort()
+    {
+        return tlsConnector == null ? -1 : tlsConnector.getLocalPort();
+    }
+
+    /**
+     * @return the server side statistics, to compare with the load generator ones
+     */
+    public StatisticsHandler getStatisticsHandler()
+    {
+        return statisticsHandler;
+    }
+}
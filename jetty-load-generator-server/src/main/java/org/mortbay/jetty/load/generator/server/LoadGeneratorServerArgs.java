@@ -0,0 +1,181 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ *
+ */
+public class LoadGeneratorServerArgs
+{
+
+    @Parameter( names = { "--port", "-p" }, description = "Clear text port serving http/1.1 and h2c (disabled if negative)" )
+    private int port = 8080;
+
+    @Parameter( names = { "--tls-port", "-tp" }, description = "TLS port serving h2 and http/1.1 with ALPN (disabled if negative)" )
+    private int tlsPort = -1;
+
+    @Parameter( names = { "--keystore-path", "-ksp" }, description = "Keystore path for the TLS port" )
+    private String keyStorePath;
+
+    @Parameter( names = { "--keystore-password", "-ksw" }, description = "Keystore password for the TLS port" )
+    private String keyStorePassword;
+
+    @Parameter( names = { "--selectors", "-s" }, description = "Selectors per connector (default depends on the cores)" )
+    private int selectors = -1;
+
+    @Parameter( names = { "--max-threads", "-mt" }, description = "Max server threads" )
+    private int maxThreads = 200;
+
+    @Parameter( names = { "--latency", "-l" }, description = "Injected latency distribution in millis (none, constant:10, uniform:5,50, exponential:20, normal:20,5, lognormal:20,0.5)" )
+    private String latency = "none";
+
+    @Parameter( names = { "--status-mix", "-sm" }, description = "Weighted response statuses (i.e. 200:95,500:4,503:1)" )
+    private String statusMix = "200";
+
+    @Parameter( names = { "--buffer-size", "-bs" }, description = "Size of the pre-allocated response content buffer" )
+    private int bufferSize = TargetHandler.DEFAULT_BUFFER_SIZE;
+
+    @Parameter( names = { "--max-concurrent-streams", "-mcs" }, description = "HTTP/2 max concurrent streams per connection" )
+    private int maxConcurrentStreams = 1024;
+
+    @Parameter( names = { "--help" }, description = "Display help" )
+    private boolean help;
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setPort( int port )
+    {
+        this.port = port;
+    }
+
+    public int getTlsPort()
+    {
+        return tlsPort;
+    }
+
+    public void setTlsPort( int tlsPort )
+    {
+        this.tlsPort = tlsPort;
+    }
+
+    public String getKeyStorePath()
+    {
+        return keyStorePath;
+    }
+
+    public void setKeyStorePath( String keyStorePath )
+    {
+        this.keyStorePath = keyStorePath;
+    }
+
+    public String getKeyStorePassword()
+    {
+        return keyStorePassword;
+    }
+
+    public void setKeyStorePassword( String keyStorePassword )
+    {
+        this.keyStorePassword = keyStorePassword;
+    }
+
+    public int getSelectors()
+    {
+        return selectors;
+    }
+
+    public void setSelectors( int selectors )
+    {
+        this.selectors = selectors;
+    }
+
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    public void setMaxThreads( int maxThreads )
+    {
+        this.maxThreads = maxThreads;
+    }
+
+    public String getLatency()
+    {
+        return latency;
+    }
+
+    public void setLatency( String latency )
+    {
+        this.latency = latency;
+    }
+
+    public String getStatusMix()
+    {
+        return statusMix;
+    }
+
+    public void setStatusMix( String statusMix )
+    {
+        this.statusMix = statusMix;
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public void setBufferSize( int bufferSize )
+    {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxConcurrentStreams()
+    {
+        return maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams( int maxConcurrentStreams )
+    {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    public boolean isHelp()
+    {
+        return help;
+    }
+
+    public void setHelp( boolean help )
+    {
+        this.help = help;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoadGeneratorServerArgs{" + "port=" + port + ", tlsPort=" + tlsPort + ", keyStorePath='" + keyStorePath
+            + '\'' + ", selectors=" + selectors + ", maxThreads=" + maxThreads + ", latency='" + latency + '\''
+            + ", statusMix='" + statusMix + '\'' + ", bufferSize=" + bufferSize + ", maxConcurrentStreams="
+            + maxConcurrentStreams + '}';
+    }
+}
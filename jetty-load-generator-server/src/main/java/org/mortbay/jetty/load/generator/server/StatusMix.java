@@ -0,0 +1,121 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>A weighted mix of the response status codes returned by the {@link TargetHandler}.</p>
+ * <p>Mixes are parsed from a comma separated list of {@code status:weight}, i.e. {@code 200:95,500:4,503:1}
+ * returns 200 for 95% of the responses, 500 for 4% and 503 for 1%.</p>
+ */
+public class StatusMix
+{
+
+    public static final StatusMix OK = new StatusMix( new int[]{ 200 }, new int[]{ 1 } );
+
+    private final int[] statuses;
+
+    /**
+     * cumulative weights, to pick a status with a binary search
+     */
+    private final int[] cumulativeWeights;
+
+    public StatusMix( int[] statuses, int[] weights )
+    {
+        if ( statuses.length == 0 || statuses.length != weights.length )
+        {
+            throw new IllegalArgumentException( "statuses and weights must have the same non zero length" );
+        }
+        this.statuses = statuses.clone();
+        this.cumulativeWeights = new int[weights.length];
+        int total = 0;
+        for ( int i = 0; i < weights.length; i++ )
+        {
+            if ( weights[i] <= 0 )
+            {
+                throw new IllegalArgumentException( "weight of status " + statuses[i] + " must be higher than 0" );
+            }
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * @return a status picked according to the weights
+     */
+    public int next()
+    {
+        if ( statuses.length == 1 )
+        {
+            return statuses[0];
+        }
+        int value = ThreadLocalRandom.current().nextInt( cumulativeWeights[cumulativeWeights.length - 1] );
+        int index = Arrays.binarySearch( cumulativeWeights, value + 1 );
+        return statuses[index >= 0 ? index : -index - 1];
+    }
+
+    /**
+     * @param spec the mix specification, i.e. {@code 200:95,500:5}
+     * @return the mix
+     * @throws IllegalArgumentException if the specification cannot be parsed
+     */
+    public static StatusMix parse( String spec )
+    {
+        if ( spec == null || spec.trim().isEmpty() )
+        {
+            return OK;
+        }
+        List<int[]> entries = new ArrayList<>();
+        for ( String entry : spec.split( "," ) )
+        {
+            String[] parts = entry.trim().split( ":" );
+            try
+            {
+                int status = Integer.parseInt( parts[0].trim() );
+                int weight = parts.length > 1 ? Integer.parseInt( parts[1].trim() ) : 1;
+                entries.add( new int[]{ status, weight } );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "invalid status mix " + spec, e );
+            }
+        }
+        return new StatusMix( entries.stream().mapToInt( e -> e[0] ).toArray(), //
+                              entries.stream().mapToInt( e -> e[1] ).toArray() );
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder( "StatusMix{" );
+        int previous = 0;
+        for ( int i = 0; i < statuses.length; i++ )
+        {
+            builder.append( i > 0 ? "," : "" ).append( statuses[i] ).append( ':' )
+                .append( cumulativeWeights[i] - previous );
+            previous = cumulativeWeights[i];
+        }
+        return builder.append( '}' ).toString();
+    }
+}
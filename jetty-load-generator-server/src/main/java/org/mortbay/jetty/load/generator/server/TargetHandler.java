@@ -0,0 +1,160 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.mortbay.jetty.load.generator.Resource;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Handler answering the requests of the load generator.</p>
+ * <p>The response content length is the value of the {@link Resource#RESPONSE_LENGTH} request header,
+ * written from a single pre-allocated read only buffer so that responding does not allocate nor copy content.</p>
+ * <p>Before responding, a {@link Latency} is injected: the request is suspended and resumed by a scheduler,
+ * so a high latency does not hold a thread. The status of the response is picked from a {@link StatusMix}.</p>
+ */
+public class TargetHandler
+    extends AbstractHandler
+{
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer content;
+
+    private final Latency latency;
+
+    private final StatusMix statusMix;
+
+    private final Scheduler scheduler;
+
+    public TargetHandler()
+    {
+        this( Latency.NONE, StatusMix.OK, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * @param latency the latency to inject before responding
+     * @param statusMix the statuses to respond with
+     * @param bufferSize the size of the pre-allocated content buffer, larger responses write it several times
+     */
+    public TargetHandler( Latency latency, StatusMix statusMix, int bufferSize )
+    {
+        if ( bufferSize <= 0 )
+        {
+            throw new IllegalArgumentException( "bufferSize must be higher than 0" );
+        }
+        this.latency = latency;
+        this.statusMix = statusMix;
+        byte[] bytes = new byte[bufferSize];
+        Arrays.fill( bytes, (byte) 'X' );
+        ByteBuffer buffer = ByteBuffer.allocateDirect( bufferSize );
+        buffer.put( bytes ).flip();
+        this.content = buffer.asReadOnlyBuffer();
+        this.scheduler = new ScheduledExecutorScheduler( "target-latency", false );
+        addBean( scheduler );
+    }
+
+    public Latency getLatency()
+    {
+        return latency;
+    }
+
+    public StatusMix getStatusMix()
+    {
+        return statusMix;
+    }
+
+    @Override
+    public void handle( String target, Request jettyRequest, HttpServletRequest request,
+                        HttpServletResponse response )
+        throws IOException, ServletException
+    {
+        jettyRequest.setHandled( true );
+
+        if ( request.getDispatcherType() == DispatcherType.REQUEST )
+        {
+            long delay = latency.next();
+            if ( delay > 0 )
+            {
+                // resumed by an async dispatch once the latency is elapsed
+                AsyncContext asyncContext = request.startAsync();
+                asyncContext.setTimeout( 0 );
+                scheduler.schedule( asyncContext::dispatch, delay, TimeUnit.NANOSECONDS );
+                return;
+            }
+        }
+
+        respond( jettyRequest, response );
+    }
+
+    protected void respond( Request jettyRequest, HttpServletResponse response )
+        throws IOException
+    {
+        int status = statusMix.next();
+        response.setStatus( status );
+
+        String header = jettyRequest.getHeader( Resource.RESPONSE_LENGTH );
+        if ( header == null || HttpStatus.isInformational( status ) || status == HttpStatus.NO_CONTENT_204
+            || status == HttpStatus.NOT_MODIFIED_304 )
+        {
+            return;
+        }
+
+        int length;
+        try
+        {
+            length = Integer.parseInt( header.trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            response.sendError( HttpStatus.BAD_REQUEST_400, "invalid " + Resource.RESPONSE_LENGTH + ": " + header );
+            return;
+        }
+        if ( length <= 0 )
+        {
+            return;
+        }
+
+        response.setContentLength( length );
+        HttpOutput output = jettyRequest.getResponse().getHttpOutput();
+        while ( length > 0 )
+        {
+            // a view on the shared buffer, the bytes are not copied
+            ByteBuffer chunk = content.duplicate();
+            chunk.limit( Math.min( length, chunk.capacity() ) );
+            length -= chunk.remaining();
+            output.write( chunk );
+        }
+    }
+}
@@ -0,0 +1,160 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.mortbay.jetty.load.generator.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mortbay.jetty.load.generator.HTTP1ClientTransportBuilder;
+import org.mortbay.jetty.load.generator.HTTP2ClientTransportBuilder;
+import org.mortbay.jetty.load.generator.HTTPClientTransportBuilder;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+@RunWith( Parameterized.class )
+public class LoadGeneratorServerTest
+{
+
+    @Parameterized.Parameters( name = "{0}" )
+    public static Iterable<Object[]> parameters()
+    {
+        List<Object[]> result = new ArrayList<>();
+        result.add( new Object[]{ new HTTP1ClientTransportBuilder() } );
+        result.add( new Object[]{ new HTTP2ClientTransportBuilder() } );
+        return result;
+    }
+
+    private final HTTPClientTransportBuilder clientTransportBuilder;
+
+    private LoadGeneratorServer server;
+
+    public LoadGeneratorServerTest( HTTPClientTransportBuilder clientTransportBuilder )
+    {
+        this.clientTransportBuilder = clientTransportBuilder;
+    }
+
+    private void startServer( String latency, String statusMix )
+        throws Exception
+    {
+        LoadGeneratorServerArgs args = new LoadGeneratorServerArgs();
+        args.setPort( 0 );
+        args.setLatency( latency );
+        args.setStatusMix( statusMix );
+        args.setBufferSize( 4096 );
+        server = new LoadGeneratorServer( args ).start();
+    }
+
+    @After
+    public void stopServer()
+        throws Exception
+    {
+        if ( server != null )
+        {
+            server.stop();
+        }
+    }
+
+    private Queue<Resource.Info> run( Resource resource )
+        throws Exception
+    {
+        Queue<Resource.Info> infos = new ConcurrentLinkedQueue<>();
+        LoadGenerator loadGenerator = new LoadGenerator.Builder() //
+            .port( server.getPort() ) //
+            .httpClientTransportBuilder( clientTransportBuilder ) //
+            .resource( resource ) //
+            .iterationsPerThread( 5 ) //
+            .resourceListener( (Resource.NodeListener) infos::offer ) //
+            .build();
+        loadGenerator.begin().get( 10, TimeUnit.SECONDS );
+        return infos;
+    }
+
+    @Test
+    public void response_length_honored()
+        throws Exception
+    {
+        startServer( "none", "200" );
+
+        Queue<Resource.Info> infos = run( new Resource( "/", //
+                                                        new Resource( "/small" ).responseLength( 100 ), //
+                                                        new Resource( "/large" ).responseLength( 10 * 4096 + 1 ) ) //
+                                              .responseLength( 4096 ) );
+
+        Assert.assertEquals( 15, infos.size() );
+        for ( Resource.Info info : infos )
+        {
+            Assert.assertEquals( 200, info.getStatus() );
+            Assert.assertEquals( info.getResource().getResponseLength(), info.getContentLength() );
+        }
+        Assert.assertEquals( 15, server.getStatisticsHandler().getRequests() );
+    }
+
+    @Test
+    public void latency_injected()
+        throws Exception
+    {
+        startServer( "constant:50", "200" );
+
+        Queue<Resource.Info> infos = run( new Resource( "/" ).responseLength( 1024 ) );
+
+        Assert.assertEquals( 5, infos.size() );
+        for ( Resource.Info info : infos )
+        {
+            long responseTime = info.getResponseTime() - info.getRequestTime();
+            Assert.assertTrue( "response time " + responseTime, //
+                               responseTime >= TimeUnit.MILLISECONDS.toNanos( 50 ) );
+        }
+    }
+
+    @Test
+    public void status_mix()
+        throws Exception
+    {
+        startServer( "none", "503:1" );
+
+        Queue<Resource.Info> infos = run( new Resource( "/" ).responseLength( 1024 ) );
+
+        Assert.assertEquals( 5, infos.size() );
+        Assert.assertTrue( infos.stream().allMatch( info -> info.getStatus() == 503 ) );
+    }
+
+    @Test
+    public void status_mix_weights()
+    {
+        StatusMix statusMix = StatusMix.parse( "200:3,500:1" );
+        int[] counts = new int[2];
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            counts[statusMix.next() == 200 ? 0 : 1]++;
+        }
+        Assert.assertTrue( "200 count " + counts[0], counts[0] > 7000 && counts[0] < 8000 );
+    }
+}
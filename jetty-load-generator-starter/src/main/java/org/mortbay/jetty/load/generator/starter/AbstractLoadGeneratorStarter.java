@@ -24,17 +24,41 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import groovy.lang.GroovyShell;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.SimpleFlowControlStrategy;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.xml.XmlConfiguration;
+import org.mortbay.jetty.load.generator.FCGIClientTransportBuilder;
 import org.mortbay.jetty.load.generator.HTTP1ClientTransportBuilder;
 import org.mortbay.jetty.load.generator.HTTP2ClientTransportBuilder;
 import org.mortbay.jetty.load.generator.HTTPClientTransportBuilder;
 import org.mortbay.jetty.load.generator.LoadGenerator;
 import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.ResourceMix;
+import org.mortbay.jetty.load.generator.Scenario;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+import org.mortbay.jetty.load.generator.listeners.connection.ConnectionStatisticsListener;
+import org.mortbay.jetty.load.generator.listeners.http2.PushEffectivenessListener;
+import org.mortbay.jetty.load.generator.listeners.http2.StreamConcurrencyListener;
+import org.mortbay.jetty.load.generator.listeners.mix.ResourceMixListener;
 import org.mortbay.jetty.load.generator.listeners.responsetime.TimePerPathListener;
-
+import org.mortbay.jetty.load.generator.listeners.saturation.SaturationListener;
+import org.mortbay.jetty.load.generator.listeners.scenario.ScenarioListener;
+import org.mortbay.jetty.load.generator.listeners.session.SessionSetupListener;
+import org.mortbay.jetty.load.generator.listeners.streaming.StreamEventListener;
+import org.mortbay.jetty.load.generator.listeners.tls.TLSHandshakeListener;
+import org.mortbay.jetty.load.generator.listeners.websocket.MessageLatencyListener;
+import org.mortbay.jetty.load.generator.util.CachingSocketAddressResolver;
+import org.mortbay.jetty.load.generator.util.LinuxThreadAffinity;
+
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.nio.file.Files;
@@ -42,7 +66,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -60,6 +86,10 @@ public abstract class AbstractLoadGeneratorStarter
 
     private Resource resource;
 
+    private Scenario scenario;
+
+    private ResourceMix mix;
+
     public AbstractLoadGeneratorStarter( LoadGeneratorStarterArgs runnerArgs )
     {
         this.starterArgs = runnerArgs;
@@ -69,13 +99,17 @@ public abstract class AbstractLoadGeneratorStarter
         throws Exception
     {
 
-        Resource resourceProfile = getResource();
+        Scenario scenario = getScenario();
+        ResourceMix mix = getMix();
+        // A scenario or a mix replaces the resource profile.
+        Resource resourceProfile = scenario == null && mix == null ? getResource() : new Resource( "/" );
 
         LoadGenerator.Builder loadGeneratorBuilder = new LoadGenerator.Builder() //
             .host( starterArgs.getHost() ) //
             .port( starterArgs.getPort() ) //
             .iterationsPerThread( starterArgs.getRunIteration() ) //
             .usersPerThread( starterArgs.getUsers() ) //
+            .connectionsPerUser( starterArgs.getConnectionsPerUser() ) //
             .resourceRate( starterArgs.getTransactionRate() ) //
             .httpClientTransportBuilder( httpClientTransportBuilder() ) //
             .sslContextFactory( sslContextFactory() ) //
@@ -88,11 +122,77 @@ public abstract class AbstractLoadGeneratorStarter
             loadGeneratorBuilder.maxRequestsQueued( starterArgs.getMaxRequestsQueued() );
         }
 
+        if ( starterArgs.getMaxRequestsPerTree() > 0 )
+        {
+            loadGeneratorBuilder.maxRequestsPerTree( starterArgs.getMaxRequestsPerTree() );
+        }
+
+        if ( starterArgs.getLoginPath() != null )
+        {
+            loadGeneratorBuilder.login( new Resource( starterArgs.getLoginPath() ).method( starterArgs.getLoginMethod() ) ) //
+                .loginRefreshPeriod( starterArgs.getLoginRefresh(), TimeUnit.SECONDS ) //
+                .bearerTokenHeader( starterArgs.getBearerTokenHeader() );
+        }
+
+        if ( scenario != null )
+        {
+            loadGeneratorBuilder.scenario( scenario );
+            if ( starterArgs.isScenarioStats() )
+            {
+                loadGeneratorBuilder.listener( new ScenarioListener() );
+            }
+        }
+
+        if ( mix != null )
+        {
+            loadGeneratorBuilder.mix( mix );
+            if ( starterArgs.isMixStats() )
+            {
+                loadGeneratorBuilder.resourceListener( new ResourceMixListener() );
+            }
+        }
+
+        if ( starterArgs.getCacheEntries() > 0 )
+        {
+            loadGeneratorBuilder.cacheEntries( starterArgs.getCacheEntries() ) //
+                .returningVisitorRatio( starterArgs.getReturningVisitorRatio() );
+        }
+
+        for ( String localAddress : starterArgs.getLocalAddresses() )
+        {
+            loadGeneratorBuilder.localAddress( localAddress );
+        }
+
         if ( getExecutorService() != null )
         {
             loadGeneratorBuilder.executor( getExecutorService() );
         }
 
+        if ( starterArgs.isSharded() )
+        {
+            loadGeneratorBuilder.sharded( true );
+            if ( starterArgs.isCpuAffinity() )
+            {
+                if ( LinuxThreadAffinity.isSupported() )
+                {
+                    loadGeneratorBuilder.threadAffinity( new LinuxThreadAffinity() );
+                }
+                else
+                {
+                    logger.warn( "cpu affinity not supported on this platform, ignoring" );
+                }
+            }
+        }
+
+        ExecutorService dnsExecutor = null;
+        CachingSocketAddressResolver socketAddressResolver = null;
+        if ( starterArgs.getDnsTtl() >= 0 || starterArgs.getHostsFile() != null )
+        {
+            dnsExecutor = Executors.newCachedThreadPool();
+            socketAddressResolver = socketAddressResolver( dnsExecutor );
+            loadGeneratorBuilder.socketAddressResolver( socketAddressResolver );
+        }
+
         boolean runFor = false;
 
         if ( starterArgs.getRunningTime() > 0 )
@@ -115,11 +215,79 @@ public abstract class AbstractLoadGeneratorStarter
             loadGeneratorBuilder.listener( listener );
         }
 
+        for ( Connection.Listener listener : getConnectionListeners() )
+        {
+            loadGeneratorBuilder.connectionListener( listener );
+        }
+
+        if ( starterArgs.isTlsStats() )
+        {
+            TLSHandshakeListener tlsHandshakeListener = new TLSHandshakeListener();
+            loadGeneratorBuilder.connectionListener( tlsHandshakeListener ).listener( tlsHandshakeListener );
+        }
+
+        if ( starterArgs.isStreamStats() )
+        {
+            StreamConcurrencyListener streamConcurrencyListener = new StreamConcurrencyListener();
+            loadGeneratorBuilder.connectionListener( streamConcurrencyListener ).listener( streamConcurrencyListener );
+        }
+
+        if ( starterArgs.isPushStats() )
+        {
+            PushEffectivenessListener pushEffectivenessListener = new PushEffectivenessListener();
+            loadGeneratorBuilder.resourceListener( pushEffectivenessListener ).listener( pushEffectivenessListener );
+        }
+
+        if ( starterArgs.isWebSocketStats() )
+        {
+            MessageLatencyListener messageLatencyListener = new MessageLatencyListener();
+            loadGeneratorBuilder.resourceListener( messageLatencyListener ).listener( messageLatencyListener );
+        }
+
+        if ( starterArgs.isStreamEventStats() )
+        {
+            StreamEventListener streamEventListener = new StreamEventListener();
+            loadGeneratorBuilder.resourceListener( streamEventListener ).listener( streamEventListener );
+        }
+
+        if ( starterArgs.isConnectionStats() )
+        {
+            ConnectionStatisticsListener connectionStatisticsListener = new ConnectionStatisticsListener();
+            loadGeneratorBuilder.connectionListener( connectionStatisticsListener ) //
+                .listener( connectionStatisticsListener );
+        }
+
+        if ( starterArgs.isSessionStats() )
+        {
+            loadGeneratorBuilder.listener( new SessionSetupListener() );
+        }
+
+        if ( starterArgs.isSaturationStats() )
+        {
+            loadGeneratorBuilder.listener( new SaturationListener( starterArgs.getSaturationLagThreshold() ) );
+        }
+
         LoadGenerator loadGenerator = loadGeneratorBuilder.build();
         logger.info( "loadgenerator.config: {}", loadGenerator.getConfig().toString() );
         CompletableFuture<Void> cf = loadGenerator.begin();
-        cf.join();
+        try
+        {
+            cf.join();
+        }
+        finally
+        {
+            if ( dnsExecutor != null )
+            {
+                dnsExecutor.shutdown();
+            }
+        }
         logger.info( "load test done" );
+        if ( socketAddressResolver != null )
+        {
+            logger.info( "{}, lookup time:{}{}", socketAddressResolver, System.lineSeparator(), //
+                         new CollectorInformations( socketAddressResolver.getLatencyHistogram().getIntervalHistogram() ) //
+                             .toStringInNanos( true ) );
+        }
     }
 
     public void displayStats( LoadGenerator loadGenerator )
@@ -162,6 +330,16 @@ public abstract class AbstractLoadGeneratorStarter
         return new Request.Listener[0];
     }
 
+    protected Connection.Listener[] getConnectionListeners()
+    {
+        return new Connection.Listener[0];
+    }
+
+    public LoadGeneratorStarterArgs getStarterArgs()
+    {
+        return starterArgs;
+    }
+
     public ExecutorService getExecutorService()
     {
         return executorService;
@@ -215,6 +393,42 @@ public abstract class AbstractLoadGeneratorStarter
         throw new IllegalArgumentException( "not resource profile file defined" );
     }
 
+    public Scenario getScenario()
+        throws Exception
+    {
+        if ( scenario == null && starterArgs.getScenarioGroovyPath() != null )
+        {
+            try (Reader reader = Files.newBufferedReader( Paths.get( starterArgs.getScenarioGroovyPath() ) ))
+            {
+                scenario = (Scenario) evaluateScript( reader );
+            }
+        }
+        return scenario;
+    }
+
+    public void setScenario( Scenario scenario )
+    {
+        this.scenario = scenario;
+    }
+
+    public ResourceMix getMix()
+        throws Exception
+    {
+        if ( mix == null && starterArgs.getMixGroovyPath() != null )
+        {
+            try (Reader reader = Files.newBufferedReader( Paths.get( starterArgs.getMixGroovyPath() ) ))
+            {
+                mix = (ResourceMix) evaluateScript( reader );
+            }
+        }
+        return mix;
+    }
+
+    public void setMix( ResourceMix mix )
+    {
+        this.mix = mix;
+    }
+
     protected static Resource evaluateJson( Path profilePath )
         throws Exception
     {
@@ -263,7 +477,18 @@ public abstract class AbstractLoadGeneratorStarter
             case H2C:
             case H2:
             {
-                return new HTTP2ClientTransportBuilder().selectors( starterArgs.getSelectors() );
+                return new HTTP2ClientTransportBuilder() //
+                    .selectors( starterArgs.getSelectors() ) //
+                    .maxConcurrentStreams( starterArgs.getMaxConcurrentStreams() ) //
+                    .sessionRecvWindow( starterArgs.getSessionRecvWindow() ) //
+                    .streamRecvWindow( starterArgs.getStreamRecvWindow() ) //
+                    .flowControlStrategyFactory( flowControlStrategyFactory() );
+            }
+            case FCGI:
+            {
+                return new FCGIClientTransportBuilder() //
+                    .selectors( starterArgs.getSelectors() ) //
+                    .scriptRoot( starterArgs.getScriptRoot() );
             }
             default:
             {
@@ -274,10 +499,69 @@ public abstract class AbstractLoadGeneratorStarter
         throw new IllegalArgumentException( "unknown httpClientTransportBuilder" );
     }
 
+    public FlowControlStrategy.Factory flowControlStrategyFactory()
+    {
+        switch ( starterArgs.getFlowControl() )
+        {
+            case SIMPLE:
+            {
+                return () -> new SimpleFlowControlStrategy();
+            }
+            case BUFFERING:
+            {
+                float bufferRatio = starterArgs.getFlowControlBufferRatio();
+                return () -> new BufferingFlowControlStrategy( bufferRatio );
+            }
+            default:
+            {
+                throw new IllegalArgumentException( "unknown flowControl" );
+            }
+        }
+    }
+
+    public CachingSocketAddressResolver socketAddressResolver( Executor executor )
+        throws IOException
+    {
+        long ttl = Math.max( 0, starterArgs.getDnsTtl() );
+        long negativeTtl = starterArgs.getDnsNegativeTtl();
+        if ( starterArgs.getHostsFile() == null )
+        {
+            return new CachingSocketAddressResolver( executor, ttl, negativeTtl, TimeUnit.SECONDS );
+        }
+        CachingSocketAddressResolver.Hosts hosts =
+            new CachingSocketAddressResolver.Hosts().load( Paths.get( starterArgs.getHostsFile() ) );
+        return new CachingSocketAddressResolver( executor, hosts, ttl, negativeTtl, TimeUnit.SECONDS );
+    }
+
     public SslContextFactory sslContextFactory()
     {
         // FIXME make this more configurable
+        LoadGeneratorStarterArgs.TLSResumption tlsResumption = starterArgs.getTlsResumption();
+        int sessionCacheSize = starterArgs.getTlsSessionCacheSize();
+        // session tickets are configured by LoadGeneratorStarter.main(), before any SSLContext is created
+
         SslContextFactory sslContextFactory = new SslContextFactory( true );
+        // SslContextFactory only tunes the server session context, and only exposes
+        // the SSLContext once started, hence a listener rather than overriding doStart()
+        sslContextFactory.addLifeCycleListener( new AbstractLifeCycle.AbstractLifeCycleListener()
+        {
+            @Override
+            public void lifeCycleStarted( LifeCycle event )
+            {
+                SSLSessionContext sessionContext = sslContextFactory.getSslContext().getClientSessionContext();
+                if ( tlsResumption == LoadGeneratorStarterArgs.TLSResumption.FORCED )
+                {
+                    // 0 means unlimited size and no timeout
+                    sessionContext.setSessionCacheSize( 0 );
+                    sessionContext.setSessionTimeout( 0 );
+                }
+                else if ( sessionCacheSize >= 0 )
+                {
+                    sessionContext.setSessionCacheSize( sessionCacheSize );
+                }
+            }
+        } );
+        sslContextFactory.setSessionCachingEnabled( tlsResumption != LoadGeneratorStarterArgs.TLSResumption.NONE );
         return sslContextFactory;
     }
 
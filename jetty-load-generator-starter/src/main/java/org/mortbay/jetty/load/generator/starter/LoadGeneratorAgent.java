@@ -0,0 +1,503 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.starter;
+
+import com.beust.jcommander.JCommander;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.report.GlobalSummaryListener;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Runs a {@link LoadGenerator} on behalf of a {@link LoadGeneratorCoordinator}.</p>
+ * <p>The agent exposes the following HTTP endpoints:</p>
+ * <ul>
+ * <li>{@code POST /agent/prepare}: receives the starter arguments and the resource profile as json</li>
+ * <li>{@code POST /agent/start?time=xxx}: starts the load at the given time (epoch millis in the agent clock)</li>
+ * <li>{@code POST /agent/stop}: interrupts the load, which is then reported as done</li>
+ * <li>{@code GET /agent/result}: returns the {@link Result} of the load as json</li>
+ * <li>{@code GET /agent/time}: returns the agent current time (epoch millis) as plain text</li>
+ * </ul>
+ * <p>An agent runs one load at a time and can be prepared again once the previous load is done.</p>
+ */
+public class LoadGeneratorAgent
+{
+
+    private static final Logger LOGGER = Log.getLogger( LoadGeneratorAgent.class );
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private int port;
+
+    private Server server;
+
+    private ServerConnector connector;
+
+    private LoadGeneratorStarter starter;
+
+    private GlobalSummaryListener globalSummaryListener;
+
+    private ScheduledFuture<?> start;
+
+    private LoadGenerator loadGenerator;
+
+    private boolean interrupted;
+
+    private Result result = new Result();
+
+    public LoadGeneratorAgent( int port )
+    {
+        this.port = port;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public LoadGeneratorAgent start()
+        throws Exception
+    {
+        QueuedThreadPool serverThreads = new QueuedThreadPool();
+        serverThreads.setName( "agent" );
+        server = new Server( serverThreads );
+
+        connector = new ServerConnector( server, new HttpConnectionFactory( new HttpConfiguration() ) );
+        connector.setPort( port );
+        server.addConnector( connector );
+
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet( new ServletHolder( new AgentServlet() ), "/agent/*" );
+        server.setHandler( context );
+
+        server.start();
+
+        this.port = connector.getLocalPort();
+
+        LOGGER.info( "LoadGeneratorAgent started on port {}", this.port );
+
+        return this;
+    }
+
+    public void stop()
+        throws Exception
+    {
+        interrupt();
+        scheduler.shutdownNow();
+        server.stop();
+    }
+
+    public void join()
+        throws InterruptedException
+    {
+        server.join();
+    }
+
+    protected synchronized void prepare( LoadGeneratorStarterArgs starterArgs, Resource resource )
+    {
+        if ( result.getStatus() == Status.SCHEDULED || result.getStatus() == Status.RUNNING )
+        {
+            throw new IllegalStateException( "load already " + result.getStatus() );
+        }
+        globalSummaryListener = new GlobalSummaryListener( starterArgs.isCoordinatedOmissionCorrection() );
+        starter = new LoadGeneratorStarter( starterArgs )
+        {
+            @Override
+            protected Resource.Listener[] getResourceListeners()
+            {
+                return new Resource.Listener[]{ globalSummaryListener };
+            }
+
+            @Override
+            protected LoadGenerator.Listener[] getLoadGeneratorListeners()
+            {
+                // the summary listener gets the rate for the coordinated omission correction
+                return new LoadGenerator.Listener[]{ (LoadGenerator.BeginListener) LoadGeneratorAgent.this::onBegin,
+                    globalSummaryListener };
+            }
+        };
+        starter.setResource( resource );
+        loadGenerator = null;
+        interrupted = false;
+        result = new Result();
+        result.setStatus( Status.PREPARED );
+        LOGGER.info( "prepared load to {}:{}", starterArgs.getHost(), starterArgs.getPort() );
+    }
+
+    protected synchronized void start( long time )
+    {
+        if ( result.getStatus() != Status.PREPARED )
+        {
+            throw new IllegalStateException( "load not prepared but " + result.getStatus() );
+        }
+        long delay = time - System.currentTimeMillis();
+        if ( delay < 0 )
+        {
+            LOGGER.warn( "start time {} already passed by {} ms", time, -delay );
+        }
+        result.setStatus( Status.SCHEDULED );
+        start = scheduler.schedule( this::run, delay, TimeUnit.MILLISECONDS );
+    }
+
+    private void run()
+    {
+        LoadGeneratorStarter starter;
+        synchronized ( this )
+        {
+            if ( result.getStatus() != Status.SCHEDULED )
+            {
+                // interrupted while the start was due
+                return;
+            }
+            starter = this.starter;
+            result.setStatus( Status.RUNNING );
+            result.setBeginTime( System.currentTimeMillis() );
+        }
+        Throwable failure = null;
+        try
+        {
+            starter.run();
+        }
+        catch ( Throwable x )
+        {
+            failure = x;
+        }
+        synchronized ( this )
+        {
+            result.setEndTime( System.currentTimeMillis() );
+            Histogram responseTimes = globalSummaryListener.getResponseTimeHistogram().getIntervalHistogram();
+            result.setRequests( responseTimes.getTotalCount() );
+            result.setResponseTimeHistogram( encode( responseTimes ) );
+            result.setLatencyTimeHistogram(
+                encode( globalSummaryListener.getLatencyTimeHistogram().getIntervalHistogram() ) );
+            if ( globalSummaryListener.isCoordinatedOmissionCorrection() )
+            {
+                result.setCorrectedResponseTimeHistogram(
+                    encode( globalSummaryListener.getCorrectedResponseTimeHistogram().getIntervalHistogram() ) );
+                result.setCorrectedLatencyTimeHistogram(
+                    encode( globalSummaryListener.getCorrectedLatencyTimeHistogram().getIntervalHistogram() ) );
+            }
+            // an interrupted load fails with the requests it aborted, but stopped as requested
+            if ( failure != null && !interrupted )
+            {
+                LOGGER.warn( "load failed", failure );
+                result.setFailure( String.valueOf( failure ) );
+                result.setStatus( Status.FAILED );
+            }
+            else
+            {
+                result.setStatus( Status.DONE );
+            }
+        }
+    }
+
+    private synchronized void onBegin( LoadGenerator loadGenerator )
+    {
+        this.loadGenerator = loadGenerator;
+        if ( interrupted )
+        {
+            loadGenerator.interrupt();
+        }
+    }
+
+    protected synchronized void interrupt()
+    {
+        if ( result.getStatus() == Status.SCHEDULED )
+        {
+            start.cancel( false );
+            result.setStatus( Status.INTERRUPTED );
+        }
+        else if ( result.getStatus() == Status.RUNNING )
+        {
+            // if not begun yet, interrupted as soon as it begins
+            interrupted = true;
+            if ( loadGenerator != null )
+            {
+                loadGenerator.interrupt();
+            }
+        }
+    }
+
+    protected synchronized Result getResult()
+    {
+        return result;
+    }
+
+    static String encode( Histogram histogram )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( histogram.getNeededByteBufferCapacity() );
+        int length = histogram.encodeIntoCompressedByteBuffer( buffer );
+        return Base64.getEncoder().encodeToString( Arrays.copyOf( buffer.array(), length ) );
+    }
+
+    static Histogram decode( String histogram )
+    {
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( Base64.getDecoder().decode( histogram ) );
+            return Histogram.decodeFromCompressedByteBuffer( buffer, 0 );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalArgumentException( e );
+        }
+    }
+
+    private class AgentServlet
+        extends HttpServlet
+    {
+        private final ObjectMapper mapper =
+            new ObjectMapper().disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+
+        @Override
+        protected void doGet( HttpServletRequest req, HttpServletResponse resp )
+            throws ServletException, IOException
+        {
+            if ( "/time".equals( req.getPathInfo() ) )
+            {
+                // used by the coordinator to estimate the clock offset, see ClockOffset
+                resp.setContentType( "text/plain" );
+                resp.getWriter().print( System.currentTimeMillis() );
+                return;
+            }
+            if ( "/result".equals( req.getPathInfo() ) )
+            {
+                resp.setContentType( "application/json" );
+                mapper.writeValue( resp.getOutputStream(), getResult() );
+                return;
+            }
+            resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+        }
+
+        @Override
+        protected void doPost( HttpServletRequest req, HttpServletResponse resp )
+            throws ServletException, IOException
+        {
+            String pathInfo = req.getPathInfo();
+            LOGGER.debug( "doPost: {}", pathInfo );
+            try
+            {
+                if ( "/prepare".equals( pathInfo ) )
+                {
+                    JsonNode prepare = mapper.readTree( req.getInputStream() );
+                    String[] args = mapper.treeToValue( prepare.get( "args" ), String[].class );
+                    Resource resource = mapper.treeToValue( prepare.get( "resource" ), Resource.class );
+                    LoadGeneratorStarterArgs starterArgs = new LoadGeneratorStarterArgs();
+                    new JCommander( starterArgs, args );
+                    prepare( starterArgs, resource );
+                }
+                else if ( "/start".equals( pathInfo ) )
+                {
+                    start( Long.parseLong( req.getParameter( "time" ) ) );
+                }
+                else if ( "/stop".equals( pathInfo ) )
+                {
+                    interrupt();
+                }
+                else
+                {
+                    resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+                    return;
+                }
+                resp.setStatus( HttpServletResponse.SC_NO_CONTENT );
+            }
+            catch ( IllegalStateException e )
+            {
+                resp.sendError( HttpServletResponse.SC_CONFLICT, e.getMessage() );
+            }
+            catch ( RuntimeException e )
+            {
+                LOGGER.warn( "bad request " + pathInfo, e );
+                resp.sendError( HttpServletResponse.SC_BAD_REQUEST, String.valueOf( e ) );
+            }
+        }
+    }
+
+    public enum Status
+    {
+        IDLE, PREPARED, SCHEDULED, RUNNING, INTERRUPTED, DONE, FAILED
+    }
+
+    /**
+     * The result of a load run by an agent, histograms being encoded with
+     * {@link Histogram#encodeIntoCompressedByteBuffer(ByteBuffer)} in base64.
+     */
+    public static class Result
+    {
+        private Status status = Status.IDLE;
+
+        private String failure;
+
+        private long beginTime;
+
+        private long endTime;
+
+        private long requests;
+
+        private String responseTimeHistogram;
+
+        private String latencyTimeHistogram;
+
+        private String correctedResponseTimeHistogram;
+
+        private String correctedLatencyTimeHistogram;
+
+        public Status getStatus()
+        {
+            return status;
+        }
+
+        public void setStatus( Status status )
+        {
+            this.status = status;
+        }
+
+        public String getFailure()
+        {
+            return failure;
+        }
+
+        public void setFailure( String failure )
+        {
+            this.failure = failure;
+        }
+
+        /**
+         * @return the time (epoch millis) the load began on the agent
+         */
+        public long getBeginTime()
+        {
+            return beginTime;
+        }
+
+        public void setBeginTime( long beginTime )
+        {
+            this.beginTime = beginTime;
+        }
+
+        /**
+         * @return the time (epoch millis) the load ended on the agent
+         */
+        public long getEndTime()
+        {
+            return endTime;
+        }
+
+        public void setEndTime( long endTime )
+        {
+            this.endTime = endTime;
+        }
+
+        public long getRequests()
+        {
+            return requests;
+        }
+
+        public void setRequests( long requests )
+        {
+            this.requests = requests;
+        }
+
+        public String getResponseTimeHistogram()
+        {
+            return responseTimeHistogram;
+        }
+
+        public void setResponseTimeHistogram( String responseTimeHistogram )
+        {
+            this.responseTimeHistogram = responseTimeHistogram;
+        }
+
+        public String getLatencyTimeHistogram()
+        {
+            return latencyTimeHistogram;
+        }
+
+        public void setLatencyTimeHistogram( String latencyTimeHistogram )
+        {
+            this.latencyTimeHistogram = latencyTimeHistogram;
+        }
+
+        /**
+         * @return the response time histogram corrected for coordinated omission, or null without correction
+         */
+        public String getCorrectedResponseTimeHistogram()
+        {
+            return correctedResponseTimeHistogram;
+        }
+
+        public void setCorrectedResponseTimeHistogram( String correctedResponseTimeHistogram )
+        {
+            this.correctedResponseTimeHistogram = correctedResponseTimeHistogram;
+        }
+
+        /**
+         * @return the latency time histogram corrected for coordinated omission, or null without correction
+         */
+        public String getCorrectedLatencyTimeHistogram()
+        {
+            return correctedLatencyTimeHistogram;
+        }
+
+        public void setCorrectedLatencyTimeHistogram( String correctedLatencyTimeHistogram )
+        {
+            this.correctedLatencyTimeHistogram = correctedLatencyTimeHistogram;
+        }
+
+        /**
+         * @return whether the load is over on the agent
+         */
+        public boolean isComplete()
+        {
+            return status == Status.DONE || status == Status.FAILED || status == Status.INTERRUPTED;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Result{" + "status=" + status + ", failure='" + failure + '\'' + ", beginTime=" + beginTime
+                + ", endTime=" + endTime + ", requests=" + requests + '}';
+        }
+    }
+}
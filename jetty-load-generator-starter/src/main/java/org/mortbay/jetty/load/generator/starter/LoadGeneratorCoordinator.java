@@ -0,0 +1,391 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.starter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.ClockOffset;
+import org.mortbay.jetty.load.generator.listeners.HistogramConstants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Coordinates the loads of several {@link LoadGeneratorAgent}s so that they act as a single load generator.</p>
+ * <p>The coordinator ships the starter arguments and the resource profile to all the agents,
+ * then once all the agents are prepared, starts them all at a common time, waits for their completion
+ * and merges their results.
+ * If an agent fails, or if {@link #stop()} is called, the load of all the agents is interrupted.</p>
+ * <p>The clock offset of each agent is estimated before the start, so that the common start time
+ * is converted to the clock of each agent, and the agents begin and end times are converted back
+ * to the coordinator clock.</p>
+ */
+public class LoadGeneratorCoordinator
+{
+
+    private static final Logger LOGGER = Log.getLogger( LoadGeneratorCoordinator.class );
+
+    private final ObjectMapper mapper = new ObjectMapper() //
+        .disable( SerializationFeature.FAIL_ON_EMPTY_BEANS ) //
+        .disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+
+    private final List<String> agents;
+
+    private final HttpClient httpClient = new HttpClient();
+
+    private final Map<String, ClockOffset> clockOffsets = new LinkedHashMap<>();
+
+    private int clockSamples = 8;
+
+    private long startDelay = TimeUnit.SECONDS.toMillis( 1 );
+
+    private long pollPeriod = 500;
+
+    /**
+     * @param agents the agents addresses (i.e. host:port)
+     */
+    public LoadGeneratorCoordinator( List<String> agents )
+    {
+        if ( agents.isEmpty() )
+        {
+            throw new IllegalArgumentException( "no agents" );
+        }
+        this.agents = new ArrayList<>( agents );
+    }
+
+    public List<String> getAgents()
+    {
+        return agents;
+    }
+
+    public long getStartDelay()
+    {
+        return startDelay;
+    }
+
+    /**
+     * @param startDelay the delay (in millis) between all the agents being prepared and the common start
+     */
+    public void setStartDelay( long startDelay )
+    {
+        this.startDelay = startDelay;
+    }
+
+    public long getPollPeriod()
+    {
+        return pollPeriod;
+    }
+
+    /**
+     * @param pollPeriod the period (in millis) to poll the agents for their result
+     */
+    public void setPollPeriod( long pollPeriod )
+    {
+        this.pollPeriod = pollPeriod;
+    }
+
+    public int getClockSamples()
+    {
+        return clockSamples;
+    }
+
+    /**
+     * @param clockSamples the number of samples to estimate the clock offset of each agent
+     */
+    public void setClockSamples( int clockSamples )
+    {
+        this.clockSamples = clockSamples;
+    }
+
+    /**
+     * @return the clock offset of each agent, estimated by the last run
+     */
+    public Map<String, ClockOffset> getClockOffsets()
+    {
+        return clockOffsets;
+    }
+
+    /**
+     * Runs the load on all the agents and waits for its completion.
+     *
+     * @param args the starter arguments to run the load with
+     * @param resource the resource profile
+     * @return the merged results of the agents
+     * @throws Exception if an agent cannot be prepared or started, or fails to report its result
+     */
+    public Result run( List<String> args, Resource resource )
+        throws Exception
+    {
+        httpClient.start();
+        try
+        {
+            Map<String, Object> prepare = new HashMap<>();
+            prepare.put( "args", args );
+            prepare.put( "resource", resource );
+            String content = mapper.writeValueAsString( prepare );
+            clockOffsets.clear();
+            for ( String agent : agents )
+            {
+                send( agent, "/prepare", content );
+                ClockOffset clockOffset = ClockOffset.estimate( httpClient, "http://" + agent + "/agent/time", clockSamples );
+                LOGGER.info( "agent {} {}", agent, clockOffset );
+                clockOffsets.put( agent, clockOffset );
+            }
+
+            // all the agents are prepared, they can start together
+            long startTime = System.currentTimeMillis() + startDelay;
+            for ( String agent : agents )
+            {
+                send( agent, "/start?time=" + clockOffsets.get( agent ).toRemoteTime( startTime ), null );
+            }
+            LOGGER.info( "{} agents starting at {}", agents.size(), startTime );
+
+            Map<String, LoadGeneratorAgent.Result> results = new LinkedHashMap<>();
+            boolean interrupted = false;
+            while ( results.size() < agents.size() )
+            {
+                Thread.sleep( pollPeriod );
+                for ( String agent : agents )
+                {
+                    if ( results.containsKey( agent ) )
+                    {
+                        continue;
+                    }
+                    LoadGeneratorAgent.Result result = getResult( agent );
+                    if ( result.isComplete() )
+                    {
+                        ClockOffset clockOffset = clockOffsets.get( agent );
+                        if ( result.getBeginTime() > 0 )
+                        {
+                            result.setBeginTime( clockOffset.toLocalTime( result.getBeginTime() ) );
+                            result.setEndTime( clockOffset.toLocalTime( result.getEndTime() ) );
+                        }
+                        LOGGER.info( "agent {} completed: {}", agent, result );
+                        results.put( agent, result );
+                        if ( result.getStatus() == LoadGeneratorAgent.Status.FAILED && !interrupted )
+                        {
+                            interrupted = true;
+                            stop();
+                        }
+                    }
+                }
+            }
+            return new Result( results );
+        }
+        catch ( Exception x )
+        {
+            stop();
+            throw x;
+        }
+        finally
+        {
+            httpClient.stop();
+        }
+    }
+
+    /**
+     * Interrupts the load of all the agents.
+     */
+    public void stop()
+    {
+        for ( String agent : agents )
+        {
+            try
+            {
+                send( agent, "/stop", null );
+            }
+            catch ( Exception x )
+            {
+                LOGGER.warn( "cannot stop agent " + agent, x );
+            }
+        }
+    }
+
+    private void send( String agent, String path, String content )
+        throws Exception
+    {
+        Request request = httpClient.newRequest( "http://" + agent + "/agent" + path ) //
+            .method( HttpMethod.POST ) //
+            .timeout( 30, TimeUnit.SECONDS );
+        if ( content != null )
+        {
+            request.content( new StringContentProvider( "application/json", content, StandardCharsets.UTF_8 ) );
+        }
+        ContentResponse response = request.send();
+        if ( response.getStatus() != HttpStatus.NO_CONTENT_204 )
+        {
+            throw new IllegalStateException(
+                "agent " + agent + " " + path + " failed: " + response.getStatus() + " " + response.getReason() );
+        }
+    }
+
+    private LoadGeneratorAgent.Result getResult( String agent )
+        throws Exception
+    {
+        ContentResponse response = httpClient.newRequest( "http://" + agent + "/agent/result" ) //
+            .timeout( 30, TimeUnit.SECONDS ) //
+            .send();
+        if ( response.getStatus() != HttpStatus.OK_200 )
+        {
+            throw new IllegalStateException( "agent " + agent + " result failed: " + response.getStatus() );
+        }
+        return mapper.readValue( response.getContent(), LoadGeneratorAgent.Result.class );
+    }
+
+    /**
+     * The results of all the agents, merged.
+     */
+    public static class Result
+    {
+        private final Map<String, LoadGeneratorAgent.Result> agentResults;
+
+        private final Histogram responseTimeHistogram;
+
+        private final Histogram latencyTimeHistogram;
+
+        private final Histogram correctedResponseTimeHistogram;
+
+        private final Histogram correctedLatencyTimeHistogram;
+
+        private Result( Map<String, LoadGeneratorAgent.Result> agentResults )
+        {
+            this.agentResults = agentResults;
+            this.responseTimeHistogram = new Histogram( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+                                                        HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+                                                        HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+            this.latencyTimeHistogram = new Histogram( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+                                                       HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+                                                       HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+            this.correctedResponseTimeHistogram = new Histogram( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+                                                                 HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+                                                                 HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+            this.correctedLatencyTimeHistogram = new Histogram( HistogramConstants.LOWEST_DISCERNIBLE_VALUE, //
+                                                                HistogramConstants.HIGHEST_TRACKABLE_VALUE, //
+                                                                HistogramConstants.NUMBER_OF_SIGNIFICANT_VALUE_DIGITS );
+            for ( LoadGeneratorAgent.Result result : agentResults.values() )
+            {
+                if ( result.getResponseTimeHistogram() != null )
+                {
+                    responseTimeHistogram.add( LoadGeneratorAgent.decode( result.getResponseTimeHistogram() ) );
+                }
+                if ( result.getLatencyTimeHistogram() != null )
+                {
+                    latencyTimeHistogram.add( LoadGeneratorAgent.decode( result.getLatencyTimeHistogram() ) );
+                }
+                if ( result.getCorrectedResponseTimeHistogram() != null )
+                {
+                    correctedResponseTimeHistogram.add(
+                        LoadGeneratorAgent.decode( result.getCorrectedResponseTimeHistogram() ) );
+                }
+                if ( result.getCorrectedLatencyTimeHistogram() != null )
+                {
+                    correctedLatencyTimeHistogram.add(
+                        LoadGeneratorAgent.decode( result.getCorrectedLatencyTimeHistogram() ) );
+                }
+            }
+        }
+
+        /**
+         * @return the result of each agent
+         */
+        public Map<String, LoadGeneratorAgent.Result> getAgentResults()
+        {
+            return agentResults;
+        }
+
+        /**
+         * @return the response time (in nanos) histogram of all the agents
+         */
+        public Histogram getResponseTimeHistogram()
+        {
+            return responseTimeHistogram;
+        }
+
+        /**
+         * @return the latency time (in nanos) histogram of all the agents
+         */
+        public Histogram getLatencyTimeHistogram()
+        {
+            return latencyTimeHistogram;
+        }
+
+        /**
+         * @return the response time (in nanos) histogram of all the agents corrected for coordinated omission,
+         * empty without correction
+         */
+        public Histogram getCorrectedResponseTimeHistogram()
+        {
+            return correctedResponseTimeHistogram;
+        }
+
+        /**
+         * @return the latency time (in nanos) histogram of all the agents corrected for coordinated omission,
+         * empty without correction
+         */
+        public Histogram getCorrectedLatencyTimeHistogram()
+        {
+            return correctedLatencyTimeHistogram;
+        }
+
+        /**
+         * @return the number of requests of all the agents
+         */
+        public long getRequests()
+        {
+            return agentResults.values().stream().mapToLong( LoadGeneratorAgent.Result::getRequests ).sum();
+        }
+
+        /**
+         * @return whether all the agents completed their load successfully
+         */
+        public boolean isSucceeded()
+        {
+            return agentResults.values().stream().allMatch( r -> r.getStatus() == LoadGeneratorAgent.Status.DONE );
+        }
+
+        /**
+         * @return the difference (in millis, in the coordinator clock) between the first and the last agent
+         * beginning their load
+         */
+        public long getBeginTimeSpread()
+        {
+            long min = agentResults.values().stream().mapToLong( LoadGeneratorAgent.Result::getBeginTime ) //
+                .filter( time -> time > 0 ).min().orElse( 0 );
+            long max = agentResults.values().stream().mapToLong( LoadGeneratorAgent.Result::getBeginTime ) //
+                .filter( time -> time > 0 ).max().orElse( 0 );
+            return max - min;
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package org.mortbay.jetty.load.generator.starter;
 
 import com.beust.jcommander.JCommander;
+import org.mortbay.jetty.load.generator.listeners.CollectorInformations;
+
+import java.util.Arrays;
 
 /**
  *
@@ -54,9 +57,30 @@ public class LoadGeneratorStarter
             return;
         }
 
+        if ( runnerArgs.getTlsSessionTickets() != null )
+        {
+            // read by the JDK when the first SSLContext is created, so set before anything else
+            // only honored by JDK versions supporting client session tickets
+            System.setProperty( "jdk.tls.client.enableSessionTicketExtension",
+                                runnerArgs.getTlsSessionTickets().toString() );
+        }
+
         try
         {
+            if ( runnerArgs.getAgentPort() >= 0 )
+            {
+                new LoadGeneratorAgent( runnerArgs.getAgentPort() ).start().join();
+                return;
+            }
+
             LoadGeneratorStarter runner = new LoadGeneratorStarter( runnerArgs );
+
+            if ( !runnerArgs.getAgents().isEmpty() )
+            {
+                coordinate( runnerArgs, runner, args );
+                return;
+            }
+
             runner.run();
 
             if (runnerArgs.isDisplayStatsAtEnd())
@@ -73,5 +97,39 @@ public class LoadGeneratorStarter
         }
     }
 
+    private static void coordinate( LoadGeneratorStarterArgs runnerArgs, LoadGeneratorStarter runner, String[] args )
+        throws Exception
+    {
+        LoadGeneratorCoordinator coordinator = new LoadGeneratorCoordinator( runnerArgs.getAgents() );
+        coordinator.setStartDelay( runnerArgs.getStartDelay() );
+        // the profile is shipped to the agents, which ignore the coordination arguments
+        LoadGeneratorCoordinator.Result result = coordinator.run( Arrays.asList( args ), runner.getResource() );
+        StringBuilder message = new StringBuilder( "--------------------------------------" ) //
+            .append( System.lineSeparator() ) //
+            .append( "   Coordinated Load Summary           " ).append( System.lineSeparator() ) //
+            .append( "--------------------------------------" ).append( System.lineSeparator() ) //
+            .append( "agents=" ).append( result.getAgentResults().size() ) //
+            .append( ", succeeded=" ).append( result.isSucceeded() ) //
+            .append( ", requests=" ).append( result.getRequests() ) //
+            .append( ", begin time spread=" ).append( result.getBeginTimeSpread() ).append( " ms" ) //
+            .append( System.lineSeparator() ) //
+            .append( "response time:" ).append( System.lineSeparator() ) //
+            .append( new CollectorInformations( result.getResponseTimeHistogram() ).toStringInNanos( true ) ) //
+            .append( System.lineSeparator() ) //
+            .append( "latency time:" ).append( System.lineSeparator() ) //
+            .append( new CollectorInformations( result.getLatencyTimeHistogram() ).toStringInNanos( true ) ) //
+            .append( System.lineSeparator() );
+        if ( result.getCorrectedResponseTimeHistogram().getTotalCount() > 0 )
+        {
+            message.append( "response time corrected for coordinated omission:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( result.getCorrectedResponseTimeHistogram() ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() ) //
+                .append( "latency time corrected for coordinated omission:" ).append( System.lineSeparator() ) //
+                .append( new CollectorInformations( result.getCorrectedLatencyTimeHistogram() ).toStringInNanos( true ) ) //
+                .append( System.lineSeparator() );
+        }
+        System.out.println( message );
+    }
+
 
 }
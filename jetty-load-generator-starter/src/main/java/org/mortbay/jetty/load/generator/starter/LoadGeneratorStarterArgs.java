@@ -18,6 +18,8 @@
 
 package org.mortbay.jetty.load.generator.starter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -58,6 +60,30 @@ public class LoadGeneratorStarterArgs
     @Parameter( names = { "--selectors", "-s" }, description = "HttpClientTransport selectors" )
     private int selectors = 1;
 
+    @Parameter( names = { "--local-addresses", "-la" }, description = "Comma separated local addresses to bind to, round robin per HttpClient (i.e. 127.0.0.1,127.0.0.2)" )
+    private List<String> localAddresses = new ArrayList<>();
+
+    @Parameter( names = { "--script-root", "-sr" }, description = "FastCGI script root directory on the server" )
+    private String scriptRoot = "";
+
+    @Parameter( names = { "--dns-ttl", "-dnst" }, description = "Cache DNS lookups for this number of seconds, resolving asynchronously (disabled if negative)" )
+    private long dnsTtl = -1;
+
+    @Parameter( names = { "--dns-negative-ttl", "-dnsnt" }, description = "Cache failed DNS lookups for this number of seconds" )
+    private long dnsNegativeTtl = 5;
+
+    @Parameter( names = { "--hosts-file", "-hf" }, description = "Resolve host names from this hosts file instead of DNS" )
+    private String hostsFile;
+
+    @Parameter( names = { "--agent-port", "-ap" }, description = "Run as an agent waiting for a coordinator on this port" )
+    private int agentPort = -1;
+
+    @Parameter( names = { "--agents", "-ag" }, description = "Comma separated agents (host:port) to coordinate, running the load on all of them" )
+    private List<String> agents = new ArrayList<>();
+
+    @Parameter( names = { "--start-delay", "-sd" }, description = "Delay in milliseconds between all agents being prepared and their common start" )
+    private long startDelay = 1000;
+
     @Parameter( names = { "--running-time", "-rt" }, description = "Running Time" )
     private long runningTime = 1;
 
@@ -100,6 +126,102 @@ public class LoadGeneratorStarterArgs
     @Parameter( names = { "--max-requests-queued", "-mrq" }, description = "Max Requests Queued" )
     private int maxRequestsQueued = -1;
 
+    @Parameter( names = { "--connections-per-user", "-cpu" }, description = "Connections per user (HttpClient instances per user)" )
+    private int connectionsPerUser = 1;
+
+    @Parameter( names = { "--max-concurrent-streams", "-mcs" }, description = "Max concurrent streams per HTTP/2 connection" )
+    private int maxConcurrentStreams = 1024;
+
+    @Parameter( names = { "--flow-control", "-fc" }, description = "HTTP/2 flow control strategy (simple, buffering)" )
+    private String flowControl = "buffering";
+
+    @Parameter( names = { "--flow-control-buffer-ratio", "-fcbr" }, description = "HTTP/2 buffering flow control ratio of the recv window" )
+    private float flowControlBufferRatio = 0.5F;
+
+    @Parameter( names = { "--session-recv-window", "-srw" }, description = "HTTP/2 initial session recv window" )
+    private int sessionRecvWindow = 16 * 1024 * 1024;
+
+    @Parameter( names = { "--stream-recv-window", "-strw" }, description = "HTTP/2 initial stream recv window" )
+    private int streamRecvWindow = 16 * 1024 * 1024;
+
+    @Parameter( names = { "--tls-resumption", "-tlsr" }, description = "TLS session resumption (none, default, forced)" )
+    private String tlsResumption = "default";
+
+    @Parameter( names = { "--tls-session-cache-size", "-tlscs" }, description = "TLS client session cache size (0 for unlimited)" )
+    private int tlsSessionCacheSize = -1;
+
+    @Parameter( names = { "--tls-session-tickets", "-tlst" }, description = "Enable TLS session tickets (true/false), JDK default if not set; read once per JVM, so also pass it on the command line of the agents", arity = 1 )
+    private Boolean tlsSessionTickets;
+
+    @Parameter( names = { "--tls-stats", "-tlss" }, description = "Collect and display TLS handshake statistics" )
+    private boolean tlsStats;
+
+    @Parameter( names = { "--stream-stats", "-sts" }, description = "Collect and display HTTP/2 stream concurrency statistics" )
+    private boolean streamStats;
+
+    @Parameter( names = { "--push-stats", "-pss" }, description = "Collect and display HTTP/2 server push statistics" )
+    private boolean pushStats;
+
+    @Parameter( names = { "--websocket-stats", "-wss" }, description = "Collect and display WebSocket message statistics" )
+    private boolean webSocketStats;
+
+    @Parameter( names = { "--stream-event-stats", "-ses" }, description = "Collect and display streaming resources event statistics" )
+    private boolean streamEventStats;
+
+    @Parameter( names = { "--connection-stats", "-cs" }, description = "Collect and display per connection bytes, requests and lifetime statistics" )
+    private boolean connectionStats;
+
+    @Parameter( names = { "--saturation-stats", "-sas" }, description = "Detect and display the load generator own saturation (sender lag, achieved rate, cpu)" )
+    private boolean saturationStats;
+
+    @Parameter( names = { "--saturation-lag-threshold", "-slt" }, description = "Sender lag (in ms) beyond which the run is flagged as saturated" )
+    private long saturationLagThreshold = 100;
+
+    @Parameter( names = { "--max-requests-per-tree", "-mrpt" }, description = "Max concurrent requests per resource tree, 6 emulates browsers with HTTP/1.1 (0 for no limit)" )
+    private int maxRequestsPerTree;
+
+    @Parameter( names = { "--login-path", "-lp" }, description = "Path each user requests once to log in, before the measured iterations" )
+    private String loginPath;
+
+    @Parameter( names = { "--login-method", "-lm" }, description = "HTTP method of the login request" )
+    private String loginMethod = "POST";
+
+    @Parameter( names = { "--login-refresh", "-lr" }, description = "Period (in seconds) after which users log in again (0 to never refresh)" )
+    private long loginRefresh;
+
+    @Parameter( names = { "--bearer-token-header", "-bth" }, description = "Login response header carrying the bearer token sent by the user's requests" )
+    private String bearerTokenHeader;
+
+    @Parameter( names = { "--session-stats", "-ss" }, description = "Display the session set-up (login) statistics" )
+    private boolean sessionStats;
+
+    @Parameter( names = { "--cache-entries", "-ce" }, description = "Max entries of the HTTP cache of each user (0 for no cache)" )
+    private int cacheEntries;
+
+    @Parameter( names = { "--returning-visitor-ratio", "-rvr" }, description = "Ratio (0 to 1) of the resource trees sent by returning visitors, with a warm cache" )
+    private double returningVisitorRatio = 1;
+
+    @Parameter( names = { "--scenario-groovy-path", "-sgp" }, description = "Groovy file returning the Scenario of user journeys, replacing the profile" )
+    private String scenarioGroovyPath;
+
+    @Parameter( names = { "--scenario-stats", "-scs" }, description = "Display the scenario step and journey times" )
+    private boolean scenarioStats;
+
+    @Parameter( names = { "--mix-groovy-path", "-mgp" }, description = "Groovy file returning the ResourceMix of weighted profiles, replacing the profile" )
+    private String mixGroovyPath;
+
+    @Parameter( names = { "--mix-stats", "-mxs" }, description = "Display the response and tree times per profile of the mix" )
+    private boolean mixStats;
+
+    @Parameter( names = { "--sharded", "-sh" }, description = "Each sender thread owns its users, executor and scheduler (shared-nothing)" )
+    private boolean sharded;
+
+    @Parameter( names = { "--cpu-affinity", "-ca" }, description = "In sharded mode, bind the threads of each shard to a subset of the CPUs (Linux only)" )
+    private boolean cpuAffinity;
+
+    @Parameter( names = { "--coordinated-omission-correction", "-coc" }, description = "Also record the times corrected for coordinated omission, with the interval expected from the transaction rate" )
+    private boolean coordinatedOmissionCorrection;
+
     public LoadGeneratorStarterArgs()
     {
         // no op
@@ -155,6 +277,86 @@ public class LoadGeneratorStarterArgs
         this.transactionRate = transactionRate;
     }
 
+    public List<String> getLocalAddresses()
+    {
+        return localAddresses;
+    }
+
+    public void setLocalAddresses( List<String> localAddresses )
+    {
+        this.localAddresses = localAddresses;
+    }
+
+    public String getScriptRoot()
+    {
+        return scriptRoot;
+    }
+
+    public void setScriptRoot( String scriptRoot )
+    {
+        this.scriptRoot = scriptRoot;
+    }
+
+    public int getAgentPort()
+    {
+        return agentPort;
+    }
+
+    public void setAgentPort( int agentPort )
+    {
+        this.agentPort = agentPort;
+    }
+
+    public List<String> getAgents()
+    {
+        return agents;
+    }
+
+    public void setAgents( List<String> agents )
+    {
+        this.agents = agents;
+    }
+
+    public long getStartDelay()
+    {
+        return startDelay;
+    }
+
+    public void setStartDelay( long startDelay )
+    {
+        this.startDelay = startDelay;
+    }
+
+    public long getDnsTtl()
+    {
+        return dnsTtl;
+    }
+
+    public void setDnsTtl( long dnsTtl )
+    {
+        this.dnsTtl = dnsTtl;
+    }
+
+    public long getDnsNegativeTtl()
+    {
+        return dnsNegativeTtl;
+    }
+
+    public void setDnsNegativeTtl( long dnsNegativeTtl )
+    {
+        this.dnsNegativeTtl = dnsNegativeTtl;
+    }
+
+    public String getHostsFile()
+    {
+        return hostsFile;
+    }
+
+    public void setHostsFile( String hostsFile )
+    {
+        this.hostsFile = hostsFile;
+    }
+
     public Transport getTransport()
     {
         switch ( this.transport )
@@ -167,6 +369,8 @@ public class LoadGeneratorStarterArgs
                 return Transport.H2;
             case "h2c":
                 return Transport.H2C;
+            case "fcgi":
+                return Transport.FCGI;
             default:
                 throw new IllegalArgumentException( transport + " is not recognized" );
         }
@@ -358,24 +562,409 @@ public class LoadGeneratorStarterArgs
         this.maxRequestsQueued = maxRequestsQueued;
     }
 
+    public int getConnectionsPerUser()
+    {
+        return connectionsPerUser;
+    }
+
+    public void setConnectionsPerUser( int connectionsPerUser )
+    {
+        this.connectionsPerUser = connectionsPerUser;
+    }
+
+    public int getMaxConcurrentStreams()
+    {
+        return maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams( int maxConcurrentStreams )
+    {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    public FlowControl getFlowControl()
+    {
+        switch ( this.flowControl )
+        {
+            case "simple":
+                return FlowControl.SIMPLE;
+            case "buffering":
+                return FlowControl.BUFFERING;
+            default:
+                throw new IllegalArgumentException( flowControl + " is not recognized" );
+        }
+    }
+
+    public void setFlowControl( String flowControl )
+    {
+        this.flowControl = flowControl != null ? flowControl.toLowerCase() : "";
+    }
+
+    public float getFlowControlBufferRatio()
+    {
+        return flowControlBufferRatio;
+    }
+
+    public void setFlowControlBufferRatio( float flowControlBufferRatio )
+    {
+        this.flowControlBufferRatio = flowControlBufferRatio;
+    }
+
+    public int getSessionRecvWindow()
+    {
+        return sessionRecvWindow;
+    }
+
+    public void setSessionRecvWindow( int sessionRecvWindow )
+    {
+        this.sessionRecvWindow = sessionRecvWindow;
+    }
+
+    public int getStreamRecvWindow()
+    {
+        return streamRecvWindow;
+    }
+
+    public void setStreamRecvWindow( int streamRecvWindow )
+    {
+        this.streamRecvWindow = streamRecvWindow;
+    }
+
+    public TLSResumption getTlsResumption()
+    {
+        switch ( this.tlsResumption )
+        {
+            case "none":
+                return TLSResumption.NONE;
+            case "default":
+                return TLSResumption.DEFAULT;
+            case "forced":
+                return TLSResumption.FORCED;
+            default:
+                throw new IllegalArgumentException( tlsResumption + " is not recognized" );
+        }
+    }
+
+    public void setTlsResumption( String tlsResumption )
+    {
+        this.tlsResumption = tlsResumption != null ? tlsResumption.toLowerCase() : "";
+    }
+
+    public int getTlsSessionCacheSize()
+    {
+        return tlsSessionCacheSize;
+    }
+
+    public void setTlsSessionCacheSize( int tlsSessionCacheSize )
+    {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+
+    public Boolean getTlsSessionTickets()
+    {
+        return tlsSessionTickets;
+    }
+
+    public void setTlsSessionTickets( Boolean tlsSessionTickets )
+    {
+        this.tlsSessionTickets = tlsSessionTickets;
+    }
+
+    public boolean isTlsStats()
+    {
+        return tlsStats;
+    }
+
+    public void setTlsStats( boolean tlsStats )
+    {
+        this.tlsStats = tlsStats;
+    }
+
+    public boolean isStreamStats()
+    {
+        return streamStats;
+    }
+
+    public void setStreamStats( boolean streamStats )
+    {
+        this.streamStats = streamStats;
+    }
+
+    public boolean isPushStats()
+    {
+        return pushStats;
+    }
+
+    public void setPushStats( boolean pushStats )
+    {
+        this.pushStats = pushStats;
+    }
+
+    public boolean isWebSocketStats()
+    {
+        return webSocketStats;
+    }
+
+    public void setWebSocketStats( boolean webSocketStats )
+    {
+        this.webSocketStats = webSocketStats;
+    }
+
+    public boolean isStreamEventStats()
+    {
+        return streamEventStats;
+    }
+
+    public void setStreamEventStats( boolean streamEventStats )
+    {
+        this.streamEventStats = streamEventStats;
+    }
+
+    public boolean isConnectionStats()
+    {
+        return connectionStats;
+    }
+
+    public void setConnectionStats( boolean connectionStats )
+    {
+        this.connectionStats = connectionStats;
+    }
+
+    public boolean isSaturationStats()
+    {
+        return saturationStats;
+    }
+
+    public void setSaturationStats( boolean saturationStats )
+    {
+        this.saturationStats = saturationStats;
+    }
+
+    public long getSaturationLagThreshold()
+    {
+        return saturationLagThreshold;
+    }
+
+    public void setSaturationLagThreshold( long saturationLagThreshold )
+    {
+        this.saturationLagThreshold = saturationLagThreshold;
+    }
+
+    public int getMaxRequestsPerTree()
+    {
+        return maxRequestsPerTree;
+    }
+
+    public void setMaxRequestsPerTree( int maxRequestsPerTree )
+    {
+        this.maxRequestsPerTree = maxRequestsPerTree;
+    }
+
+    public String getLoginPath()
+    {
+        return loginPath;
+    }
+
+    public void setLoginPath( String loginPath )
+    {
+        this.loginPath = loginPath;
+    }
+
+    public String getLoginMethod()
+    {
+        return loginMethod;
+    }
+
+    public void setLoginMethod( String loginMethod )
+    {
+        this.loginMethod = loginMethod;
+    }
+
+    public long getLoginRefresh()
+    {
+        return loginRefresh;
+    }
+
+    public void setLoginRefresh( long loginRefresh )
+    {
+        this.loginRefresh = loginRefresh;
+    }
+
+    public String getBearerTokenHeader()
+    {
+        return bearerTokenHeader;
+    }
+
+    public void setBearerTokenHeader( String bearerTokenHeader )
+    {
+        this.bearerTokenHeader = bearerTokenHeader;
+    }
+
+    public boolean isSessionStats()
+    {
+        return sessionStats;
+    }
+
+    public void setSessionStats( boolean sessionStats )
+    {
+        this.sessionStats = sessionStats;
+    }
+
+    public int getCacheEntries()
+    {
+        return cacheEntries;
+    }
+
+    public void setCacheEntries( int cacheEntries )
+    {
+        this.cacheEntries = cacheEntries;
+    }
+
+    public double getReturningVisitorRatio()
+    {
+        return returningVisitorRatio;
+    }
+
+    public void setReturningVisitorRatio( double returningVisitorRatio )
+    {
+        this.returningVisitorRatio = returningVisitorRatio;
+    }
+
+    public String getScenarioGroovyPath()
+    {
+        return scenarioGroovyPath;
+    }
+
+    public void setScenarioGroovyPath( String scenarioGroovyPath )
+    {
+        this.scenarioGroovyPath = scenarioGroovyPath;
+    }
+
+    public boolean isScenarioStats()
+    {
+        return scenarioStats;
+    }
+
+    public void setScenarioStats( boolean scenarioStats )
+    {
+        this.scenarioStats = scenarioStats;
+    }
+
+    public String getMixGroovyPath()
+    {
+        return mixGroovyPath;
+    }
+
+    public void setMixGroovyPath( String mixGroovyPath )
+    {
+        this.mixGroovyPath = mixGroovyPath;
+    }
+
+    public boolean isMixStats()
+    {
+        return mixStats;
+    }
+
+    public void setMixStats( boolean mixStats )
+    {
+        this.mixStats = mixStats;
+    }
+
+    public boolean isSharded()
+    {
+        return sharded;
+    }
+
+    public void setSharded( boolean sharded )
+    {
+        this.sharded = sharded;
+    }
+
+    public boolean isCpuAffinity()
+    {
+        return cpuAffinity;
+    }
+
+    public void setCpuAffinity( boolean cpuAffinity )
+    {
+        this.cpuAffinity = cpuAffinity;
+    }
+
+    public boolean isCoordinatedOmissionCorrection()
+    {
+        return coordinatedOmissionCorrection;
+    }
+
+    public void setCoordinatedOmissionCorrection( boolean coordinatedOmissionCorrection )
+    {
+        this.coordinatedOmissionCorrection = coordinatedOmissionCorrection;
+    }
+
     @Override
     public String toString()
     {
         return "LoadGeneratorStarterArgs{" + "profileXmlPath='" + profileXmlPath + '\'' + ", profileJsonPath='"
             + profileJsonPath + '\'' + ", profileGroovyPath='" + profileGroovyPath + '\'' + ", host='" + host + '\''
             + ", port=" + port + ", users=" + users + ", transactionRate=" + transactionRate + ", transport='"
-            + transport + '\'' + ", selectors=" + selectors + ", runningTime=" + runningTime + ", runningTimeUnit='"
+            + transport + '\'' + ", selectors=" + selectors + ", localAddresses=" + localAddresses
+            + ", scriptRoot='" + scriptRoot + '\'' + ", dnsTtl=" + dnsTtl + ", dnsNegativeTtl=" + dnsNegativeTtl
+            + ", hostsFile='" + hostsFile + '\'' + ", agentPort=" + agentPort + ", agents=" + agents
+            + ", startDelay=" + startDelay
+            + ", runningTime=" + runningTime + ", runningTimeUnit='"
             + runningTimeUnit + '\'' + ", runIteration=" + runIteration + ", reportHost='" + reportHost + '\''
             + ", scheme='" + scheme + '\'' + ", reportPort=" + reportPort + ", notInterrupt=" + notInterrupt
             + ", statsFile='" + statsFile + '\'' + ", params=" + params + ", help=" + help + ", displayStatsAtEnd="
             + displayStatsAtEnd + ", collectServerStats=" + collectServerStats + ", warmupNumber=" + warmupNumber
-            + ", maxRequestsQueued=" + maxRequestsQueued + '}';
+            + ", maxRequestsQueued=" + maxRequestsQueued + ", connectionsPerUser=" + connectionsPerUser
+            + ", maxConcurrentStreams=" + maxConcurrentStreams + ", flowControl='" + flowControl + '\''
+            + ", flowControlBufferRatio=" + flowControlBufferRatio + ", sessionRecvWindow=" + sessionRecvWindow
+            + ", streamRecvWindow=" + streamRecvWindow + ", tlsResumption='" + tlsResumption + '\''
+            + ", tlsSessionCacheSize=" + tlsSessionCacheSize + ", tlsSessionTickets=" + tlsSessionTickets
+            + ", tlsStats=" + tlsStats + ", streamStats=" + streamStats
+            + ", pushStats=" + pushStats + ", webSocketStats=" + webSocketStats
+            + ", streamEventStats=" + streamEventStats + ", connectionStats=" + connectionStats + ", saturationStats=" + saturationStats
+            + ", saturationLagThreshold=" + saturationLagThreshold + ", maxRequestsPerTree=" + maxRequestsPerTree + ", loginPath='" + loginPath + '\'' + ", loginMethod='"
+            + loginMethod + '\'' + ", loginRefresh=" + loginRefresh + ", bearerTokenHeader='" + bearerTokenHeader + '\''
+            + ", sessionStats=" + sessionStats + ", cacheEntries=" + cacheEntries + ", returningVisitorRatio="
+            + returningVisitorRatio + ", scenarioGroovyPath='" + scenarioGroovyPath + '\'' + ", scenarioStats=" + scenarioStats
+            + ", mixGroovyPath='" + mixGroovyPath + '\'' + ", mixStats=" + mixStats
+            + ", sharded=" + sharded + ", cpuAffinity=" + cpuAffinity
+            + ", coordinatedOmissionCorrection=" + coordinatedOmissionCorrection
+            + '}';
     }
 
     public enum Transport {
         HTTP,
         HTTPS,
         H2C,
-        H2
+        H2,
+        FCGI
+    }
+
+    public enum FlowControl {
+        /**
+         * sends a WINDOW_UPDATE frame for each consumed DATA frame
+         */
+        SIMPLE,
+        /**
+         * sends WINDOW_UPDATE frames when the consumed bytes reach a ratio of the recv window
+         */
+        BUFFERING
+    }
+
+    public enum TLSResumption {
+        /**
+         * no client session cache, every handshake is a full handshake
+         */
+        NONE,
+        /**
+         * JDK client session cache, possibly tuned with the session cache size
+         */
+        DEFAULT,
+        /**
+         * unbounded client session cache without expiration,
+         * so every handshake after the first one to a peer resumes
+         */
+        FORCED
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mortbay.jetty.load.generator.starter;
+
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ */
+public class LoadGeneratorCoordinatorTest
+{
+
+    Server server;
+
+    ServerConnector connector;
+
+    LoadGeneratorStarterTest.TestHandler testHandler = new LoadGeneratorStarterTest.TestHandler();
+
+    List<LoadGeneratorAgent> agents = new ArrayList<>();
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector( server, new HttpConnectionFactory( new HttpConfiguration() ) );
+        server.addConnector( connector );
+        ServletContextHandler context = new ServletContextHandler( ServletContextHandler.SESSIONS );
+        context.addServlet( new ServletHolder( testHandler ), "/" );
+        server.setHandler( context );
+        server.start();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            agents.add( new LoadGeneratorAgent( 0 ).start() );
+        }
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        for ( LoadGeneratorAgent agent : agents )
+        {
+            agent.stop();
+        }
+        server.stop();
+    }
+
+    private LoadGeneratorCoordinator newCoordinator()
+    {
+        List<String> addresses = new ArrayList<>();
+        for ( LoadGeneratorAgent agent : agents )
+        {
+            addresses.add( "localhost:" + agent.getPort() );
+        }
+        LoadGeneratorCoordinator coordinator = new LoadGeneratorCoordinator( addresses );
+        coordinator.setPollPeriod( 100 );
+        return coordinator;
+    }
+
+    private List<String> args( long runningTime )
+    {
+        return Arrays.asList( "--host", "localhost", //
+                              "--port", Integer.toString( connector.getLocalPort() ), //
+                              "--running-time", Long.toString( runningTime ), //
+                              "--running-time-unit", "s", //
+                              "--transaction-rate", "10", //
+                              "--users", "2" );
+    }
+
+    @Test
+    public void coordinated_run()
+        throws Exception
+    {
+        LoadGeneratorCoordinator.Result result = newCoordinator().run( args( 2 ), new Resource( "/" ) );
+
+        Assert.assertTrue( result.getAgentResults().toString(), result.isSucceeded() );
+        Assert.assertEquals( 2, result.getAgentResults().size() );
+        Assert.assertTrue( result.getRequests() > 0 );
+        Assert.assertEquals( result.getRequests(), result.getResponseTimeHistogram().getTotalCount() );
+        Assert.assertTrue( testHandler.getNumber.get() >= result.getRequests() );
+        // all the agents are on the same host so share the same clock
+        Assert.assertTrue( "spread " + result.getBeginTimeSpread(), result.getBeginTimeSpread() < 500 );
+    }
+
+    @Test
+    public void coordinated_stop()
+        throws Exception
+    {
+        LoadGeneratorCoordinator coordinator = newCoordinator();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            // once the load runs, however long the agents take to start it
+            AtomicBoolean stopped = new AtomicBoolean();
+            scheduler.scheduleWithFixedDelay( () -> {
+                if ( testHandler.getNumber.get() >= 10 && stopped.compareAndSet( false, true ) )
+                {
+                    coordinator.stop();
+                }
+            }, 100, 100, TimeUnit.MILLISECONDS );
+            long begin = System.nanoTime();
+            LoadGeneratorCoordinator.Result result = coordinator.run( args( 60 ), new Resource( "/" ) );
+            long elapsed = TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() - begin );
+
+            Assert.assertTrue( "elapsed " + elapsed, elapsed < 30 );
+            Assert.assertTrue( result.isSucceeded() );
+            Assert.assertTrue( result.getRequests() > 0 );
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
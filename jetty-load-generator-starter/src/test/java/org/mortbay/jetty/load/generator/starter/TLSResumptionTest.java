@@ -0,0 +1,121 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2017 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.load.generator.starter;
+
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.DefaultHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.load.generator.HTTP1ClientTransportBuilder;
+import org.mortbay.jetty.load.generator.LoadGenerator;
+import org.mortbay.jetty.load.generator.Resource;
+import org.mortbay.jetty.load.generator.listeners.tls.TLSHandshakeListener;
+
+import java.util.concurrent.TimeUnit;
+
+public class TLSResumptionTest
+{
+
+    private Server server;
+
+    private ServerConnector connector;
+
+    @Before
+    public void startJetty()
+        throws Exception
+    {
+        server = new Server();
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath( "src/test/resources/keystore.jks" );
+        sslContextFactory.setKeyStorePassword( "storepwd" );
+        // jetty 9.3 predates TLS 1.3, whose handshakes may stall on recent JDK 8 updates
+        sslContextFactory.setIncludeProtocols( "TLSv1.2" );
+        connector = new ServerConnector( server, sslContextFactory, new HttpConnectionFactory() );
+        server.addConnector( connector );
+        server.setHandler( new DefaultHandler() );
+        server.start();
+    }
+
+    @After
+    public void stopJetty()
+        throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void default_resumption()
+        throws Exception
+    {
+        TLSHandshakeListener listener = connect( "default" );
+        Assert.assertEquals( 2, listener.getHandshakes() );
+        Assert.assertEquals( 1, listener.getResumedHandshakes() );
+    }
+
+    @Test
+    public void forced_resumption()
+        throws Exception
+    {
+        TLSHandshakeListener listener = connect( "forced" );
+        Assert.assertEquals( 2, listener.getHandshakes() );
+        Assert.assertEquals( 1, listener.getResumedHandshakes() );
+    }
+
+    @Test
+    public void no_resumption()
+        throws Exception
+    {
+        TLSHandshakeListener listener = connect( "none" );
+        Assert.assertEquals( 2, listener.getHandshakes() );
+        Assert.assertEquals( 0, listener.getResumedHandshakes() );
+    }
+
+    /**
+     * @return the listener of two users, each opening one connection, one after the other
+     */
+    private TLSHandshakeListener connect( String tlsResumption )
+        throws Exception
+    {
+        LoadGeneratorStarterArgs starterArgs = new LoadGeneratorStarterArgs();
+        starterArgs.setTlsResumption( tlsResumption );
+        LoadGeneratorStarter starter = new LoadGeneratorStarter( starterArgs );
+
+        TLSHandshakeListener listener = new TLSHandshakeListener( false );
+        LoadGenerator loadGenerator = new LoadGenerator.Builder() //
+            .scheme( "https" ) //
+            .port( connector.getLocalPort() ) //
+            .httpClientTransportBuilder( new HTTP1ClientTransportBuilder() ) //
+            .sslContextFactory( starter.sslContextFactory() ) //
+            .usersPerThread( 2 ) //
+            .iterationsPerThread( 2 ) //
+            // leaves time for the first, cold, handshake to complete before the second user connects
+            .resourceRate( 1 ) //
+            .resource( new Resource( "/" ) ) //
+            .connectionListener( listener ) //
+            .build();
+        loadGenerator.begin().get( 10, TimeUnit.SECONDS );
+        return listener;
+    }
+
+}